@@ -6,8 +6,8 @@ package com.distribsystems.p2p;
 
 import com.distribsystems.p2p.chord_lib.Chord;
 import com.distribsystems.p2p.chord_lib.Node;
+import com.distribsystems.p2p.chord_lib.RingId;
 
-import java.math.BigInteger;
 import java.net.*;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -108,9 +108,12 @@ public class Client
 
                 // Create new node
                 node = new Node(ip, port, existingIpAddress, existingPort);
-                try {
-                    Thread.sleep(Chord.STABILIZATION_DELAY*1000 + 200);
-                } catch (InterruptedException e) { e.printStackTrace(); }
+                // Wait for the first stabilization, unless the routing state has been seeded by the successor
+                if (!node.isFastJoined()) {
+                    try {
+                        Thread.sleep(Chord.STABILIZATION_DELAY*1000 + 200);
+                    } catch (InterruptedException e) { e.printStackTrace(); }
+                }
 
                 //Choose Mode
                 Chord.setEnableLogs(false);
@@ -142,13 +145,13 @@ public class Client
             System.out.println("---------------------------------------");
             System.out.println("Node("+node.getId()+"):");
 
-            Map<BigInteger, String> items = new HashMap<>();
+            Map<RingId, String> items = new HashMap<>();
             items.putAll(node.getItemTable());
             if(!items.isEmpty()){
                 System.out.println("---------------------------------------");
                 System.out.println("Items on this Node:");
             }
-            for(BigInteger key: items.keySet()){
+            for(RingId key: items.keySet()){
                 System.out.println("Item: " + key.toString() + " --> '" + items.get(key) + "'");
             }
             System.out.println("---------------------------------------");
@@ -162,17 +165,13 @@ public class Client
             if(query.equals("put")){
                 System.out.println("Insert Item(String) to place on the network:");
                 String item = myObj.nextLine();
-                node.acquire();
                 resp = node.placeItem(item);
                 System.out.println("Response: " + resp);
-                node.release();
             }else if(query.equals("get")){
                 System.out.println("Insert Key of the Item to retrieve form the network:");
                 String key = myObj.nextLine();
-                node.acquire();
-                resp = node.findItem(new BigInteger(key));
+                resp = node.findItem(RingId.parse(key));
                 System.out.println("Response: " + resp);
-                node.release();
             }else if(query.equals("exit")){
                 //Notify all the nodes in the FingerTable that this node is about to self-destruct
                 node.notifyNodeDestruction();
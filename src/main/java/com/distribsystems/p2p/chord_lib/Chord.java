@@ -1,14 +1,52 @@
 package com.distribsystems.p2p.chord_lib;
 
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.Scanner;
 
 public class Chord {
     public final static int         MAXIMUM_FINGER_TABLE_SIZE = 160;
-    public final static int         FINGER_TABLE_SIZE = 8;          //Max 160
+    public final static int         DEFAULT_FINGER_TABLE_SIZE = 8;
+    public final static int         MAXIMUM_FINGER_BASE = 256;
+    public final static int         MAXIMUM_SUCCESSOR_LIST_LENGTH = 64;
     public final static int         STABILIZATION_DELAY = 8;        //[seconds]
     public final static int         PING_DELAY = 3;                 //[seconds]
+    public final static int         FIX_FINGERS_MIN_INTERVAL = 250;                         //[milliseconds]
+    public final static int         FIX_FINGERS_MAX_INTERVAL = STABILIZATION_DELAY * 1000;  //[milliseconds]
     public final static int         SOCKET_TIMEOUT = 3;             //[seconds]
+    public final static int         MAX_CONNECTIONS_PER_PEER = 16;
+    public final static int         CONNECTION_IDLE_TIMEOUT = 30;   //[seconds]
+    public final static int         SERVER_WORKER_THREADS = 64;
+    public final static int         SERVER_WORKER_QUEUE_SIZE = 10000;
+    public final static int         SERVER_CONTROL_THREADS = 8;
+    public final static int         SERVER_CONTROL_QUEUE_SIZE = 1000;
+    public final static int         SERVER_BACKLOG = 1024;
+    public final static int         SERVER_READ_BUFFER_SIZE = 64*1024;  //[bytes]
+    public final static int         MAX_MESSAGE_LENGTH = 1024*1024;     //[bytes]
+    public final static int         PROTOCOL_VERSION = 8;           //1 = text lines only, 2 = binary frames, 3 = compressed items, 4 = batched finger lookups, 5 = routing state transfer, 6 = identifier width check, 7 = new successor hints, 8 = successor and predecessor lists
+    public final static int         COMPRESSION_THRESHOLD = 256;    //[bytes]
+    public final static int         COMPRESSION_LEVEL = 1;          //Deflater level, 1 = fastest
+    public final static int         HEARTBEAT_INTERVAL = 500;       //[milliseconds]
+    public final static int         HEARTBEAT_TIMEOUT = 2000;       //[milliseconds]
+    public final static int         MAX_LOOKUP_HOPS = 32;
+    public final static int         OWNER_CACHE_SIZE = 1024;        //[ranges]
+    public final static int         PROXIMITY_PEERS = 1024;         //[peers whose coordinates are kept]
+    public final static double      MAINTENANCE_JITTER = 0.2;       //[fraction of the period the runs are moved by, both ways]
+    private static int              fingerTableSize = DEFAULT_FINGER_TABLE_SIZE;
+    private static int              fingerBase = 2;
+    private static int              successorListLength = 4;
+    private static boolean          counterClockwiseFingers = false;
+    private static boolean          proximityFingers = false;
+    private static boolean          binaryProtocol = true;
+    private static boolean          compression = true;
+    private static byte[]           compressionDictionary = null;
+    private static boolean          udpHeartbeat = true;
     public static boolean           enableLogs = true;
+    private static ExecutionMode    executionMode = ExecutionMode.SELECTOR;
+    private static LookupStrategy   lookupStrategy = LookupStrategy.RECURSIVE;
+    private static boolean          fastJoin = true;
+    private final static Map<MaintenanceTask, Long> maintenancePeriods = new EnumMap<>(MaintenanceTask.class);
+    private final static Map<MaintenanceTask, Long> maintenanceDeadlines = new EnumMap<>(MaintenanceTask.class);
 
     public final static String NEW_PREDECESSOR      = "NEW_PREDECESSOR";
     public final static String FIND_FINGER          = "FIND_FINGER";
@@ -16,6 +54,7 @@ public class Chord {
     public final static String FORGET_FINGER        = "FORGET_FINGER";
     public final static String FINGER_FORGOTTEN     = "FINGER_FORGOTTEN";
     public static final String REQUEST_PREDECESSOR  = "REQUEST_PREDECESSOR";
+    public static final String PREDECESSOR          = "PREDECESSOR";
     public final static String PING                 = "PING";
     public final static String PONG                 = "PONG";
     public static final String FIND_ITEM            = "FIND_ITEM";
@@ -23,6 +62,22 @@ public class Chord {
     public static final String PLACE_ITEM           = "PLACE_ITEM";
     public static final String ITEM_PLACED          = "ITEM_PLACED";
     public static final String NOT_FOUND            = "NOT_FOUND";
+    public static final String FIND_NEXT_HOP        = "FIND_NEXT_HOP";
+    public static final String NEXT_HOP             = "NEXT_HOP";
+    public static final String FIND_FINGER_DIRECT   = "FIND_FINGER_DIRECT";
+    public static final String FIND_ITEM_DIRECT     = "FIND_ITEM_DIRECT";
+    public static final String DIRECT_REPLY         = "DIRECT_REPLY";
+    public static final String FIND_FINGERS         = "FIND_FINGERS";
+    public static final String FINGERS_FOUND        = "FINGERS_FOUND";
+    public static final String REQUEST_ROUTING_STATE = "REQUEST_ROUTING_STATE";
+    public static final String ROUTING_STATE        = "ROUTING_STATE";
+    public static final String REQUEST_ID_BITS      = "REQUEST_ID_BITS";
+    public static final String ID_BITS              = "ID_BITS";
+    public static final String NEW_SUCCESSOR        = "NEW_SUCCESSOR";
+    public static final String REQUEST_SUCCESSORS   = "REQUEST_SUCCESSORS";
+    public static final String SUCCESSORS           = "SUCCESSORS";
+    public static final String REQUEST_PREDECESSORS = "REQUEST_PREDECESSORS";
+    public static final String PREDECESSORS         = "PREDECESSORS";
 
     /**
      * @brief   Log printing function that can be inhibited
@@ -41,6 +96,216 @@ public class Chord {
         Chord.enableLogs = enableLogs;
     }
 
+    /**
+     * @return  The number of bits of the identifiers of the ring, that is the size of the FingerTable with fingers of
+     *          base 2 (see FingerLayout)
+     */
+    public static int getFingerTableSize() {
+        return fingerTableSize;
+    }
+
+    /**
+     * @brief   Set the number of bits of the identifiers of the ring, before creating any Node. It must be the same on
+     *          all the nodes of the ring: a Node joining a ring of another width is refused
+     * @param   fingerTableSize     Number of bits, from 1 to MAXIMUM_FINGER_TABLE_SIZE (DEFAULT_FINGER_TABLE_SIZE if
+     *                              never set)
+     * @throws  IllegalArgumentException if the number of bits is out of range
+     */
+    public static void setFingerTableSize(int fingerTableSize) {
+        if (fingerTableSize < 1 || fingerTableSize > MAXIMUM_FINGER_TABLE_SIZE) {
+            throw new IllegalArgumentException("The identifiers must have from 1 to " + MAXIMUM_FINGER_TABLE_SIZE +
+                    " bits, not " + fingerTableSize);
+        }
+        Chord.fingerTableSize = fingerTableSize;
+    }
+
+    public static int getFingerBase() {
+        return fingerBase;
+    }
+
+    /**
+     * @brief   Choose the base of the fingers of the Nodes created from now on: b - 1 fingers for each power of b (see
+     *          FingerLayout), for lookups of about log_b(N) hops. The nodes of a ring may use different bases
+     * @param   fingerBase  Base, from 2 (default, the classic FingerTable) to MAXIMUM_FINGER_BASE
+     * @throws  IllegalArgumentException if the base is out of range
+     */
+    public static void setFingerBase(int fingerBase) {
+        if (fingerBase < 2 || fingerBase > MAXIMUM_FINGER_BASE) {
+            throw new IllegalArgumentException("The base of the fingers must be from 2 to " + MAXIMUM_FINGER_BASE +
+                    ", not " + fingerBase);
+        }
+        Chord.fingerBase = fingerBase;
+    }
+
+    public static int getSuccessorListLength() {
+        return successorListLength;
+    }
+
+    /**
+     * @brief   Choose how many successors (and predecessors) the Nodes keep: the ring stays connected as long as one of
+     *          the successors of each node is alive, so r successors survive r - 1 neighbours failing at once
+     * @param   successorListLength     Length of the lists, from 2 to MAXIMUM_SUCCESSOR_LIST_LENGTH (4 if never set)
+     * @throws  IllegalArgumentException if the length is out of range
+     */
+    public static void setSuccessorListLength(int successorListLength) {
+        if (successorListLength < 2 || successorListLength > MAXIMUM_SUCCESSOR_LIST_LENGTH) {
+            throw new IllegalArgumentException("The successor list must have from 2 to " + MAXIMUM_SUCCESSOR_LIST_LENGTH +
+                    " entries, not " + successorListLength);
+        }
+        Chord.successorListLength = successorListLength;
+    }
+
+    public static boolean isCounterClockwiseFingers() {
+        return counterClockwiseFingers;
+    }
+
+    /**
+     * @brief   Choose whether the Nodes created from now on also keep fingers at id - 2^i (or id - j*b^i, see
+     *          FingerLayout), so that the lookups can move counter-clockwise when that gets them closer to the key
+     */
+    public static void setCounterClockwiseFingers(boolean counterClockwiseFingers) {
+        Chord.counterClockwiseFingers = counterClockwiseFingers;
+    }
+
+    public static boolean isProximityFingers() {
+        return proximityFingers;
+    }
+
+    /**
+     * @brief   Choose whether the Nodes created from now on pick, among the nodes in the interval of a finger, the one
+     *          with the lowest round-trip time predicted by their network coordinates (see Proximity), instead of the
+     *          first node of the interval
+     */
+    public static void setProximityFingers(boolean proximityFingers) {
+        Chord.proximityFingers = proximityFingers;
+    }
+
+    /**
+     * @return  The period of the maintenance task [milliseconds]
+     */
+    public static synchronized long getMaintenancePeriod(MaintenanceTask task) {
+        Long period = maintenancePeriods.get(task);
+        return period != null ? period : task.getDefaultPeriod();
+    }
+
+    /**
+     * @brief   Set the period of a maintenance task, taken into account from its next run
+     * @param   task    The task
+     * @param   period  Period [milliseconds], 0 to stop running the task
+     * @throws  IllegalArgumentException if the period is negative
+     */
+    public static synchronized void setMaintenancePeriod(MaintenanceTask task, long period) {
+        if (period < 0) {
+            throw new IllegalArgumentException("The period of " + task + " can not be negative: " + period);
+        }
+        maintenancePeriods.put(task, period);
+    }
+
+    /**
+     * @return  The time a run of the maintenance task may take before it counts as an overrun [milliseconds]
+     */
+    public static synchronized long getMaintenanceDeadline(MaintenanceTask task) {
+        Long deadline = maintenanceDeadlines.get(task);
+        return deadline != null ? deadline : task.getDefaultDeadline();
+    }
+
+    /**
+     * @brief   Set the time a run of a maintenance task may take before it counts as an overrun
+     * @param   task        The task
+     * @param   deadline    Deadline [milliseconds]
+     * @throws  IllegalArgumentException if the deadline is not positive
+     */
+    public static synchronized void setMaintenanceDeadline(MaintenanceTask task, long deadline) {
+        if (deadline <= 0) {
+            throw new IllegalArgumentException("The deadline of " + task + " must be positive: " + deadline);
+        }
+        maintenanceDeadlines.put(task, deadline);
+    }
+
+    public static boolean isBinaryProtocol() {
+        return binaryProtocol;
+    }
+
+    /**
+     * @brief   Choose whether the connections opened from now on offer the binary protocol to the other nodes, or
+     *          stay on the text protocol understood by any node
+     */
+    public static void setBinaryProtocol(boolean binaryProtocol) {
+        Chord.binaryProtocol = binaryProtocol;
+    }
+
+    public static boolean isCompression() {
+        return compression;
+    }
+
+    /**
+     * @brief   Choose whether the item payloads sent from now on are compressed, when the other node supports it
+     */
+    public static void setCompression(boolean compression) {
+        Chord.compression = compression;
+    }
+
+    public static byte[] getCompressionDictionary() {
+        return compressionDictionary;
+    }
+
+    /**
+     * @brief   Set the preset dictionary of the compression, for example a typical item. It must be the same on all
+     *          the nodes of the ring
+     * @param   compressionDictionary   Dictionary, null to compress without
+     */
+    public static void setCompressionDictionary(byte[] compressionDictionary) {
+        Chord.compressionDictionary = compressionDictionary;
+    }
+
+    public static boolean isUdpHeartbeat() {
+        return udpHeartbeat;
+    }
+
+    /**
+     * @brief   Choose whether the Nodes created from now on check the liveness of their neighbours with UDP
+     *          heartbeats, or with a TCP PING at every stabilization
+     */
+    public static void setUdpHeartbeat(boolean udpHeartbeat) {
+        Chord.udpHeartbeat = udpHeartbeat;
+    }
+
+    public static ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * @brief   Choose how the Servers of the Nodes created from now on execute their tasks
+     * @param   executionMode   SELECTOR (default), PLATFORM_THREADS or VIRTUAL_THREADS
+     */
+    public static void setExecutionMode(ExecutionMode executionMode) {
+        Chord.executionMode = executionMode;
+    }
+
+    public static LookupStrategy getLookupStrategy() {
+        return lookupStrategy;
+    }
+
+    /**
+     * @brief   Choose how the lookups started by the Nodes from now on travel around the ring
+     * @param   lookupStrategy  RECURSIVE (default), ITERATIVE or DIRECT_REPLY
+     */
+    public static void setLookupStrategy(LookupStrategy lookupStrategy) {
+        Chord.lookupStrategy = lookupStrategy;
+    }
+
+    public static boolean isFastJoin() {
+        return fastJoin;
+    }
+
+    /**
+     * @brief   Choose whether the Nodes joining from now on seed their FingerTable from the routing state of their
+     *          successor, or look up every finger through the existing node
+     */
+    public static void setFastJoin(boolean fastJoin) {
+        Chord.fastJoin = fastJoin;
+    }
+
     /*public static void main(String[] args){
         String ip = "127.0.0.1";
         int port = 8000;
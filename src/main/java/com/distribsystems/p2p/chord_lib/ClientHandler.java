@@ -0,0 +1,620 @@
+package com.distribsystems.p2p.chord_lib;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * ClientHandler: interprets the queries that the Server receives from the other nodes and takes action, either on a
+ * socket of its own (blocking execution modes) or on the messages decoded by a ServerConnection
+ */
+class ClientHandler
+{
+    private Node node;
+
+
+    // Constructor
+    public ClientHandler(Node node)
+    {
+        this.node = node;
+    }
+
+    /**
+     * @brief   Read the queries from a blocking socket and send back the responses, until the other node closes it.
+     *          The connection starts in text and switches to binary frames if the client offers the handshake: from
+     *          then on every query is executed on its own task, and its response written as soon as it is ready
+     * @param   s               Socket accepted by the Server
+     * @param   tasks           Executor of the binary queries
+     * @param   controlTasks    Executor of the binary queries of the control plane that do not wait for other nodes
+     */
+    public void serve(Socket s, Executor tasks, Executor controlTasks)
+    {
+        try {
+            // Create socket readers and writers
+            InputStream in = new BufferedInputStream(s.getInputStream());
+            OutputStream out = new BufferedOutputStream(s.getOutputStream());
+            final FrameWriter writer = new FrameWriter(out);
+            int version = 1;
+
+            // Read the query from the client and send back a response
+            while (true) {
+                Message query;
+                if (version >= 2) {
+                    try {
+                        query = MessageCodec.readFrame(in);
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    execute(query.getType().isServedByControlWorkers() ? controlTasks : tasks, query, writer, version);
+                    continue;
+                } else {
+                    String line = MessageCodec.readLine(in);
+                    if (line == null) {
+                        break;
+                    }
+
+                    int agreed = MessageCodec.acceptHandshake(line);
+                    if (agreed > 0) {
+                        out.write((MessageCodec.handshakeResponse(agreed) + "\n").getBytes(MessageCodec.UTF8));
+                        out.flush();
+                        version = agreed;
+                        continue;
+                    }
+                    query = MessageCodec.decodeText(line, null);
+                }
+
+                Message response = this.handle(query);
+                if (response != null) {
+                    MessageCodec.writeText(out, response);
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            try
+            {
+                // closing resources
+                s.close();
+            }catch(IOException e){
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @brief   Execute a binary query on its own task and write back its response with the same request id
+     */
+    private void execute(Executor tasks, final Message query, final FrameWriter writer, final int version) {
+        tasks.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Message response = handle(query);
+                    if (response != null) {
+                        response.setRequestId(query.getRequestId());
+                        MessageCodec.preparePayload(response, version);
+                        writer.write(response);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * @brief   Interpret a query received from another node and take action
+     * @param   query   Message received
+     * @return  The response to send back, or null if the command does not expect any response
+     */
+    public Message handle(Message query)
+    {
+        Message response = new Message();
+        return handle(query, response) ? response : null;
+    }
+
+    /**
+     * @brief   Interpret a query received from another node and take action, writing the response into a message
+     *          provided by the caller. PING and the FIND_FINGER queries that the node can answer by itself do not
+     *          allocate anything
+     * @param   query       Message received
+     * @param   response    Message overwritten with the response
+     * @return  True if the response must be sent back, False if the command does not expect any response
+     */
+    public boolean handle(Message query, Message response)
+    {
+        if (Chord.isEnableLogs()) {
+            Chord.cLogPrint("Received: " + query);
+        }
+
+        switch (query.getType()) {
+            case FIND_FINGER:
+                this.findFinger(query.getId(), response);
+                break;
+            case FIND_FINGERS:
+                this.findFingers(query.getIds(), response);
+                break;
+            case FORGET_FINGER:
+                response.copy(this.forgetFinger(query.getId()));
+                break;
+            case NEW_PREDECESSOR: {
+                // Set first predecessor to new finger received in message, moving the first predecessor to second
+                Finger oldPredecessor = this.node.getFirstPredecessor();
+                Finger newPredecessor = new Finger(query.getIpAddr(), query.getPort());
+                this.node.adoptPredecessor(newPredecessor);
+
+                // Hand over its items, fix our fingers and tell the old predecessor right away
+                Stabilizer stabilizer = this.node.getStabilizer();
+                if (stabilizer != null) {
+                    stabilizer.predecessorChanged(oldPredecessor, newPredecessor);
+                }
+
+                //Logs
+                node.printStatusLogs();
+
+                return false;
+            }
+            case NEW_SUCCESSOR: {
+                // A node has joined between us and our successor: stabilize right away
+                Stabilizer stabilizer = this.node.getStabilizer();
+                if (stabilizer != null) {
+                    stabilizer.successorHinted(new Finger(query.getIpAddr(), query.getPort()));
+                }
+                return false;
+            }
+            case REQUEST_PREDECESSOR: {
+                // Return the first predecessor address:port
+                Finger predecessor = this.node.getFirstPredecessor();
+                response.reset(Command.PREDECESSOR);
+                response.setAddress(predecessor.getIpAddr(), predecessor.getPort());
+                break;
+            }
+            case REQUEST_SUCCESSORS:
+                // Tell our successor list to our predecessor, that makes it its own
+                response.copy(Message.neighbours(Chord.SUCCESSORS, this.node.getRoutingState().getSuccessors()));
+                break;
+            case REQUEST_PREDECESSORS:
+                // Tell our predecessor list to our successor, that makes it its own
+                response.copy(Message.neighbours(Chord.PREDECESSORS, this.node.getRoutingState().getPredecessors()));
+                break;
+            case REQUEST_ROUTING_STATE:
+                // Transfer the predecessor, successors and FingerTable to a node joining just before us
+                response.copy(Message.routingState(this.node.getRoutingState()));
+                break;
+            case REQUEST_ID_BITS:
+                // Tell a joining node how many bits the identifiers of the ring have
+                response.reset(Command.ID_BITS);
+                response.setBits(Chord.getFingerTableSize());
+                break;
+            case PING:
+                // Reply to the ping, telling our network coordinates
+                response.reset(Command.PONG);
+                response.setCoordinates(this.node.getProximity().getCoordinates());
+                break;
+            case FIND_ITEM:
+                response.copy(this.findItemByKey(query.getId()));
+                break;
+            case PLACE_ITEM:
+                response.copy(this.placeItem(query));
+                break;
+            case FIND_NEXT_HOP:
+                this.findNextHop(query.getId(), response);
+                break;
+            case FIND_FINGER_DIRECT:
+            case FIND_ITEM_DIRECT:
+                // The answer is sent by the owner to the origin of the lookup
+                this.findDirect(query);
+                return false;
+            case DIRECT_REPLY: {
+                // The query is reused once handled: hand over a copy, with the item decoded
+                Message reply = new Message();
+                reply.copy(query);
+                reply.setItem(query.getItem());
+                this.node.getDirectReplies().complete(reply);
+                return false;
+            }
+            default:
+                return false;
+        }
+
+        if (Chord.isEnableLogs()) {
+            Chord.cLogPrint("Sent: " + response);
+        }
+        // Respond back to the client
+        return true;
+    }
+
+    /**
+     * @brief   Find the Node most suitable for the finger queried. Get the node with the smaller id but greater than the
+     *          node's id. Also ask this node for a nearer node still if any.
+     * @param   id          Finger's identification
+     * @param   response    Message overwritten with the response, of the form FINGER_FOUND:XXX.XXX.XXX.XXX:PPPP if
+     *                      it found a valid candidate, "NOT_FOUND" otherwise
+     */
+    private void findFinger(RingId id, Message response) {
+        RingId queryId = id;
+        Finger owner;
+        response.reset(Command.NOT_FOUND);
+
+        // If the query is greater than our predecessor id and less than equal to our id then we have the value
+        if (this.doesIdReferToCurrentNode(queryId)) {
+            response.reset(Command.FINGER_FOUND);
+            response.setAddress(this.node.getIpAddr(), this.node.getPort());
+            response.setCoordinates(this.node.getProximity().getCoordinates());
+        } else if((owner = this.findSuccessorOwning(queryId)) != null) {
+            response.reset(Command.FINGER_FOUND);
+            response.setAddress(owner.getIpAddr(), owner.getPort());
+            response.setCoordinates(this.node.getProximity().getCoordinates());
+        }else { // We don't have the query so we must search our fingers for it
+            // Look for a node identifier in the finger table that is less than the key we are looking for
+            // but is also the closest (the smallest clockwise distance to the query), or for the closest one after it
+            // among the counter-clockwise fingers
+            Finger closestPredecessor = this.node.nextHop(queryId);
+
+            if (Chord.isEnableLogs()) {
+                Chord.cLogPrint("queryid: " + queryId + "distance: " + closestPredecessor.getId().distanceTo(queryId) + " on " + closestPredecessor.getIpAddr() + ":" + closestPredecessor.getPort());
+            }
+
+            try {
+                // Send query to chord and read its response
+                Message serverResponse = this.node.getConnectionPool().request(closestPredecessor, Message.withId(Chord.FIND_FINGER, queryId));
+                if (Chord.isEnableLogs()) {
+                    Chord.cLogPrint("Sent: " + Chord.FIND_FINGER + ":" + queryId);
+                    Chord.cLogPrint("Response from node " + closestPredecessor.getIpAddr() + ", port " + closestPredecessor.getPort() + ", position " + " (" + closestPredecessor.getId() + "):");
+                }
+
+                response.copy(serverResponse);
+                // The coordinates are those of a further hop, not of the node that was asked
+                response.setCoordinates(null);
+            } catch (IOException e) {
+                e.printStackTrace();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @brief   Find the Nodes most suitable for a batch of fingers. The ones owned by the current node or its
+     *          successors are answered right away, the others are grouped by the finger they are forwarded to, and
+     *          every group is sent on as a single batch before waiting for the first of them
+     * @param   ids         Fingers' identifications
+     * @param   response    Message overwritten with the response, of the form FINGERS_FOUND:IP:PORT,IP:PORT,... in the
+     *                      order of the ids (left empty for the fingers that could not be found)
+     */
+    private void findFingers(RingId[] ids, Message response) {
+        Finger[] fingers = new Finger[ids.length];
+        Finger self = new Finger(this.node.getIpAddr(), this.node.getPort());
+
+        // Positions of the ids that must be forwarded, by the id of their next hop
+        Map<RingId, List<Integer>> forwarded = new LinkedHashMap<>();
+        Map<RingId, Finger> nextHops = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            RingId queryId = ids[i];
+            Finger owner;
+            if (this.doesIdReferToCurrentNode(queryId)) {
+                fingers[i] = self;
+            } else if ((owner = this.findSuccessorOwning(queryId)) != null) {
+                fingers[i] = owner;
+            } else {
+                Finger closestPredecessor = this.node.nextHop(queryId);
+                List<Integer> positions = forwarded.get(closestPredecessor.getId());
+                if (positions == null) {
+                    positions = new ArrayList<>();
+                    forwarded.put(closestPredecessor.getId(), positions);
+                    nextHops.put(closestPredecessor.getId(), closestPredecessor);
+                }
+                positions.add(i);
+            }
+        }
+
+        // Send the batch of every next hop, then wait for them
+        List<Connection> connections = new ArrayList<>();
+        List<PendingFingers> batches = new ArrayList<>();
+        List<List<Integer>> batchPositions = new ArrayList<>();
+        for (Map.Entry<RingId, List<Integer>> entry : forwarded.entrySet()) {
+            Finger nextHop = nextHops.get(entry.getKey());
+            RingId[] batch = new RingId[entry.getValue().size()];
+            for (int j = 0; j < batch.length; j++) {
+                batch[j] = ids[entry.getValue().get(j)];
+            }
+
+            Connection connection = null;
+            try {
+                connection = this.node.getConnectionPool().borrow(nextHop.getIpAddr(), nextHop.getPort(), true);
+                batches.add(PendingFingers.request(connection, batch));
+                connections.add(connection);
+                batchPositions.add(entry.getValue());
+            } catch (IOException e) {
+                if (connection != null) {
+                    this.node.getConnectionPool().invalidate(connection);
+                }
+                e.printStackTrace();
+            }
+        }
+        for (int b = 0; b < batches.size(); b++) {
+            try {
+                Finger[] found = batches.get(b).get();
+                for (int j = 0; j < found.length; j++) {
+                    fingers[batchPositions.get(b).get(j)] = found[j];
+                }
+                this.node.getConnectionPool().release(connections.get(b));
+            } catch (IOException e) {
+                this.node.getConnectionPool().giveBack(connections.get(b), e);
+                e.printStackTrace();
+            }
+        }
+
+        response.reset(Command.FINGERS_FOUND);
+        response.setFingers(fingers);
+    }
+
+    /**
+     * @brief   Tell the origin of an iterative lookup where to go next, without contacting any other node
+     * @param   id          Finger/Item's identification
+     * @param   response    Message overwritten with the response, of the form FINGER_FOUND:XXX.XXX.XXX.XXX:PPPP if
+     *                      the owner of the id is the current node or one of its successors, otherwise
+     *                      NEXT_HOP:XXX.XXX.XXX.XXX:PPPP with the closest preceding finger
+     */
+    private void findNextHop(RingId id, Message response) {
+        RingId queryId = id;
+        Finger owner;
+
+        if (this.doesIdReferToCurrentNode(queryId)) {
+            response.reset(Command.FINGER_FOUND);
+            response.setAddress(this.node.getIpAddr(), this.node.getPort());
+        } else if((owner = this.findSuccessorOwning(queryId)) != null) {
+            response.reset(Command.FINGER_FOUND);
+            response.setAddress(owner.getIpAddr(), owner.getPort());
+        } else {
+            Finger closestPredecessor = this.node.nextHop(queryId);
+            response.reset(Command.NEXT_HOP);
+            response.setAddress(closestPredecessor.getIpAddr(), closestPredecessor.getPort());
+        }
+    }
+
+    /**
+     * @brief   Serve a direct-reply lookup: if the current node knows the owner of the id it sends the answer to the
+     *          origin of the lookup, otherwise it forwards the query to the next hop. Either way it does not wait for
+     *          anything
+     * @param   query   FIND_FINGER_DIRECT or FIND_ITEM_DIRECT query, carrying the address of the origin
+     */
+    private void findDirect(Message query) {
+        RingId queryId = query.getId();
+        boolean finger = query.getType() == Command.FIND_FINGER_DIRECT;
+        Message reply = null;
+        Finger nextHop = null;
+        Finger owner;
+
+        // Items are answered by their owner only, fingers by any node that knows the owner
+        if (this.doesIdReferToCurrentNode(queryId)) {
+            reply = Message.directReply(query.getLookupId(), this.node.getIpAddr(), this.node.getPort(),
+                    finger ? null : this.node.getItemTable().get(queryId));
+        } else if ((owner = this.findSuccessorOwning(queryId)) != null) {
+            if (finger) {
+                reply = Message.directReply(query.getLookupId(), owner.getIpAddr(), owner.getPort(), null);
+            } else {
+                nextHop = owner;
+            }
+        } else {
+            nextHop = this.node.nextHop(queryId);
+        }
+
+        try {
+            if (reply != null) {
+                this.node.getConnectionPool().send(query.getIpAddr(), query.getPort(), reply);
+            } else {
+                Message forward = new Message();
+                forward.copy(query);
+                this.node.getConnectionPool().send(nextHop, forward);
+            }
+        } catch (IOException e) {
+            // The origin retries recursively when the reply does not arrive
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @brief   Forget the node, by deleting it from the the FingerTable and predecessors
+     * @param   id  Finger's identification
+     * @return  The message to send back of the form FINGER_FOUND:XXX.XXX.XXX.XXX:PPPP if it found a valid candidate,
+     *          "NOT_FOUND" otherwise
+     */
+    private Message forgetFinger(RingId id) {
+        RingId queryId = id;
+
+        // Replace the node notified in the FingerTable, successors and predecessors, and look up again the fingers
+        // that pointed to it
+        Stabilizer stabilizer = this.node.getStabilizer();
+        if (stabilizer != null) {
+            stabilizer.forgetNode(queryId);
+        } else {
+            this.node.forgetNode(queryId);
+        }
+
+        Chord.cLogPrint("Node " + queryId.toString() + " has been removed from the finger table and predecessors..");
+
+        return new Message(Chord.FINGER_FORGOTTEN);
+    }
+
+    /**
+     * @brief   Find the Item with the key we are passed as argument. Get the key from the node with the smaller id but greater than the key.
+     * @param   key  Item's Key
+     * @return  The message to send back of the form ITEM_FOUND:... if it has found a valid candidate, "NOT_FOUND" otherwise
+     */
+    private Message findItemByKey(RingId key) {
+        RingId queryId = key;
+        Finger owner;
+        Message response = new Message(Chord.NOT_FOUND);
+
+        // If the query is greater than our predecessor id and less than equal to our id then we have the value
+        if (this.doesIdReferToCurrentNode(queryId)) {
+            response = Message.itemFound(this.node.getIpAddr(), this.node.getPort(), this.node.getItemTable().get(queryId));
+            // Tell the origin the range of ids we own, so that it can come straight back to us
+            response.setRange(this.node.getFirstPredecessor().getId(), this.node.getIpAddr(), this.node.getPort());
+        } else if ((owner = this.findSuccessorOwning(queryId)) != null) {
+            try {
+                // Send query to chord and read its response
+                Message serverResponse = this.node.getConnectionPool().request(owner, Message.withId(Chord.FIND_ITEM, key));
+                Chord.cLogPrint("Sent: " + Chord.FIND_ITEM + ":" + key);
+                Chord.cLogPrint("Response from node " + owner.getIpAddr() + ", port " + owner.getPort() + ", position " + " (" + owner.getId() + "):");
+
+                response = serverResponse;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        } else { // We don't have the query so we must search our fingers for it
+            // Look for a node identifier in the finger table that is less than the key id and closest in the ID space to the key id
+            // (or greater than it, among the counter-clockwise fingers)
+            Finger closestPredecessor = this.node.nextHop(queryId);
+
+            Chord.cLogPrint("queryid: " + queryId + " minimum distance: " + closestPredecessor.getId().distanceTo(queryId) + " on " + closestPredecessor.getIpAddr() + ":" + closestPredecessor.getPort());
+
+            try {
+                // Send query to chord and read its response
+                Message serverResponse = this.node.getConnectionPool().request(closestPredecessor, Message.withId(Chord.FIND_ITEM, key));
+                Chord.cLogPrint("Sent: " + Chord.FIND_ITEM + ":" + key);
+                Chord.cLogPrint("Response from node " + closestPredecessor.getIpAddr() + ", port " + closestPredecessor.getPort() + ", position " + " (" + closestPredecessor.getId() + "):");
+
+                response = serverResponse;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        return response;
+    }
+
+    /**
+     * @brief   Find the Item with the key we are passed as argument. Get the key from the node with the smaller id but greater than the key.
+     *          When the item is not ours the query is forwarded from its header only: its payload is sent on as it
+     *          was received, without being decoded
+     * @param   query   PLACE_ITEM query, carrying the Item's Key and the Item
+     * @return  The message to send back of the form ITEM_FOUND:... if it has found a valid candidate, "NOT_FOUND" otherwise
+     */
+    private Message placeItem(Message query) {
+        RingId key = query.getId();
+        RingId itemKey = key;
+        Message response = new Message(Chord.NOT_FOUND);
+
+        // If the query is greater than our predecessor id and less than equal to our id then we have the value
+        if (this.shouldItemBeStoredOnCurrentNode(itemKey)) {
+            // Add the Item on the ItemTable and send back the feedback
+            String item = query.getItem();
+            if (item != null) {
+                this.node.getItemTable().put(key, item);
+            }
+            response = Message.withId(Chord.ITEM_PLACED, node.getId());
+            response.setRange(this.node.getFirstPredecessor().getId(), this.node.getIpAddr(), this.node.getPort());
+            Chord.cLogPrint("PlacedItem: key=" + key + ", item=" + item);
+        } else { // We don't have the query so we must search our fingers for it
+            // Look for the finger with the smallest id that is not less than the key. If there is none, we should
+            // forward the request anyway to the finger with the larger id
+            RoutingIndex index = this.node.getRoutingIndex();
+            Finger closestSuccessor = index.ceiling(itemKey);
+            if(closestSuccessor == null){
+                closestSuccessor = index.last();
+            }
+
+            // If the ItemKey is greater than the Node's Id, but the node is already the greatest among fingers (no
+            // finger's id is greater than the item key nor the node key), then it should go to the smallest finger
+            boolean itemIsGreaterThanAllFingers = index.higher(itemKey) == null;
+            boolean nodeIsGreaterThanAllFingers = index.higher(node.getId()) == null;
+            if(nodeIsGreaterThanAllFingers && itemIsGreaterThanAllFingers && itemKey.compareTo(node.getId()) > 0){
+                if(index.first() != null)
+                    closestSuccessor = index.first();
+            }
+
+            //Chord.cLogPrint("queryid: " + itemKey + " minimum distance: " + minimumDistance + " on " + closestSuccessor.getIpAddr() + ":" + closestSuccessor.getPort());
+
+            try {
+                // Send query to chord and read its response
+                Message forward = new Message();
+                forward.copy(query);
+                Message serverResponse = this.node.getConnectionPool().request(closestSuccessor, forward);
+                if (Chord.isEnableLogs()) {
+                    Chord.cLogPrint("Sent: " + forward);
+                }
+                Chord.cLogPrint("Response from node " + closestSuccessor.getIpAddr() + ", port " + closestSuccessor.getPort() + ", position " + " (" + closestSuccessor.getId() + "):");
+
+                response = serverResponse;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        return response;
+    }
+
+    /**
+     * @brief   Control whether the id passed as argument refers to the current node
+     * @param   queryId     Finger/Node's identification
+     * @return  True if it does refer to the current node, False otherwise
+     */
+    private boolean doesIdReferToCurrentNode(RingId queryId) {
+        // The query belongs to us if it is in (predecessor, us], wrapping around the ring if needed
+        return queryId.isBetween(this.node.getFirstPredecessor().getId(), this.node.getId());
+    }
+
+    /**
+     * @brief   Control
+     * @param   itemKey
+     * @return  True if it does refer to the current node, False otherwise
+     */
+    private boolean shouldItemBeStoredOnCurrentNode(RingId itemKey) {
+        boolean response = false;
+        RoutingIndex index = this.node.getRoutingIndex();
+
+        // Find if any finger id is larger than the item's key and smaller that the current node: the first finger
+        // after the item's key is the only candidate
+        Finger nextFinger = index.higher(itemKey);
+        boolean noFingerIsBetter = nextFinger == null || nextFinger.getId().compareTo(node.getId()) >= 0;
+
+        // Find at least one finger's id that is greater than the item key
+        boolean itemIsGreaterThanAllFingers = nextFinger == null;
+
+        // Find at least one finger id that is smaller than the node's id
+        boolean nodeIsSmallerThanAllFingers = index.isEmpty() || index.first().getId().compareTo(node.getId()) >= 0;
+
+        // If the item's key is between our predecessor and us, the item belongs to us
+        if ((itemKey.compareTo(this.node.getId()) <= 0) && noFingerIsBetter){// && !itemIsGreaterThanAllFingers) {
+            response = true;
+        }
+        // If the Item's key is greater than all the fingers ids than the node that should
+        // host the item is he one with the smallest id (overflow of the ring)
+        else if(itemIsGreaterThanAllFingers && nodeIsSmallerThanAllFingers){
+            response = true;
+        }
+
+        return response;
+    }
+
+    /**
+     * @brief   Find the successor that owns the id passed as argument, if it is one of the successor list: the first
+     *          successor s_i with the id in (s_i-1, s_i], s_0 being the current node
+     * @param   queryId     Finger/Node's identification
+     * @return  The successor owning the id, null if it comes after the whole successor list
+     */
+    private Finger findSuccessorOwning(RingId queryId) {
+        RingId previous = this.node.getId();
+        for (Finger successor : this.node.getRoutingState().getSuccessors()) {
+            // Wrapping around the ring if needed
+            if (queryId.isBetween(previous, successor.getId())) {
+                return successor;
+            }
+            previous = successor.getId();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,171 @@
+package com.distribsystems.p2p.chord_lib;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Command: the commands exchanged between the nodes, with the opcode identifying them in the binary frames and the
+ * fields each frame carries. The opcode of a command is its position in the enum + 1, so new commands must only be
+ * added at the end. Queries that only read the state of the node, and never wait for another node, are served
+ * inline by the thread that decodes them instead of being handed to a worker. Queries of the control plane keep the
+ * ring together, so they are kept apart from the item traffic both on the wire and on the server, where the workers
+ * reserved to them only take the ones that never wait for another node
+ */
+public enum Command {
+    FIND_FINGER           (Chord.FIND_FINGER,            Command.ID,                                      false, true),
+    FINGER_FOUND          (Chord.FINGER_FOUND,           Command.ADDRESS | Command.COORDINATES,           false, false),
+    FORGET_FINGER         (Chord.FORGET_FINGER,          Command.ID,                                      false, true),
+    FINGER_FORGOTTEN      (Chord.FINGER_FORGOTTEN,       0,                                               false, false),
+    NEW_PREDECESSOR       (Chord.NEW_PREDECESSOR,        Command.ADDRESS,                                 false, true),
+    REQUEST_PREDECESSOR   (Chord.REQUEST_PREDECESSOR,    Command.ID,                                      true,  true),
+    PREDECESSOR           (Chord.PREDECESSOR,            Command.ADDRESS,                                 false, false),
+    PING                  (Chord.PING,                   Command.ID,                                      true,  true),
+    PONG                  (Chord.PONG,                   Command.COORDINATES,                             false, false),
+    FIND_ITEM             (Chord.FIND_ITEM,              Command.ID,                                      false, false),
+    ITEM_FOUND            (Chord.ITEM_FOUND,             Command.ADDRESS | Command.ITEM | Command.RANGE,  false, false),
+    PLACE_ITEM            (Chord.PLACE_ITEM,             Command.ID | Command.ITEM,                       false, false),
+    ITEM_PLACED           (Chord.ITEM_PLACED,            Command.ID | Command.RANGE,                      false, false),
+    NOT_FOUND             (Chord.NOT_FOUND,              0,                                               false, false),
+    FIND_NEXT_HOP         (Chord.FIND_NEXT_HOP,          Command.ID,                                      true,  false),
+    NEXT_HOP              (Chord.NEXT_HOP,               Command.ADDRESS,                                 false, false),
+    FIND_FINGER_DIRECT    (Chord.FIND_FINGER_DIRECT,     Command.ID | Command.ADDRESS | Command.LOOKUP,   false, true),
+    FIND_ITEM_DIRECT      (Chord.FIND_ITEM_DIRECT,       Command.ID | Command.ADDRESS | Command.LOOKUP,   false, false),
+    DIRECT_REPLY          (Chord.DIRECT_REPLY,           Command.ADDRESS | Command.ITEM | Command.LOOKUP, true,  false),
+    FIND_FINGERS          (Chord.FIND_FINGERS,           Command.IDS,                                     false, true),
+    FINGERS_FOUND         (Chord.FINGERS_FOUND,          Command.FINGERS,                                 false, false),
+    REQUEST_ROUTING_STATE (Chord.REQUEST_ROUTING_STATE,  0,                                               true,  true),
+    ROUTING_STATE         (Chord.ROUTING_STATE,          Command.FINGERS,                                 false, false),
+    REQUEST_ID_BITS       (Chord.REQUEST_ID_BITS,        0,                                               true,  true),
+    ID_BITS               (Chord.ID_BITS,                Command.BITS,                                    false, false),
+    NEW_SUCCESSOR         (Chord.NEW_SUCCESSOR,          Command.ADDRESS,                                 false, true),
+    REQUEST_SUCCESSORS    (Chord.REQUEST_SUCCESSORS,     0,                                               true,  true),
+    SUCCESSORS            (Chord.SUCCESSORS,             Command.FINGERS,                                 false, false),
+    REQUEST_PREDECESSORS  (Chord.REQUEST_PREDECESSORS,   0,                                               true,  true),
+    PREDECESSORS          (Chord.PREDECESSORS,           Command.FINGERS,                                 false, false);
+
+    // Fields carried by the binary frame of each command
+    final static int ID         = 1;
+    final static int ADDRESS    = 2;
+    final static int ITEM       = 4;
+    final static int LOOKUP     = 8;
+    // Optional, at the end of the frame (older nodes skip it): the id of the predecessor of the node answering, and
+    // its address if the command does not carry it already
+    final static int RANGE      = 16;
+    // Lists of up to 65535 entries: [count:short] followed by the ids, or by the addresses (an empty address standing
+    // for an id whose owner could not be found, or for a node that is not known)
+    final static int IDS        = 32;
+    final static int FINGERS    = 64;
+    // The number of bits of the identifiers of the ring, as [bits:short] (it does not depend on the width itself)
+    final static int BITS       = 128;
+    // Optional, at the end of the frame (older nodes skip it): the network coordinates of the node answering, as
+    // [x:float][y:float][height:float][error:float]. A FINGER_FOUND only carries them if it was answered by the node
+    // that was asked, not forwarded from a further hop
+    final static int COORDINATES = 256;
+
+    private final static Command[]              BY_OPCODE = values();
+    private final static Map<String, Command>   BY_NAME = new HashMap<>();
+    static {
+        for (Command command : BY_OPCODE) {
+            BY_NAME.put(command.text, command);
+        }
+    }
+
+    private final String    text;
+    private final int       fields;
+    private final boolean   inline;
+    private final boolean   control;
+
+    Command(String text, int fields, boolean inline, boolean control) {
+        this.text = text;
+        this.fields = fields;
+        this.inline = inline;
+        this.control = control;
+    }
+
+    /**
+     * @return  The command as it is written in the text protocol
+     */
+    public String getText() {
+        return text;
+    }
+
+    public int getOpcode() {
+        return ordinal() + 1;
+    }
+
+    /**
+     * @return  True if the query can be served by the thread that decoded it
+     */
+    public boolean isServedInline() {
+        return inline;
+    }
+
+    /**
+     * @return  True if the query is answered by the node receiving it, False if it is only a notification
+     */
+    public boolean expectsResponse() {
+        switch (this) {
+            case NEW_PREDECESSOR:
+            case FIND_FINGER_DIRECT:
+            case FIND_ITEM_DIRECT:
+            case DIRECT_REPLY:
+            case NEW_SUCCESSOR:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * @return  True if the query belongs to the control plane (heartbeats, stabilization and finger maintenance),
+     *          which is served before the item traffic and travels on its own connection
+     */
+    public boolean isControl() {
+        return control;
+    }
+
+    /**
+     * @return  True if serving the query may wait for another node: a lookup forwarded to the next hop, or an item
+     *          handed over to its owner
+     */
+    public boolean isForwarded() {
+        switch (this) {
+            case FIND_FINGER:
+            case FIND_FINGERS:
+            case FIND_FINGER_DIRECT:
+            case FIND_ITEM:
+            case FIND_ITEM_DIRECT:
+            case PLACE_ITEM:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return  True if the query is executed by the workers reserved to the control plane: the control queries that do
+     *          not wait for any other node. The lookups of the control plane go to the other workers, so that a burst of
+     *          them waiting on their next hops can not hold back the heartbeats and the stabilization
+     */
+    public boolean isServedByControlWorkers() {
+        return control && !isForwarded();
+    }
+
+    boolean has(int field) {
+        return (fields & field) != 0;
+    }
+
+    /**
+     * @return  The command with the given opcode, null if there is none
+     */
+    public static Command fromOpcode(int opcode) {
+        return opcode >= 1 && opcode <= BY_OPCODE.length ? BY_OPCODE[opcode - 1] : null;
+    }
+
+    /**
+     * @return  The command written as text in the text protocol, null if there is none
+     */
+    public static Command fromText(String text) {
+        return BY_NAME.get(text);
+    }
+}
@@ -0,0 +1,191 @@
+package com.distribsystems.p2p.chord_lib;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression: Deflater-based compression of the item payloads carried by the binary frames, used only with the
+ * nodes that agreed on PROTOCOL_VERSION 3 or later. Items smaller than COMPRESSION_THRESHOLD, and items that do not
+ * get any smaller, are sent as they are. All the nodes must be configured with the same dictionary (if any), as for
+ * the number of bits of the identifiers (Chord.getFingerTableSize()).
+ * It also keeps the metrics of the bytes saved and of the time spent compressing and inflating
+ */
+public class Compression {
+    // Encodings of an item payload, carried in the high bits of the opcode
+    final static int RAW                    = 0;
+    final static int DEFLATE                = 0x80;
+    final static int DEFLATE_DICTIONARY     = 0xC0;
+
+    private final static ThreadLocal<Deflater> DEFLATERS = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Chord.COMPRESSION_LEVEL);
+        }
+    };
+    private final static ThreadLocal<Inflater> INFLATERS = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater();
+        }
+    };
+
+    private final static AtomicLong compressedItems = new AtomicLong();
+    private final static AtomicLong uncompressedItems = new AtomicLong();
+    private final static AtomicLong bytesBeforeCompression = new AtomicLong();
+    private final static AtomicLong bytesAfterCompression = new AtomicLong();
+    private final static AtomicLong compressionNanos = new AtomicLong();
+    private final static AtomicLong inflatedItems = new AtomicLong();
+    private final static AtomicLong inflationNanos = new AtomicLong();
+
+    /**
+     * @brief   Compress an item payload if it is worth it
+     * @param   raw UTF-8 bytes of the item
+     * @return  The compressed payload, null if the item must be sent as it is
+     */
+    static ByteBuffer compress(ByteBuffer raw) {
+        int length = raw.remaining();
+        if (length < Chord.COMPRESSION_THRESHOLD) {
+            return null;
+        }
+
+        long start = System.nanoTime();
+        byte[] input = new byte[length];
+        raw.duplicate().get(input);
+
+        Deflater deflater = DEFLATERS.get();
+        deflater.reset();
+        byte[] dictionary = Chord.getCompressionDictionary();
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary);
+        }
+        deflater.setInput(input);
+        deflater.finish();
+
+        // Only a payload that gets smaller is worth inflating on the other side
+        byte[] output = new byte[length];
+        int compressedLength = 0;
+        while (!deflater.finished() && compressedLength < output.length) {
+            compressedLength += deflater.deflate(output, compressedLength, output.length - compressedLength);
+        }
+        compressionNanos.addAndGet(System.nanoTime() - start);
+        if (!deflater.finished()) {
+            uncompressedItems.incrementAndGet();
+            return null;
+        }
+
+        compressedItems.incrementAndGet();
+        bytesBeforeCompression.addAndGet(length);
+        bytesAfterCompression.addAndGet(compressedLength);
+        return ByteBuffer.wrap(output, 0, compressedLength).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * @brief   Inflate a payload compressed by compress()
+     * @param   compressed  Compressed payload
+     * @param   encoding    DEFLATE or DEFLATE_DICTIONARY
+     * @return  The UTF-8 bytes of the item
+     * @throws  IOException if the payload is corrupted, too large, or needs a dictionary different from ours
+     */
+    static ByteBuffer inflate(ByteBuffer compressed, int encoding) throws IOException {
+        long start = System.nanoTime();
+        byte[] input = new byte[compressed.remaining()];
+        compressed.duplicate().get(input);
+
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(input);
+
+        byte[] output = new byte[Math.max(64, input.length * 4)];
+        int length = 0;
+        try {
+            while (!inflater.finished()) {
+                if (length == output.length) {
+                    if (output.length >= Chord.MAX_MESSAGE_LENGTH) {
+                        throw new IOException("Inflated item too large");
+                    }
+                    byte[] grown = new byte[Math.min(output.length * 2, Chord.MAX_MESSAGE_LENGTH)];
+                    System.arraycopy(output, 0, grown, 0, length);
+                    output = grown;
+                }
+                int count = inflater.inflate(output, length, output.length - length);
+                length += count;
+                if (count == 0 && inflater.needsDictionary()) {
+                    byte[] dictionary = Chord.getCompressionDictionary();
+                    if (encoding != DEFLATE_DICTIONARY || dictionary == null) {
+                        throw new IOException("Compressed item needs a dictionary");
+                    }
+                    inflater.setDictionary(dictionary);
+                } else if (count == 0 && inflater.needsInput()) {
+                    throw new IOException("Truncated compressed item");
+                }
+            }
+        } catch (DataFormatException | IllegalArgumentException e) {
+            throw new IOException("Corrupted compressed item: " + e.getMessage());
+        }
+
+        inflatedItems.incrementAndGet();
+        inflationNanos.addAndGet(System.nanoTime() - start);
+        return ByteBuffer.wrap(output, 0, length).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * @return  The encoding of the payloads produced by compress() with the current configuration
+     */
+    static int encoding() {
+        return Chord.getCompressionDictionary() != null ? DEFLATE_DICTIONARY : DEFLATE;
+    }
+
+    public static long getCompressedItems() {
+        return compressedItems.get();
+    }
+
+    /**
+     * @return  Number of items above the threshold that were sent uncompressed because they did not get smaller
+     */
+    public static long getUncompressedItems() {
+        return uncompressedItems.get();
+    }
+
+    public static long getBytesBeforeCompression() {
+        return bytesBeforeCompression.get();
+    }
+
+    public static long getBytesAfterCompression() {
+        return bytesAfterCompression.get();
+    }
+
+    /**
+     * @return  Bytes that did not travel thanks to the compression
+     */
+    public static long getBytesSaved() {
+        return bytesBeforeCompression.get() - bytesAfterCompression.get();
+    }
+
+    public static long getCompressionNanos() {
+        return compressionNanos.get();
+    }
+
+    public static long getInflatedItems() {
+        return inflatedItems.get();
+    }
+
+    public static long getInflationNanos() {
+        return inflationNanos.get();
+    }
+
+    /**
+     * @return  A one line summary of the metrics
+     */
+    public static String report() {
+        long before = getBytesBeforeCompression();
+        return String.format("compressed %d items (%d skipped): %d -> %d bytes (ratio %.2f, %d bytes saved), " +
+                        "%.1f ms compressing, %d items inflated in %.1f ms",
+                getCompressedItems(), getUncompressedItems(), before, getBytesAfterCompression(),
+                before > 0 ? (double) before / getBytesAfterCompression() : 1.0, getBytesSaved(),
+                getCompressionNanos() / 1e6, getInflatedItems(), getInflationNanos() / 1e6);
+    }
+}
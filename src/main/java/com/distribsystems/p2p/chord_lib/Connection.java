@@ -0,0 +1,318 @@
+package com.distribsystems.p2p.chord_lib;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connection: a single socket towards another node that can be borrowed from the ConnectionPool and used for more
+ * than one request. When it is opened it negotiates the binary protocol with the other node, falling back to the
+ * text protocol if the node does not support it.
+ * With the binary protocol every frame carries a request id, so the connection is multiplexed: any number of threads
+ * can send their queries on it at the same time and a reader thread hands each response to the query it belongs to,
+ * in whatever order they arrive. With the text protocol queries and responses are strictly one after the other
+ */
+public class Connection {
+    private final String                                key;
+    private final Socket                                socket;
+    private final InputStream                           in;
+    private final OutputStream                          out;
+    private int                                         version = 1;
+    private final AtomicInteger                         nextRequestId = new AtomicInteger(1);
+    private final Map<Integer, PendingResponse>         pending = new ConcurrentHashMap<>();
+    private FrameWriter                                 writer;
+    private volatile boolean                            closed = false;
+    private volatile long                               lastUsed;
+    private volatile boolean                            reused = false;
+
+    /**
+     * @brief   Open a new connection to the node at ipAddress:port
+     * @param   key         Key of the connection in the ConnectionPool (of the form IP_ADDRESS:PORT)
+     * @param   ipAddress   IP Address of the node to connect to
+     * @param   port        PORT number of the node to connect to
+     * @throws  IOException if the node can not be reached
+     */
+    Connection(String key, String ipAddress, int port) throws IOException {
+        this.key = key;
+        this.socket = new Socket();
+        try {
+            this.socket.connect(new InetSocketAddress(ipAddress, port), Chord.SOCKET_TIMEOUT*1000);
+            this.socket.setSoTimeout(Chord.SOCKET_TIMEOUT*1000);
+            this.socket.setTcpNoDelay(true);
+
+            // Open reader/writer to chord node
+            this.in = new BufferedInputStream(this.socket.getInputStream());
+            this.out = new BufferedOutputStream(this.socket.getOutputStream());
+
+            if (Chord.isBinaryProtocol()) {
+                negotiate();
+            }
+        } catch (IOException e) {
+            this.socket.close();
+            throw e;
+        }
+        this.lastUsed = System.currentTimeMillis();
+
+        if (isBinary()) {
+            // The reader waits for the responses indefinitely, every request has its own timeout
+            this.socket.setSoTimeout(0);
+            this.writer = new FrameWriter(this.out);
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    readResponses();
+                }
+            }, "Connection-" + key);
+            reader.setDaemon(true);
+            reader.start();
+        }
+    }
+
+    /**
+     * @brief   Offer the binary protocol to the node: older nodes simply answer PONG to the handshake
+     * @throws  IOException if the node did not respond
+     */
+    private void negotiate() throws IOException {
+        this.out.write((MessageCodec.handshakeQuery() + "\n").getBytes(MessageCodec.UTF8));
+        this.out.flush();
+
+        String serverResponse = MessageCodec.readLine(this.in);
+        if (serverResponse == null) {
+            throw new EOFException("Connection closed by " + this.key);
+        }
+        this.version = MessageCodec.handshakeVersion(serverResponse);
+        Chord.cLogPrint("Protocol version " + this.version + " agreed with " + this.key);
+    }
+
+    /**
+     * @brief   Send a query and wait for its response
+     * @param   query   Message to send to the node
+     * @return  The message received as response
+     * @throws  IOException if the node did not respond or closed the connection
+     */
+    public Message request(Message query) throws IOException {
+        return requestAsync(query).get();
+    }
+
+    /**
+     * @brief   Send a query without waiting for its response, so that more queries can be sent in the meantime.
+     *          With the text protocol the response is read right away
+     * @param   query   Message to send to the node
+     * @return  The response, to be waited for with PendingResponse.get()
+     * @throws  IOException if the query could not be sent
+     */
+    public PendingResponse requestAsync(Message query) throws IOException {
+        if (!isBinary()) {
+            return PendingResponse.completed(requestText(query));
+        }
+
+        int requestId = this.nextRequestId.getAndIncrement();
+        PendingResponse response = new PendingResponse(this, requestId);
+        this.pending.put(requestId, response);
+        query.setRequestId(requestId);
+        try {
+            if (this.closed) {
+                throw new IOException("Connection to " + this.key + " is closed");
+            }
+            MessageCodec.preparePayload(query, this.version);
+            this.writer.write(query);
+        } catch (IOException e) {
+            this.pending.remove(requestId);
+            close();
+            throw e;
+        }
+        this.lastUsed = System.currentTimeMillis();
+        return response;
+    }
+
+    /**
+     * @brief   Send a query on the text protocol and read the line it receives as response
+     */
+    private Message requestText(Message query) throws IOException {
+        send(query);
+
+        // Read response from chord
+        String serverResponse = MessageCodec.readLine(this.in);
+        if (serverResponse == null) {
+            throw new EOFException("Connection closed by " + this.key);
+        }
+        return MessageCodec.decodeText(serverResponse, query.getCommand());
+    }
+
+    /**
+     * @brief   Send a message that does not expect any response
+     * @param   message Message to send to the node
+     * @throws  IOException if the message could not be written
+     */
+    public void send(Message message) throws IOException {
+        message.setRequestId(this.nextRequestId.getAndIncrement());
+        if (isBinary()) {
+            try {
+                MessageCodec.preparePayload(message, this.version);
+                this.writer.write(message);
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        } else {
+            MessageCodec.writeText(this.out, message);
+            this.out.flush();
+        }
+    }
+
+    /**
+     * @brief   Reader thread of a multiplexed connection: hand every response to the query waiting for it, until
+     *          the connection is closed. Then fail all the queries still waiting
+     */
+    private void readResponses() {
+        IOException failure;
+        try {
+            while (true) {
+                Message response = MessageCodec.readFrame(this.in);
+                PendingResponse request = this.pending.remove(response.getRequestId());
+                // The request may have already timed out
+                if (request != null) {
+                    request.complete(response);
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+
+        close();
+        for (Integer requestId : this.pending.keySet()) {
+            PendingResponse request = this.pending.remove(requestId);
+            if (request != null) {
+                request.fail(failure);
+            }
+        }
+    }
+
+    /**
+     * @brief   Forget a query whose response did not arrive in time
+     */
+    void cancel(int requestId) {
+        this.pending.remove(requestId);
+    }
+
+    /**
+     * @brief   Control whether the connection can still be used: the socket must be open and, with the text
+     *          protocol, there must not be any pending data (which would mean that a response has arrived after its
+     *          request had already timed out)
+     * @return  True if the connection can be reused, False otherwise
+     */
+    boolean isHealthy() {
+        if (this.closed || this.socket.isClosed() || !this.socket.isConnected() || this.socket.isInputShutdown() || this.socket.isOutputShutdown()) {
+            return false;
+        }
+        if (isBinary()) {
+            return true;
+        }
+        try {
+            return this.in.available() == 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @brief   Close the socket and its streams
+     */
+    void close() {
+        this.closed = true;
+        try {
+            this.socket.close();
+        } catch (IOException e) {
+            // The socket is being discarded anyway
+        }
+    }
+
+    /**
+     * @return  True if the binary protocol has been agreed with the node
+     */
+    public boolean isBinary() {
+        return version >= 2;
+    }
+
+    /**
+     * @return  True if the node understands the batched FIND_FINGERS query
+     */
+    public boolean isBatching() {
+        return version >= 4;
+    }
+
+    /**
+     * @return  True if the node can transfer its routing state with REQUEST_ROUTING_STATE
+     */
+    public boolean isTransferringRoutingState() {
+        return version >= 5;
+    }
+
+    /**
+     * @return  True if the node tells the number of bits of its identifiers with REQUEST_ID_BITS
+     */
+    public boolean isReportingIdBits() {
+        return version >= 6;
+    }
+
+    /**
+     * @return  True if the node understands NEW_SUCCESSOR, telling it that a node has joined right after it
+     */
+    public boolean isHintingStabilization() {
+        return version >= 7;
+    }
+
+    /**
+     * @return  True if the node tells its successor and predecessor lists with REQUEST_SUCCESSORS and
+     *          REQUEST_PREDECESSORS
+     */
+    public boolean isSendingNeighbourLists() {
+        return version >= 8;
+    }
+
+    /**
+     * @return  True if the connection can be shared by many threads at the same time
+     */
+    public boolean isMultiplexed() {
+        return isBinary();
+    }
+
+    /**
+     * @return  Number of queries still waiting for their response
+     */
+    int getPendingCount() {
+        return pending.size();
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    void touch() {
+        this.lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * @return  True if the connection has already been given back to the ConnectionPool after a request, so that a
+     *          failure on it may only mean that the node has closed it while it was idle
+     */
+    boolean isReused() {
+        return reused;
+    }
+
+    void setReused(boolean reused) {
+        this.reused = reused;
+    }
+}
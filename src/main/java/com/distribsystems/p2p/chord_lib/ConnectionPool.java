@@ -0,0 +1,292 @@
+package com.distribsystems.p2p.chord_lib;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * ConnectionPool: keeps the connections towards the other nodes open (one pool for each IP_ADDRESS:PORT) so that
+ * Node, Stabilizer and ClientHandler can reuse them instead of opening a new socket for every request.
+ * A node that speaks the binary protocol is reached through a single multiplexed connection shared by all the
+ * threads, while a node that only speaks the text protocol needs a connection for each request in flight.
+ * The queries of the control plane (see Command.isControl()) have a multiplexed connection of their own, so that a
+ * heartbeat is never written or read behind a large item
+ */
+public class ConnectionPool {
+    private final Map<String, PeerConnections> peers = new ConcurrentHashMap<>();
+    private final Timer evictionTimer = new Timer("ConnectionPoolEvictor", true);
+
+    /**
+     * Idle connections and number of connections (idle + borrowed) towards a single node
+     */
+    private static class PeerConnections {
+        final LinkedBlockingDeque<Connection> idle = new LinkedBlockingDeque<>();
+        final Semaphore permits = new Semaphore(Chord.MAX_CONNECTIONS_PER_PEER);
+        final AtomicReference<Connection> shared = new AtomicReference<>();
+        final AtomicReference<Connection> control = new AtomicReference<>();
+
+        AtomicReference<Connection> shared(boolean control) {
+            return control ? this.control : this.shared;
+        }
+    }
+
+    public ConnectionPool() {
+        // Periodically close the connections that have not been used for a while
+        long period = Chord.CONNECTION_IDLE_TIMEOUT * 1000L / 2;
+        evictionTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                evictIdleConnections();
+            }
+        }, period, period);
+    }
+
+    /**
+     * @brief   Borrow a connection to the node at ipAddress:port: the shared one if the node speaks the binary
+     *          protocol, otherwise an idle one if any is healthy
+     * @param   ipAddress   IP Address of the node
+     * @param   port        PORT number of the node
+     * @return  A connection that must be given back with release() or invalidate()
+     * @throws  IOException if the maximum number of connections to the node is in use, or the node can not be reached
+     */
+    public Connection borrow(String ipAddress, int port) throws IOException {
+        return borrow(ipAddress, port, false);
+    }
+
+    /**
+     * @brief   Borrow a connection to the node at ipAddress:port for the queries of the control plane (if control is
+     *          True) or for the item traffic
+     * @see     #borrow(String, int)
+     */
+    public Connection borrow(String ipAddress, int port, boolean control) throws IOException {
+        String key = ipAddress + ":" + port;
+        PeerConnections peer = getPeer(key);
+        AtomicReference<Connection> slot = peer.shared(control);
+
+        Connection shared = slot.get();
+        if (shared != null) {
+            if (shared.isHealthy()) {
+                return shared;
+            }
+            invalidate(shared);
+        }
+
+        try {
+            if (!peer.permits.tryAcquire(Chord.SOCKET_TIMEOUT, TimeUnit.SECONDS)) {
+                throw new IOException("Too many connections to " + key);
+            }
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while waiting for a connection to " + key);
+        }
+
+        // Most recently used connections first, discarding the ones that are no longer healthy
+        Connection connection;
+        while ((connection = peer.idle.pollFirst()) != null) {
+            if (connection.isHealthy()) {
+                return connection;
+            }
+            connection.close();
+        }
+
+        try {
+            connection = new Connection(key, ipAddress, port);
+        } catch (IOException e) {
+            peer.permits.release();
+            throw e;
+        }
+
+        // From now on all the requests to the node go through this connection (which keeps its permit)
+        if (connection.isMultiplexed()) {
+            if (slot.compareAndSet(null, connection)) {
+                return connection;
+            }
+            // Another thread has just opened a shared connection as well
+            connection.close();
+            peer.permits.release();
+            shared = slot.get();
+            if (shared == null) {
+                throw new IOException("Connection to " + key + " lost");
+            }
+            return shared;
+        }
+        return connection;
+    }
+
+    /**
+     * @brief   Give back a connection that can be used by the next request to the same node
+     * @param   connection  Connection borrowed with borrow()
+     */
+    public void release(Connection connection) {
+        PeerConnections peer = getPeer(connection.getKey());
+        connection.touch();
+        connection.setReused(true);
+        if (connection.isMultiplexed()) {
+            return;
+        }
+        peer.idle.offerFirst(connection);
+        peer.permits.release();
+    }
+
+    /**
+     * @brief   Close a connection that failed (or whose stream is no longer in sync) instead of giving it back
+     * @param   connection  Connection borrowed with borrow()
+     */
+    public void invalidate(Connection connection) {
+        PeerConnections peer = getPeer(connection.getKey());
+        connection.close();
+        if (connection.isMultiplexed()) {
+            // Only the first of the threads sharing the connection gives its permit back
+            if (peer.shared.compareAndSet(connection, null) || peer.control.compareAndSet(connection, null)) {
+                peer.permits.release();
+            }
+            return;
+        }
+        peer.permits.release();
+    }
+
+    /**
+     * @brief   Give back a connection on which a request has failed: a multiplexed connection that only missed a
+     *          response is released, since the other requests sharing it are not affected by a late response, any
+     *          other is invalidated
+     * @param   connection  Connection borrowed with borrow()
+     * @param   failure     Failure of the request
+     */
+    public void giveBack(Connection connection, IOException failure) {
+        if (failure instanceof SocketTimeoutException && connection.isMultiplexed() && connection.isHealthy()) {
+            release(connection);
+        } else {
+            invalidate(connection);
+        }
+    }
+
+    /**
+     * @brief   Send a query to the finger and wait for its response. If a connection that has already served a request
+     *          fails (for example because the node closed it while it was idle) the query is tried once more on a new
+     *          connection. A failure on a connection just opened is reported right away
+     * @param   finger  Node to query
+     * @param   query   Message to send
+     * @return  The message received as response
+     * @throws  IOException if the node can not be reached or did not respond
+     */
+    public Message request(Finger finger, Message query) throws IOException {
+        return request(finger.getIpAddr(), finger.getPort(), query);
+    }
+
+    /**
+     * @brief   Send a query to the node at ipAddress:port and wait for its response
+     * @see     #request(Finger, Message)
+     */
+    public Message request(String ipAddress, int port, Message query) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            Connection connection = borrow(ipAddress, port, query.getType().isControl());
+            boolean retry = attempt == 0 && connection.isReused();
+            try {
+                Message response = connection.request(query);
+                release(connection);
+                return response;
+            } catch (SocketTimeoutException e) {
+                giveBack(connection, e);
+                throw e;
+            } catch (IOException e) {
+                invalidate(connection);
+                if (!retry) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * @brief   Send a message that does not expect any response to the finger, tried once more like a request (see
+     *          request()) if the connection had already served a request
+     * @param   finger  Node to notify
+     * @param   message Message to send
+     * @throws  IOException if the node can not be reached
+     */
+    public void send(Finger finger, Message message) throws IOException {
+        send(finger.getIpAddr(), finger.getPort(), message);
+    }
+
+    /**
+     * @brief   Send a message that does not expect any response to the node at ipAddress:port
+     * @see     #send(Finger, Message)
+     */
+    public void send(String ipAddress, int port, Message message) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            Connection connection = borrow(ipAddress, port, message.getType().isControl());
+            boolean retry = attempt == 0 && connection.isReused();
+            try {
+                connection.send(message);
+                release(connection);
+                return;
+            } catch (IOException e) {
+                invalidate(connection);
+                if (!retry) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * @brief   Close the idle connections that have not been used for more than CONNECTION_IDLE_TIMEOUT seconds
+     */
+    public void evictIdleConnections() {
+        long expiration = System.currentTimeMillis() - Chord.CONNECTION_IDLE_TIMEOUT * 1000L;
+        for (PeerConnections peer : peers.values()) {
+            for (Connection shared : new Connection[] {peer.shared.get(), peer.control.get()}) {
+                if (shared != null && shared.getLastUsed() < expiration && shared.getPendingCount() == 0) {
+                    invalidate(shared);
+                }
+            }
+
+            Iterator<Connection> iterator = peer.idle.descendingIterator();
+            while (iterator.hasNext()) {
+                Connection connection = iterator.next();
+                if (connection.getLastUsed() < expiration && peer.idle.removeLastOccurrence(connection)) {
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * @brief   Close all the idle connections and stop the eviction timer
+     */
+    public void close() {
+        evictionTimer.cancel();
+        for (PeerConnections peer : peers.values()) {
+            for (Connection shared : new Connection[] {peer.shared.get(), peer.control.get()}) {
+                if (shared != null) {
+                    invalidate(shared);
+                }
+            }
+            Connection connection;
+            while ((connection = peer.idle.pollFirst()) != null) {
+                connection.close();
+            }
+        }
+    }
+
+    private PeerConnections getPeer(String key) {
+        PeerConnections peer = peers.get(key);
+        if (peer == null) {
+            synchronized (peers) {
+                peer = peers.get(key);
+                if (peer == null) {
+                    peer = new PeerConnections();
+                    peers.put(key, peer);
+                }
+            }
+        }
+        return peer;
+    }
+}
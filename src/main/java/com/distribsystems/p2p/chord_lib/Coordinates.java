@@ -0,0 +1,93 @@
+package com.distribsystems.p2p.chord_lib;
+
+import java.util.Random;
+
+/**
+ * Coordinates: the position of a node in the latency space of Vivaldi, that is a point of a plane plus a height
+ * (the latency of the access link of the node), so that the round-trip time between two nodes is predicted as the
+ * distance between their coordinates [milliseconds]. Coordinates also carry their error, the relative error of the
+ * last predictions, which tells how much they can be trusted. Coordinates are immutable
+ */
+public final class Coordinates {
+    public final static Coordinates ORIGIN = new Coordinates(0, 0, 0, 1);
+
+    // Weights of the adaptive timestep and of the moving average of the error
+    private final static double     CC = 0.25;
+    private final static double     CE = 0.25;
+    private final static double     MIN_HEIGHT = 0.01;                  //[milliseconds]
+    private final static double     MIN_ERROR = 0.01;
+    private final static Random     RANDOM = new Random();
+
+    private final double    x;
+    private final double    y;
+    private final double    height;
+    private final double    error;
+
+    public Coordinates(double x, double y, double height, double error) {
+        this.x = x;
+        this.y = y;
+        this.height = height;
+        this.error = error;
+    }
+
+    /**
+     * @return  The round-trip time predicted between the two nodes [milliseconds]
+     */
+    public double distanceTo(Coordinates other) {
+        return Math.hypot(this.x - other.x, this.y - other.y) + this.height + other.height;
+    }
+
+    /**
+     * @brief   Move the coordinates a step towards the position where the distance to the other node is the round-trip
+     *          time measured, a larger step the more the other node is trusted compared to this one
+     * @param   other   Coordinates told by the other node
+     * @param   rtt     Round-trip time measured [milliseconds]
+     * @return  The new coordinates
+     */
+    public Coordinates update(Coordinates other, double rtt) {
+        if (rtt <= 0) {
+            return this;
+        }
+        double distance = distanceTo(other);
+        double weight = this.error / (this.error + other.error);
+        double sampleError = Math.abs(distance - rtt) / rtt;
+        double error = Math.max(MIN_ERROR, sampleError * CE * weight + this.error * (1 - CE * weight));
+
+        // Push away from (or pull towards) the other node along the vector between them, heights included
+        double force = CC * weight * (rtt - distance);
+        double dx = this.x - other.x;
+        double dy = this.y - other.y;
+        double planar = Math.hypot(dx, dy);
+        if (planar == 0) {
+            // Same position: pick a random direction to move apart
+            double angle = RANDOM.nextDouble() * 2 * Math.PI;
+            dx = Math.cos(angle);
+            dy = Math.sin(angle);
+            planar = 1;
+        }
+        double norm = planar + this.height + other.height;
+        return new Coordinates(this.x + force * dx / norm, this.y + force * dy / norm,
+                Math.max(MIN_HEIGHT, this.height + force * (this.height + other.height) / norm), error);
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getHeight() {
+        return height;
+    }
+
+    public double getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("(%.2f, %.2f, h=%.2f, err=%.2f)", x, y, height, error);
+    }
+}
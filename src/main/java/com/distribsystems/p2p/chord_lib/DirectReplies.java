@@ -0,0 +1,44 @@
+package com.distribsystems.p2p.chord_lib;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * DirectReplies: the direct-reply lookups started by a Node that are waiting for the owner of their id to answer.
+ * The answers do not come back on the connection of the query but as DIRECT_REPLY messages received by the Server,
+ * which hands them over by lookup id
+ */
+class DirectReplies {
+    private final AtomicInteger                     nextLookupId = new AtomicInteger(1);
+    private final Map<Integer, PendingResponse>     pending = new ConcurrentHashMap<>();
+
+    /**
+     * @brief   Register a new lookup
+     * @return  The reply to wait for, whose request id is the lookup id to send along with the query
+     */
+    PendingResponse expect() {
+        int lookupId = this.nextLookupId.getAndIncrement();
+        PendingResponse reply = new PendingResponse(null, lookupId);
+        this.pending.put(lookupId, reply);
+        return reply;
+    }
+
+    /**
+     * @brief   Hand a DIRECT_REPLY to the lookup waiting for it (ignored if the lookup has already given up)
+     * @param   reply   DIRECT_REPLY received, which must not be reused afterwards
+     */
+    void complete(Message reply) {
+        PendingResponse lookup = this.pending.remove(reply.getLookupId());
+        if (lookup != null) {
+            lookup.complete(reply);
+        }
+    }
+
+    /**
+     * @brief   Forget a lookup that is not waiting anymore
+     */
+    void cancel(PendingResponse reply) {
+        this.pending.remove(reply.getRequestId());
+    }
+}
@@ -0,0 +1,104 @@
+package com.distribsystems.p2p.chord_lib;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ExecutionMode: how the Server executes the queries it receives
+ */
+public enum ExecutionMode {
+    /**
+     * A single selector thread owns all the connections and the queries are executed by a fixed pool of workers
+     */
+    SELECTOR,
+    /**
+     * Every connection is served by blocking code on its own platform thread (reused through a cached pool)
+     */
+    PLATFORM_THREADS,
+    /**
+     * Every connection is served by blocking code on its own virtual thread. Needs a runtime with virtual threads
+     * (Java 21+), otherwise it falls back to PLATFORM_THREADS
+     */
+    VIRTUAL_THREADS;
+
+    /**
+     * @brief   Create an executor that runs every task on its own thread, of the kind chosen by the mode
+     * @param   name    Prefix of the names of the threads
+     * @return  The executor (cached platform threads for SELECTOR and PLATFORM_THREADS)
+     */
+    public ExecutorService newTaskExecutor(String name) {
+        if (this == VIRTUAL_THREADS) {
+            ExecutorService executor = newVirtualThreadExecutor();
+            if (executor != null) {
+                return executor;
+            }
+            Chord.cLogPrint("Virtual threads are not supported by this runtime, using platform threads");
+        }
+        return Executors.newCachedThreadPool(newThreadFactory(name));
+    }
+
+    /**
+     * @brief   Create a factory of threads of the kind chosen by the mode, for the executors that keep their own pool of
+     *          threads
+     * @param   name    Prefix of the names of the threads
+     * @return  The factory (daemon platform threads for SELECTOR and PLATFORM_THREADS)
+     */
+    public ThreadFactory newPooledThreadFactory(String name) {
+        if (this == VIRTUAL_THREADS) {
+            ThreadFactory factory = newVirtualThreadFactory(name);
+            if (factory != null) {
+                return factory;
+            }
+            Chord.cLogPrint("Virtual threads are not supported by this runtime, using platform threads");
+        }
+        return newThreadFactory(name);
+    }
+
+    /**
+     * @brief   Look up Thread.ofVirtual().name(name + "-", 1).factory(), that is only available from Java 21
+     * @return  The virtual thread factory, null if the runtime does not support virtual threads
+     */
+    private static ThreadFactory newVirtualThreadFactory(String name) {
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            Object virtual = Thread.class.getMethod("ofVirtual").invoke(null);
+            virtual = builder.getMethod("name", String.class, long.class).invoke(virtual, name + "-", 1L);
+            return (ThreadFactory) builder.getMethod("factory").invoke(virtual);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * @brief   Look up Executors.newVirtualThreadPerTaskExecutor(), that is only available from Java 21
+     * @return  The virtual thread executor, null if the runtime does not support virtual threads
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * @brief   Create a factory of daemon threads named name-1, name-2, ...
+     * @param   name    Prefix of the names of the threads
+     */
+    static ThreadFactory newThreadFactory(final String name) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
@@ -1,23 +1,16 @@
 package com.distribsystems.p2p.chord_lib;
 
-import org.apache.commons.codec.digest.DigestUtils;
-
-import java.math.BigInteger;
-
 public class Finger {
     private String      ipAddr;
     private int         port;
-    private BigInteger  id;
+    private RingId      id;
 
     public Finger(String ipAddress, int port) {
         this.ipAddr = ipAddress;
         this.port   = port;
 
         //Create the ID by hashing "IP_ADDRESS:PORT"
-        String hex = DigestUtils.sha1Hex(ipAddress + ":" + String.valueOf(port));
-        BigInteger baseTwo = BigInteger.valueOf(2L);
-        this.id = new BigInteger(hex, 16);
-        this.id = this.id.mod(baseTwo.pow(Chord.FINGER_TABLE_SIZE));
+        this.id = RingId.hash(ipAddress + ":" + String.valueOf(port));
     }
 
     public String getIpAddr() {
@@ -28,7 +21,7 @@ public class Finger {
         return port;
     }
 
-    public BigInteger getId() {
+    public RingId getId() {
         return id;
     }
 
@@ -40,7 +33,7 @@ public class Finger {
         this.port = port;
     }
 
-    public void setId(BigInteger id) {
+    public void setId(RingId id) {
         this.id = id;
     }
 }
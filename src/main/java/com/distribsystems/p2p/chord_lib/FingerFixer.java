@@ -0,0 +1,400 @@
+package com.distribsystems.p2p.chord_lib;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * FingerFixer: keeps the FingerTable of the node up to date a little at a time, instead of looking up every finger at
+ * every stabilization. At each tick it looks up the next finger in round-robin order, and the node found becomes as
+ * well the following fingers whose starts it owns, without looking them up.
+ * The ticks are run by the MaintenanceScheduler as the FIX_FINGERS task. They are a period of the task apart
+ * (FIX_FINGERS_MIN_INTERVAL milliseconds by default) while the lookups keep finding changes, and slow down up to
+ * FIX_FINGERS_MAX_INTERVAL while the FingerTable does not change: the maintenance traffic follows the churn of the
+ * ring rather than the size of the FingerTable. When the node learns of a change (a node joining or leaving next to it),
+ * the fingers it affects are queued with refresh() and looked up first, at the shortest interval.
+ * The counter-clockwise fingers, if the node keeps any, are fixed at the same ticks in the opposite order: the node
+ * found for a start also owns the starts of the previous fingers up to its id.
+ * With proximity fingers, the finger looked up (past the two that make the successors) becomes the node of its interval
+ * with the lowest predicted round-trip time rather than the first one
+ */
+public class FingerFixer implements MaintenanceScheduler.Paced {
+    private final Node          node;
+    private int                 next = 0;
+    private int                 nextCounterClockwise = 0;
+    private volatile long       interval = Chord.FIX_FINGERS_MIN_INTERVAL;
+    // First fingers (clockwise and counter-clockwise) to look up at the next tick, -1 if none
+    private final AtomicInteger refreshNext = new AtomicInteger(-1);
+    private final AtomicInteger refreshNextCounterClockwise = new AtomicInteger(-1);
+    private final AtomicLong    lookups = new AtomicLong();
+    private final AtomicLong    fingersSkipped = new AtomicLong();
+    private final AtomicLong    fingersChanged = new AtomicLong();
+
+    public FingerFixer(Node node) {
+        this.node = node;
+    }
+
+    /**
+     * @brief   Tick: fix the next fingers and adapt the interval before the next tick
+     */
+    @Override
+    public void run() {
+        try {
+            int index = this.refreshNext.getAndSet(-1);
+            if (index >= 0) {
+                this.next = index;
+            }
+            index = this.refreshNextCounterClockwise.getAndSet(-1);
+            if (index >= 0) {
+                this.nextCounterClockwise = FingerLayout.size() - 1 - index;
+            }
+
+            int changed = fixNextFingers();
+            if (this.node.hasCounterClockwiseFingers()) {
+                changed += fixNextCounterClockwiseFingers();
+            }
+            adapt(changed);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return  The interval before the next tick, not shorter than the period of the FIX_FINGERS task [milliseconds]
+     */
+    @Override
+    public long getInterval(long period) {
+        return Math.max(period, this.interval);
+    }
+
+    /**
+     * @brief   Queue the fingers whose starts are in (from, to], whose owner may have changed, to be looked up from the
+     *          next tick on
+     */
+    public void refresh(RingId from, RingId to) {
+        int clockwise = -1;
+        int counterClockwise = -1;
+        for (int i = 0; i < FingerLayout.size(); i++) {
+            if (clockwise < 0 && FingerLayout.start(this.node.getId(), i).isBetween(from, to)) {
+                clockwise = i;
+            }
+            if (this.node.hasCounterClockwiseFingers() && FingerLayout.counterClockwiseStart(this.node.getId(), i).isBetween(from, to)) {
+                counterClockwise = i;
+            }
+        }
+        queue(clockwise, counterClockwise);
+    }
+
+    /**
+     * @brief   Queue the fingers pointing to a node, that is leaving or has failed, to be looked up from the next tick on
+     */
+    public void refresh(RingId nodeId) {
+        int clockwise = -1;
+        int counterClockwise = -1;
+        for (int i = 0; i < FingerLayout.size(); i++) {
+            Finger finger = this.node.getFingerTable().get(i);
+            if (clockwise < 0 && finger != null && finger.getId().equals(nodeId)) {
+                clockwise = i;
+            }
+            finger = this.node.getCounterClockwiseFingerTable().get(i);
+            if (finger != null && finger.getId().equals(nodeId)) {
+                counterClockwise = i;
+            }
+        }
+        queue(clockwise, counterClockwise);
+    }
+
+    /**
+     * @brief   Have the next tick start from the given fingers (the lowest clockwise, the farthest counter-clockwise one
+     *          if several are queued), and come at the shortest interval
+     */
+    private void queue(int clockwise, int counterClockwise) {
+        int queued;
+        while (clockwise >= 0 && ((queued = this.refreshNext.get()) < 0 || clockwise < queued)
+                && !this.refreshNext.compareAndSet(queued, clockwise)) {
+        }
+        while (counterClockwise >= 0 && counterClockwise > (queued = this.refreshNextCounterClockwise.get())
+                && !this.refreshNextCounterClockwise.compareAndSet(queued, counterClockwise)) {
+        }
+        if (clockwise >= 0 || counterClockwise >= 0) {
+            this.interval = Chord.getMaintenancePeriod(MaintenanceTask.FIX_FINGERS);
+        }
+    }
+
+    /**
+     * @brief   Look up the next finger, starting from the successor (or the predecessor if the node has no other
+     *          successor than itself), and give the node found to the following fingers it owns
+     * @return  The number of fingers that have changed
+     * @throws  IOException if the lookup failed
+     */
+    int fixNextFingers() throws IOException {
+        Finger hop = this.node.getFirstSuccessor();
+        if (isSelf(hop)) {
+            hop = this.node.getFirstPredecessor();
+            if (isSelf(hop)) {
+                // Alone on the ring, all the fingers are the node itself
+                return 0;
+            }
+        }
+
+        int first = this.next;
+        RingId fingerStart = FingerLayout.start(this.node.getId(), first);
+        Message serverResponse = lookUp(hop, fingerStart);
+        Chord.cLogPrint("Fixed finger " + first + " (" + fingerStart + "): " + serverResponse);
+        if (!serverResponse.is(Chord.FINGER_FOUND)) {
+            this.next = (first + 1) % FingerLayout.size();
+            return 0;
+        }
+        Finger found = new Finger(serverResponse.getIpAddr(), serverResponse.getPort());
+        Finger picked = found;
+        if (this.node.hasProximityFingers() && first >= 2) {
+            picked = closestInInterval(first, fingerStart, found);
+        }
+
+        // The node found owns all the starts from the one looked up to its own id: the fingers of those starts are
+        // updated without looking them up
+        Map<Integer, Finger> fingerTable = new HashMap<>(this.node.getFingerTable());
+        int changed = 0;
+        int end = endOfOwnedFingers(this.node.getId(), first, found.getId());
+        for (int i = first; i < end; i++) {
+            Finger finger = fingerTable.get(i);
+            Finger node = i == first ? picked : found;
+            if (finger == null || !finger.getId().equals(node.getId())) {
+                fingerTable.put(i, node);
+                changed++;
+            }
+        }
+        this.fingersSkipped.addAndGet(end - first - 1);
+        this.next = end % FingerLayout.size();
+
+        if (changed > 0) {
+            this.node.refreshFingerTable(fingerTable);
+            this.fingersChanged.addAndGet(changed);
+        }
+        return changed;
+    }
+
+    /**
+     * @param   nodeId  Id of the node owning the FingerTable
+     * @param   first   Index of the finger looked up
+     * @param   foundId Id of the node found for it
+     * @return  The index following the last finger owned by the node found: the fingers after the first one whose
+     *          starts are up to its id (the size of the FingerTable if they all are)
+     */
+    static int endOfOwnedFingers(RingId nodeId, int first, RingId foundId) {
+        RingId fingerStart = FingerLayout.start(nodeId, first);
+        int i = first + 1;
+        while (i < FingerLayout.size() && !fingerStart.equals(foundId)
+                && FingerLayout.start(nodeId, i).isBetween(fingerStart, foundId)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @brief   Look up the owner of the start of a finger. A recursive lookup answered by the hop itself carries its
+     *          coordinates, and its time is then a round-trip time to the hop, taken into account by the Proximity
+     * @param   hop         First node to contact
+     * @param   fingerStart Start of the finger
+     * @return  The response of the owner of the start
+     * @throws  IOException if the lookup failed
+     */
+    private Message lookUp(Finger hop, RingId fingerStart) throws IOException {
+        LookupStrategy strategy = this.node.getLookupStrategy();
+        long sent = System.nanoTime();
+        Message serverResponse = strategy.lookup(this.node, hop, Message.withId(Chord.FIND_FINGER, fingerStart));
+        long rtt = System.nanoTime() - sent;
+        this.lookups.incrementAndGet();
+
+        if (strategy == LookupStrategy.RECURSIVE && serverResponse.getCoordinates() != null) {
+            this.node.getProximity().observe(hop, serverResponse.getCoordinates(), rtt);
+        }
+        return serverResponse;
+    }
+
+    /**
+     * @brief   Pick the node of the interval of a finger, from its start to the start of the next finger, with the
+     *          lowest predicted round-trip time. The candidates are the node found and the nodes of its routing state
+     *          in the interval, and the ones whose coordinates are not known yet are pinged first
+     * @param   index       Index of the finger
+     * @param   fingerStart Start of the finger
+     * @param   found       First node of the interval (the owner of the start)
+     * @return  The node picked, the node found if the interval has no other node or they can not be reached
+     */
+    private Finger closestInInterval(int index, RingId fingerStart, Finger found) {
+        RingId intervalEnd = index + 1 < FingerLayout.size() ? FingerLayout.start(this.node.getId(), index + 1) : this.node.getId();
+        if (!isInInterval(found, fingerStart, intervalEnd)) {
+            return found;
+        }
+
+        List<Finger> candidates = new ArrayList<>();
+        candidates.add(found);
+        try {
+            Connection connection = this.node.getConnectionPool().borrow(found.getIpAddr(), found.getPort(), true);
+            try {
+                if (connection.isTransferringRoutingState()) {
+                    Message stateResponse = connection.request(new Message(Chord.REQUEST_ROUTING_STATE));
+                    if (stateResponse.is(Chord.ROUTING_STATE)) {
+                        for (Finger finger : stateResponse.getFingers()) {
+                            if (finger != null && !isSelf(finger) && isInInterval(finger, fingerStart, intervalEnd)) {
+                                candidates.add(finger);
+                            }
+                        }
+                    }
+                }
+                this.node.getConnectionPool().release(connection);
+            } catch (IOException e) {
+                this.node.getConnectionPool().giveBack(connection, e);
+                throw e;
+            }
+        } catch (IOException e) {
+            return found;
+        }
+
+        Proximity proximity = this.node.getProximity();
+        Finger closest = found;
+        double closestRtt = Double.MAX_VALUE;
+        for (Finger candidate : candidates) {
+            if (!proximity.isKnown(candidate)) {
+                try {
+                    this.node.ping(candidate);
+                } catch (IOException e) {
+                    continue;
+                }
+            }
+            double rtt = proximity.predictRtt(candidate);
+            if (rtt < closestRtt) {
+                closest = candidate;
+                closestRtt = rtt;
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * @return  True if the node is in [start, end)
+     */
+    private static boolean isInInterval(Finger finger, RingId start, RingId end) {
+        return finger.getId().equals(start) || finger.getId().isStrictlyBetween(start, end);
+    }
+
+    /**
+     * @brief   Look up the next counter-clockwise finger, going from the farthest one to the closest, and give the node
+     *          found to the previous fingers it owns
+     * @return  The number of counter-clockwise fingers that have changed
+     * @throws  IOException if the lookup failed
+     */
+    int fixNextCounterClockwiseFingers() throws IOException {
+        Finger hop = this.node.getFirstSuccessor();
+        if (isSelf(hop)) {
+            hop = this.node.getFirstPredecessor();
+            if (isSelf(hop)) {
+                return 0;
+            }
+        }
+
+        int first = counterClockwisePosition(this.nextCounterClockwise);
+        RingId fingerStart = FingerLayout.counterClockwiseStart(this.node.getId(), first);
+        Message serverResponse = lookUp(hop, fingerStart);
+        Chord.cLogPrint("Fixed counter-clockwise finger " + first + " (" + fingerStart + "): " + serverResponse);
+        if (!serverResponse.is(Chord.FINGER_FOUND)) {
+            this.nextCounterClockwise = (this.nextCounterClockwise + 1) % FingerLayout.size();
+            return 0;
+        }
+        Finger found = new Finger(serverResponse.getIpAddr(), serverResponse.getPort());
+
+        // The starts of the previous fingers are closer to the node: the ones up to the id of the node found are owned
+        // by it as well
+        Map<Integer, Finger> fingerTable = new HashMap<>(this.node.getCounterClockwiseFingerTable());
+        int changed = 0;
+        int end = endOfOwnedCounterClockwiseFingers(this.node.getId(), first, found.getId());
+        for (int i = first; i > end; i--) {
+            Finger finger = fingerTable.get(i);
+            if (finger == null || !finger.getId().equals(found.getId())) {
+                fingerTable.put(i, found);
+                changed++;
+            }
+        }
+        this.fingersSkipped.addAndGet(first - end - 1);
+        this.nextCounterClockwise = counterClockwisePosition(end);
+
+        if (changed > 0) {
+            this.node.refreshCounterClockwiseFingerTable(fingerTable);
+            this.fingersChanged.addAndGet(changed);
+        }
+        return changed;
+    }
+
+    /**
+     * @param   nodeId  Id of the node owning the counter-clockwise FingerTable
+     * @param   first   Index of the counter-clockwise finger looked up
+     * @param   foundId Id of the node found for it
+     * @return  The index preceding the last counter-clockwise finger owned by the node found: the fingers before the
+     *          first one whose starts are up to its id (-1 if they all are)
+     */
+    static int endOfOwnedCounterClockwiseFingers(RingId nodeId, int first, RingId foundId) {
+        RingId fingerStart = FingerLayout.counterClockwiseStart(nodeId, first);
+        int i = first - 1;
+        while (i >= 0 && !fingerStart.equals(foundId)
+                && FingerLayout.counterClockwiseStart(nodeId, i).isBetween(fingerStart, foundId)) {
+            i--;
+        }
+        return i;
+    }
+
+    /**
+     * @brief   The counter-clockwise fingers are fixed from the farthest to the closest, so position 0 of the round is
+     *          the last finger. The mapping works both ways, and index -1 (past the closest finger) starts a new round
+     * @return  The position in the round of the counter-clockwise finger at the given index, or the other way round
+     */
+    static int counterClockwisePosition(int index) {
+        return (FingerLayout.size() - 1 - index) % FingerLayout.size();
+    }
+
+    /**
+     * @brief   Halve the interval between the ticks when a finger has changed, otherwise lengthen it by a quarter
+     */
+    private void adapt(int changed) {
+        if (changed > 0) {
+            this.interval = Math.max(Chord.getMaintenancePeriod(MaintenanceTask.FIX_FINGERS), this.interval / 2);
+        } else {
+            this.interval = Math.min(Chord.FIX_FINGERS_MAX_INTERVAL, this.interval + this.interval / 4);
+        }
+    }
+
+    private boolean isSelf(Finger finger) {
+        return this.node.getIpAddr().equals(finger.getIpAddr()) && this.node.getPort() == finger.getPort();
+    }
+
+    /**
+     * @return  The current interval between two ticks [milliseconds]
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * @return  Number of fingers looked up
+     */
+    public long getLookups() {
+        return lookups.get();
+    }
+
+    /**
+     * @return  Number of fingers updated from the node found for a previous finger, without looking them up
+     */
+    public long getFingersSkipped() {
+        return fingersSkipped.get();
+    }
+
+    /**
+     * @return  Number of fingers that have been found pointing to another node
+     */
+    public long getFingersChanged() {
+        return fingersChanged.get();
+    }
+}
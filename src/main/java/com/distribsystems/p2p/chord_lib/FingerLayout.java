@@ -0,0 +1,74 @@
+package com.distribsystems.p2p.chord_lib;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * FingerLayout: where the fingers of the FingerTable start. With base b (Chord.getFingerBase()) the ring is split in
+ * levels i = 0, 1, ... of b - 1 fingers each, finger j of level i starting at id + j*b^i. Base 2 is the classic layout,
+ * finger i at id + 2^i; a larger base trades a larger FingerTable, about (b - 1)*log_b(2^m) fingers, for lookups of
+ * about log_b(N) hops instead of log_2(N).
+ * The offsets of the starts are computed once for each width and base, and sorted clockwise: finger 0 is always the
+ * successor, and the fingers owned by the same node are consecutive. The counter-clockwise fingers use the same
+ * offsets backwards
+ */
+public final class FingerLayout {
+    private static volatile FingerLayout    current = new FingerLayout(Chord.getFingerTableSize(), Chord.getFingerBase());
+
+    private final int       bits;
+    private final int       base;
+    private final RingId[]  offsets;
+
+    private FingerLayout(int bits, int base) {
+        this.bits = bits;
+        this.base = base;
+
+        BigInteger ring = BigInteger.ONE.shiftLeft(bits);
+        BigInteger b = BigInteger.valueOf(base);
+        List<RingId> offsets = new ArrayList<>();
+        for (BigInteger level = BigInteger.ONE; level.compareTo(ring) < 0; level = level.multiply(b)) {
+            for (int j = 1; j < base; j++) {
+                BigInteger offset = level.multiply(BigInteger.valueOf(j));
+                if (offset.compareTo(ring) >= 0) {
+                    break;
+                }
+                offsets.add(RingId.valueOf(offset));
+            }
+        }
+        this.offsets = offsets.toArray(new RingId[offsets.size()]);
+    }
+
+    /**
+     * @return  The layout of the current width and base, computed again only if one of them has changed
+     */
+    private static FingerLayout get() {
+        FingerLayout layout = current;
+        if (layout.bits != Chord.getFingerTableSize() || layout.base != Chord.getFingerBase()) {
+            layout = new FingerLayout(Chord.getFingerTableSize(), Chord.getFingerBase());
+            current = layout;
+        }
+        return layout;
+    }
+
+    /**
+     * @return  The number of fingers of the FingerTable
+     */
+    public static int size() {
+        return get().offsets.length;
+    }
+
+    /**
+     * @return  The start of the finger at the given index of the FingerTable of the node (wrapping around the ring)
+     */
+    public static RingId start(RingId id, int index) {
+        return id.add(get().offsets[index]);
+    }
+
+    /**
+     * @return  The start of the counter-clockwise finger at the given index of the node (wrapping around the ring)
+     */
+    public static RingId counterClockwiseStart(RingId id, int index) {
+        return id.subtract(get().offsets[index]);
+    }
+}
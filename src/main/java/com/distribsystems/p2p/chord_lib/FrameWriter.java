@@ -0,0 +1,40 @@
+package com.distribsystems.p2p.chord_lib;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * FrameWriter: writes binary frames from many threads to the same buffered stream. The stream is flushed only by the
+ * last of the threads that are writing at the same time, so that frames written together leave in the same packets
+ */
+class FrameWriter {
+    private final OutputStream  out;
+    private final AtomicInteger writers = new AtomicInteger();
+
+    FrameWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * @brief   Write a message as a binary frame, flushing the stream unless another thread is about to write
+     * @param   message Message to write
+     * @throws  IOException if the frame could not be written
+     */
+    void write(Message message) throws IOException {
+        // Encode outside of the lock
+        ByteBuffer frame = MessageCodec.encodeFrame(message);
+
+        writers.incrementAndGet();
+        synchronized (out) {
+            try {
+                out.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+            } finally {
+                if (writers.decrementAndGet() == 0) {
+                    out.flush();
+                }
+            }
+        }
+    }
+}
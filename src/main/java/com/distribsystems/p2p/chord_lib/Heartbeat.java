@@ -0,0 +1,312 @@
+package com.distribsystems.p2p.chord_lib;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Heartbeat: checks that the successor and the predecessor of the node are alive with UDP datagrams instead of a TCP
+ * PING, on the same port number as the Server.
+ * Every HEARTBEAT_INTERVAL milliseconds the node sends a numbered heartbeat to each of its neighbours. The heartbeats
+ * received are not acknowledged one by one: at every interval a single ack tells each node the highest sequence
+ * number received and which of the 64 before it have been received too, and it travels in the same datagram as the
+ * heartbeat when the node is a neighbour as well. A neighbour that has not acknowledged anything for HEARTBEAT_TIMEOUT
+ * milliseconds is only suspected: the Stabilizer confirms the failure with a TCP PING before acting on it (which also
+ * keeps working with the nodes that do not answer the heartbeats). The check runs as soon as the neighbour is
+ * suspected, rather than at the next round of the Stabilizer
+ */
+public class Heartbeat extends Thread {
+    // Datagram: [flags][long heartbeat sequence number][long acknowledged sequence number][long acknowledged bitmap]
+    private final static int    DATAGRAM_LENGTH = 1 + 3*8;
+    private final static int    HEARTBEAT = 1;
+    private final static int    ACK = 2;
+
+    private final Node                                      node;
+    private final DatagramChannel                           channel;
+    private final Selector                                  selector;
+    private final ByteBuffer                                buffer = ByteBuffer.allocate(DATAGRAM_LENGTH);
+    private final Map<SocketAddress, Peer>                  peers = new ConcurrentHashMap<>();
+    private final AtomicLong                                heartbeatsSent = new AtomicLong();
+    private final AtomicLong                                heartbeatsLost = new AtomicLong();
+    private final AtomicLong                                acksReceived = new AtomicLong();
+    private final AtomicLong                                confirmations = new AtomicLong();
+
+    /**
+     * State of the heartbeats exchanged with another node
+     */
+    static class Peer {
+        // Heartbeats sent to the node and acknowledged by it
+        long                    sentSeq;
+        long                    ackedSeq;
+        volatile long           lastAck;
+        volatile boolean        answers;
+        volatile boolean        suspected;
+        boolean                 watched;
+
+        // Heartbeats received from the node, still to be acknowledged if ackPending
+        long                    receivedSeq;
+        long                    receivedBits;
+        boolean                 ackPending;
+        long                    lastHeard;
+
+        Peer() {
+            this.lastAck = System.currentTimeMillis();
+            this.lastHeard = this.lastAck;
+        }
+    }
+
+    /**
+     * @brief   Open the UDP channel of the node, on the same port number as its Server
+     * @param   node    The Node whose neighbours are checked
+     * @throws  IOException if the port is already in use
+     */
+    public Heartbeat(Node node) throws IOException {
+        super("chord-heartbeat-" + node.getPort());
+        setDaemon(true);
+        this.node = node;
+        this.channel = DatagramChannel.open();
+        try {
+            this.channel.socket().bind(new InetSocketAddress(node.getPort()));
+            this.channel.configureBlocking(false);
+            this.selector = Selector.open();
+            this.channel.register(this.selector, SelectionKey.OP_READ);
+        } catch (IOException e) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void run() {
+        long nextTick = System.currentTimeMillis();
+        while (this.channel.isOpen()) {
+            try {
+                long wait = nextTick - System.currentTimeMillis();
+                if (wait <= 0) {
+                    tick();
+                    nextTick = System.currentTimeMillis() + Chord.HEARTBEAT_INTERVAL;
+                    continue;
+                }
+
+                this.selector.select(wait);
+                this.selector.selectedKeys().clear();
+                receive();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @brief   Send a heartbeat to every neighbour and the pending acks to every node, forgetting the nodes that are
+     *          no longer neighbours and are not sending heartbeats anymore
+     */
+    private void tick() throws IOException {
+        SocketAddress successor = addressOf(this.node.getFirstSuccessor());
+        SocketAddress predecessor = addressOf(this.node.getFirstPredecessor());
+        if (successor != null && !this.peers.containsKey(successor)) {
+            this.peers.put(successor, new Peer());
+        }
+        if (predecessor != null && !this.peers.containsKey(predecessor)) {
+            this.peers.put(predecessor, new Peer());
+        }
+
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<SocketAddress, Peer>> iterator = this.peers.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<SocketAddress, Peer> entry = iterator.next();
+            Peer peer = entry.getValue();
+            boolean watched = entry.getKey().equals(successor) || entry.getKey().equals(predecessor);
+            if (watched && !peer.watched) {
+                // Give the node a whole timeout to answer, from the moment it becomes a neighbour
+                peer.lastAck = now;
+            }
+            peer.watched = watched;
+
+            if (watched && !peer.suspected && now - peer.lastAck > Chord.HEARTBEAT_TIMEOUT) {
+                // Have the Stabilizer confirm the failure right away, once until the node answers again
+                peer.suspected = true;
+                Stabilizer stabilizer = this.node.getStabilizer();
+                if (stabilizer != null) {
+                    stabilizer.neighbourSuspected(entry.getKey().equals(successor));
+                }
+            }
+
+            if (watched || peer.ackPending) {
+                send(entry.getKey(), peer, watched);
+            } else if (now - peer.lastHeard > Chord.HEARTBEAT_TIMEOUT) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @brief   Send a datagram to the node, carrying a heartbeat and/or the ack of the heartbeats received from it
+     */
+    private void send(SocketAddress address, Peer peer, boolean heartbeat) throws IOException {
+        this.buffer.clear();
+        this.buffer.put((byte) ((heartbeat ? HEARTBEAT : 0) | (peer.ackPending ? ACK : 0)));
+        this.buffer.putLong(heartbeat ? ++peer.sentSeq : 0);
+        this.buffer.putLong(peer.receivedSeq);
+        this.buffer.putLong(peer.receivedBits);
+        this.buffer.flip();
+        try {
+            this.channel.send(this.buffer, address);
+        } catch (IOException e) {
+            // An unreachable node is detected by the missing acks
+            Chord.cLogPrint("Heartbeat to " + address + " failed: " + e.getMessage());
+        }
+        peer.ackPending = false;
+        if (heartbeat) {
+            this.heartbeatsSent.incrementAndGet();
+        }
+    }
+
+    /**
+     * @brief   Read all the datagrams received: record the heartbeats to be acknowledged and the acks of ours
+     */
+    private void receive() throws IOException {
+        SocketAddress address;
+        this.buffer.clear();
+        while ((address = this.channel.receive(this.buffer)) != null) {
+            this.buffer.flip();
+            if (this.buffer.remaining() == DATAGRAM_LENGTH) {
+                int flags = this.buffer.get();
+                long seq = this.buffer.getLong();
+                long ackedSeq = this.buffer.getLong();
+                long ackedBits = this.buffer.getLong();
+
+                Peer peer = this.peers.get(address);
+                if (peer == null) {
+                    peer = new Peer();
+                    this.peers.put(address, peer);
+                }
+                peer.lastHeard = System.currentTimeMillis();
+                if ((flags & HEARTBEAT) != 0) {
+                    received(peer, seq);
+                }
+                if ((flags & ACK) != 0) {
+                    acknowledged(peer, ackedSeq, ackedBits);
+                }
+            }
+            this.buffer.clear();
+        }
+    }
+
+    /**
+     * @brief   Record a heartbeat received from the node, in the window of the next ack
+     */
+    static void received(Peer peer, long seq) {
+        long shift = seq - peer.receivedSeq;
+        if (shift > 0) {
+            // Bit i of the window stands for the heartbeat receivedSeq - 1 - i
+            if (peer.receivedSeq == 0 || shift > 64) {
+                peer.receivedBits = 0;
+            } else {
+                peer.receivedBits = (shift == 64 ? 0 : peer.receivedBits << shift) | (1L << (shift - 1));
+            }
+            peer.receivedSeq = seq;
+        } else if (shift < 0 && shift >= -64) {
+            // Heartbeat arrived out of order
+            peer.receivedBits |= 1L << (-shift - 1);
+        }
+        peer.ackPending = true;
+    }
+
+    /**
+     * @brief   Record an ack received from the node, counting the heartbeats it says are lost
+     */
+    private void acknowledged(Peer peer, long ackedSeq, long ackedBits) {
+        if (ackedSeq <= peer.ackedSeq || ackedSeq > peer.sentSeq) {
+            // Late (or not for the heartbeats we have sent)
+            return;
+        }
+        // Heartbeats between the previous ack and this one that have not been received
+        long window = Math.min(ackedSeq - peer.ackedSeq - 1, 64);
+        for (int i = 0; i < window; i++) {
+            if ((ackedBits & (1L << i)) == 0) {
+                this.heartbeatsLost.incrementAndGet();
+            }
+        }
+        peer.ackedSeq = ackedSeq;
+        peer.lastAck = System.currentTimeMillis();
+        peer.answers = true;
+        peer.suspected = false;
+        this.acksReceived.incrementAndGet();
+    }
+
+    /**
+     * @brief   Control whether the node has acknowledged our heartbeats recently. A node that has just become a
+     *          neighbour is given a whole HEARTBEAT_TIMEOUT to answer
+     * @param   finger  Neighbour of the node
+     * @return  True if the node is alive, False if it must be confirmed with a TCP PING
+     */
+    public boolean isAlive(Finger finger) {
+        Peer peer = this.peers.get(addressOf(finger));
+        return peer == null || System.currentTimeMillis() - peer.lastAck <= Chord.HEARTBEAT_TIMEOUT;
+    }
+
+    /**
+     * @brief   Record that the node has answered a TCP PING. A node that never answered the heartbeats (because it
+     *          does not support them) is not suspected again until the next stabilization
+     * @param   finger  Neighbour of the node
+     */
+    public void confirmed(Finger finger) {
+        Peer peer = this.peers.get(addressOf(finger));
+        if (peer != null) {
+            long now = System.currentTimeMillis();
+            peer.lastAck = peer.answers ? now : now + Chord.STABILIZATION_DELAY * 1000L - Chord.HEARTBEAT_TIMEOUT;
+            peer.suspected = false;
+        }
+        this.confirmations.incrementAndGet();
+    }
+
+    /**
+     * @brief   Stop sending heartbeats and close the UDP channel
+     */
+    public void close() {
+        try {
+            this.channel.close();
+            this.selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return  The UDP address of the finger, null if it is the node itself (or not known yet)
+     */
+    private SocketAddress addressOf(Finger finger) {
+        if (finger == null || (finger.getIpAddr().equals(this.node.getIpAddr()) && finger.getPort() == this.node.getPort())) {
+            return null;
+        }
+        return new InetSocketAddress(finger.getIpAddr(), finger.getPort());
+    }
+
+    public long getHeartbeatsSent() {
+        return heartbeatsSent.get();
+    }
+
+    public long getHeartbeatsLost() {
+        return heartbeatsLost.get();
+    }
+
+    public long getAcksReceived() {
+        return acksReceived.get();
+    }
+
+    /**
+     * @return  Number of suspected neighbours that have been confirmed alive with a TCP PING
+     */
+    public long getConfirmations() {
+        return confirmations.get();
+    }
+}
@@ -0,0 +1,175 @@
+package com.distribsystems.p2p.chord_lib;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * LookupBenchmark: measures the lookups of a ring whose identifiers have 8, 32, 64 and 160 bits, with fingers of a given
+ * base, with or without counter-clockwise fingers and proximity fingers:
+ *  - the number of hops a recursive lookup takes from a random node to the owner of the key, every node routing as
+ *    the Server does (its successor first, then the next hop chosen by its RoutingState);
+ *  - the latency of the lookup, the nodes being scattered at random in a latency space of 200x200 milliseconds (plus
+ *    up to 10 milliseconds of access link). Proximity fingers are picked among the first nodes of their interval as
+ *    if the coordinates of the nodes had converged to their real positions;
+ *  - the CPU time spent for each lookup, the derivation of the key from the item (SHA-1) included.
+ * The nodes are simulated in a single process, each one with the FingerTable it has once the ring has converged, so
+ * that the figures leave the network out. The nodes whose ids collide in a small ring count as a single one.
+ *
+ * Program Arguments
+ * args[0] = number of nodes (default 1000)
+ * args[1] = number of lookups measured for each width (default 200000)
+ * args[2] = base of the fingers (default 2, see FingerLayout)
+ * args[3] = true to give the nodes counter-clockwise fingers as well (default false)
+ * args[4] = true to pick the fingers by proximity (default false)
+ */
+public class LookupBenchmark {
+    private final static int[] WIDTHS = {8, 32, 64, 160};
+    // Nodes of the interval of a finger among which a proximity finger is picked
+    private final static int   PROXIMITY_CANDIDATES = 8;
+
+    public static void main(String[] args) {
+        int nodes   = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+        int base    = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        boolean counterClockwise = args.length > 3 && Boolean.parseBoolean(args[3]);
+        boolean proximity = args.length > 4 && Boolean.parseBoolean(args[4]);
+
+        Chord.setEnableLogs(false);
+        Chord.setFingerBase(base);
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        String[] items = new String[lookups];
+        for (int i = 0; i < lookups; i++) {
+            items[i] = "item-" + i;
+        }
+
+        System.out.println(String.format("%5s %7s %8s %9s %9s %14s %12s", "bits", "nodes", "fingers", "avg hops", "max hops",
+                "cpu ns/lookup", "avg ms/lookup"));
+        for (int bits : WIDTHS) {
+            Chord.setFingerTableSize(bits);
+            RoutingIndex ring = ring(nodes);
+            Coordinates[] positions = positions(ring.size(), new Random(3));
+            RoutingState[] states = new RoutingState[ring.size()];
+            for (int n = 0; n < ring.size(); n++) {
+                states[n] = routingState(ring, n, counterClockwise, proximity ? positions : null);
+            }
+
+            // Warm-up
+            lookup(ring, states, positions, items, new Random(1));
+
+            long before = threads.getCurrentThreadCpuTime();
+            double[] hops = lookup(ring, states, positions, items, new Random(2));
+            long cpu = threads.getCurrentThreadCpuTime() - before;
+
+            System.out.println(String.format("%5d %7d %8d %9.2f %9d %14.1f %12.1f", bits, ring.size(), FingerLayout.size(),
+                    hops[0] / lookups, (long) hops[1], (double) cpu / lookups, hops[2] / lookups));
+        }
+        Chord.setFingerTableSize(Chord.DEFAULT_FINGER_TABLE_SIZE);
+    }
+
+    /**
+     * @return  The index of the distinct nodes of the ring
+     */
+    private static RoutingIndex ring(int nodes) {
+        List<Finger> ring = new ArrayList<>(nodes);
+        for (int n = 0; n < nodes; n++) {
+            ring.add(new Finger("10.0." + (n / 250) + "." + (n % 250 + 1), 8000));
+        }
+        return RoutingIndex.of(ring);
+    }
+
+    /**
+     * @return  The positions of the nodes in the latency space
+     */
+    private static Coordinates[] positions(int nodes, Random random) {
+        Coordinates[] positions = new Coordinates[nodes];
+        for (int n = 0; n < nodes; n++) {
+            positions[n] = new Coordinates(random.nextDouble() * 200, random.nextDouble() * 200, random.nextDouble() * 10, 0);
+        }
+        return positions;
+    }
+
+    /**
+     * @return  The converged RoutingState of the node at the given position of the ring: each finger is the owner of
+     *          its start or, with proximity fingers, the closest of the first nodes of its interval
+     * @param   positions   Positions of the nodes to pick the fingers by proximity, null to pick the owners
+     */
+    private static RoutingState routingState(RoutingIndex ring, int node, boolean counterClockwise, Coordinates[] positions) {
+        RingId id = ring.get(node).getId();
+        Map<Integer, Finger> fingerTable = new HashMap<>();
+        Map<Integer, Finger> counterClockwiseFingerTable = new HashMap<>();
+        for (int i = 0; i < FingerLayout.size(); i++) {
+            RingId fingerStart = FingerLayout.start(id, i);
+            int owner = ring.ceilingIndex(fingerStart) % ring.size();
+            if (positions != null && i >= 2) {
+                // The closest of the first nodes in [start, start of the next finger)
+                RingId intervalEnd = i + 1 < FingerLayout.size() ? FingerLayout.start(id, i + 1) : id;
+                int closest = owner;
+                for (int c = 0; c < PROXIMITY_CANDIDATES; c++) {
+                    int candidate = (owner + c) % ring.size();
+                    RingId candidateId = ring.get(candidate).getId();
+                    if (!candidateId.equals(fingerStart) && !candidateId.isStrictlyBetween(fingerStart, intervalEnd)) {
+                        break;
+                    }
+                    if (positions[node].distanceTo(positions[candidate]) < positions[node].distanceTo(positions[closest])) {
+                        closest = candidate;
+                    }
+                }
+                owner = closest;
+            }
+            fingerTable.put(i, ring.get(owner));
+            if (counterClockwise) {
+                counterClockwiseFingerTable.put(i, ring.successor(FingerLayout.counterClockwiseStart(id, i)));
+            }
+        }
+        return RoutingState.EMPTY.withFingerTable(fingerTable).withCounterClockwiseFingerTable(counterClockwiseFingerTable)
+                .withFirstPredecessor(ring.get((node + ring.size() - 1) % ring.size()));
+    }
+
+    /**
+     * @brief   Look up the owner of every item from a random node
+     * @return  The total and the maximum number of hops, and the total latency [milliseconds]
+     */
+    private static double[] lookup(RoutingIndex ring, RoutingState[] states, Coordinates[] positions, String[] items,
+                                   Random random) {
+        double[] total = new double[3];
+        for (String item : items) {
+            int hops = route(ring, states, positions, random.nextInt(ring.size()), RingId.hash(item), total);
+            total[0] += hops;
+            total[1] = Math.max(total[1], hops);
+        }
+        return total;
+    }
+
+    /**
+     * @return  The number of nodes the lookup of the key is forwarded to, from the node at the given position of the
+     *          ring to the owner of the key. The latency of the hops is added to total[2]
+     */
+    private static int route(RoutingIndex ring, RoutingState[] states, Coordinates[] positions, int node, RingId key,
+                             double[] total) {
+        int hops = 0;
+        while (true) {
+            RingId id = ring.get(node).getId();
+            RingId predecessor = ring.get((node + ring.size() - 1) % ring.size()).getId();
+            if (key.isBetween(predecessor, id)) {
+                return hops;
+            }
+
+            Finger next;
+            int successor = (node + 1) % ring.size();
+            if (key.isBetween(id, ring.get(successor).getId())) {
+                next = ring.get(successor);
+            } else {
+                next = states[node].nextHop(id, key);
+            }
+            int hop = ring.ceilingIndex(next.getId());
+            total[2] += positions[node].distanceTo(positions[hop]);
+            node = hop;
+            hops++;
+        }
+    }
+}
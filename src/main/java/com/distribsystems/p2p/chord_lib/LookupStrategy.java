@@ -0,0 +1,92 @@
+package com.distribsystems.p2p.chord_lib;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+/**
+ * LookupStrategy: how a lookup (FIND_FINGER or FIND_ITEM) started by a Node travels around the ring, trading latency
+ * against the threads and sockets held by the nodes along the way
+ */
+public enum LookupStrategy {
+    /**
+     * Every node forwards the query to the next hop and waits for the response to send it back, so the whole chain
+     * holds a thread and a connection until the owner answers
+     */
+    RECURSIVE {
+        @Override
+        public Message lookup(Node node, Finger hop, Message query) throws IOException {
+            return node.getConnectionPool().request(hop, query);
+        }
+    },
+    /**
+     * The origin asks every hop for the next one (FIND_NEXT_HOP, answered by the hop without contacting anybody) and
+     * contacts it by itself, until a hop names the owner of the id
+     */
+    ITERATIVE {
+        @Override
+        public Message lookup(Node node, Finger hop, Message query) throws IOException {
+            ConnectionPool connectionPool = node.getConnectionPool();
+            for (int i = 0; i < Chord.MAX_LOOKUP_HOPS; i++) {
+                Message answer;
+                try {
+                    answer = connectionPool.request(hop, Message.withId(Chord.FIND_NEXT_HOP, query.getId()));
+                } catch (IOException e) {
+                    // The hop may not know FIND_NEXT_HOP: let it route the query itself
+                    break;
+                }
+
+                if (answer.is(Chord.FINGER_FOUND)) {
+                    if (query.is(Chord.FIND_FINGER)) {
+                        return answer;
+                    }
+                    // The owner answers the FIND_ITEM by itself
+                    return connectionPool.request(answer.getIpAddr(), answer.getPort(), query);
+                }
+
+                // Stop if the hop does not know any node closer to the id than itself
+                if (!answer.is(Chord.NEXT_HOP) || (answer.getIpAddr().equals(hop.getIpAddr()) && answer.getPort() == hop.getPort())) {
+                    break;
+                }
+                hop = new Finger(answer.getIpAddr(), answer.getPort());
+            }
+            return RECURSIVE.lookup(node, hop, query);
+        }
+    },
+    /**
+     * The query is forwarded from hop to hop without anybody waiting, and the owner of the id sends the answer
+     * (DIRECT_REPLY) straight to the Server of the origin, quoting the id of the lookup
+     */
+    DIRECT_REPLY {
+        @Override
+        public Message lookup(Node node, Finger hop, Message query) throws IOException {
+            boolean finger = query.is(Chord.FIND_FINGER);
+            DirectReplies replies = node.getDirectReplies();
+            PendingResponse pending = replies.expect();
+            try {
+                node.getConnectionPool().send(hop, Message.direct(finger ? Chord.FIND_FINGER_DIRECT : Chord.FIND_ITEM_DIRECT,
+                        query.getId(), node.getIpAddr(), node.getPort(), pending.getRequestId()));
+                Message reply = pending.get();
+                if (finger) {
+                    return Message.withAddress(Chord.FINGER_FOUND, reply.getIpAddr(), reply.getPort());
+                }
+                return Message.itemFound(reply.getIpAddr(), reply.getPort(), reply.getItem());
+            } catch (SocketTimeoutException e) {
+                // The query got lost on the way (or reached a node that does not answer directly): ask again
+                Chord.cLogPrint("No direct reply for " + query + ", retrying recursively");
+                return RECURSIVE.lookup(node, hop, query);
+            } finally {
+                replies.cancel(pending);
+            }
+        }
+    };
+
+    /**
+     * @brief   Look up the id of a FIND_FINGER or FIND_ITEM query
+     * @param   node    The Node starting the lookup
+     * @param   hop     First node to contact
+     * @param   query   FIND_FINGER or FIND_ITEM query
+     * @return  The response of the owner of the id (FINGER_FOUND, ITEM_FOUND or NOT_FOUND)
+     * @throws  IOException if the lookup could not be completed
+     */
+    public abstract Message lookup(Node node, Finger hop, Message query) throws IOException;
+}
@@ -0,0 +1,319 @@
+package com.distribsystems.p2p.chord_lib;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MaintenanceScheduler: runs the maintenance tasks of a node (see MaintenanceTask) on a fixed pool of threads, one for
+ * each task, so that a task waiting for a slow peer does not delay the others and the number of threads does not grow
+ * with the uptime of the node. The threads are virtual in the VIRTUAL_THREADS ExecutionMode.
+ * Each run is scheduled once the previous one is over (a task never runs twice at the same time), a period after the
+ * start of the previous run, moved at random by up to MAINTENANCE_JITTER of the period both ways so that the nodes of
+ * the ring do not fall into step. The first run comes at a random time within the first period.
+ * A run taking longer than the deadline of its task counts as an overrun, and the next run starts right away rather
+ * than a period later. Runs are not interrupted: the requests of the tasks are bounded by the SOCKET_TIMEOUT of the
+ * connections.
+ * A task can also be triggered by an event (a change of the neighbours, a failure): its next run is brought forward
+ * to right away, or to the end of the current run, so that the periodic runs are only a safety net. The triggers that
+ * arrive before that run starts are merged into it, and a triggered task still holds a single thread at a time.
+ * The one-off work of the events (a message to another node) runs on a thread of its own, so that it never delays
+ * the tasks
+ */
+public class MaintenanceScheduler {
+    private final ScheduledThreadPoolExecutor               executor;
+    private final ExecutorService                           events;
+    private final Map<MaintenanceTask, ScheduledTask>       tasks = new EnumMap<>(MaintenanceTask.class);
+    private final Random                                    random = new Random();
+
+    /**
+     * A task whose period is chosen by the task itself, within the period set for it
+     */
+    public interface Paced extends Runnable {
+        /**
+         * @param   period  The period set for the task [milliseconds]
+         * @return  The interval before the next run [milliseconds]
+         */
+        long getInterval(long period);
+    }
+
+    /**
+     * A maintenance task with the measures of its runs
+     */
+    public class ScheduledTask {
+        private final MaintenanceTask   task;
+        private final Runnable          action;
+        // The next run and its number, whether a run is going on and whether the next one has been brought forward
+        // (guarded by this)
+        private ScheduledFuture<?>      next;
+        private long                    generation = 0;
+        private boolean                 running = false;
+        private boolean                 triggered = false;
+        private final AtomicLong        runs = new AtomicLong();
+        private final AtomicLong        triggers = new AtomicLong();
+        private final AtomicLong        failures = new AtomicLong();
+        private final AtomicLong        overruns = new AtomicLong();
+        private final AtomicLong        totalTime = new AtomicLong();
+        private final AtomicLong        maxTime = new AtomicLong();
+
+        private ScheduledTask(MaintenanceTask task, Runnable action) {
+            this.task = task;
+            this.action = action;
+        }
+
+        /**
+         * @brief   Run of the task, scheduling the next one: a period later, or right away if the run has been
+         *          triggered in the meantime or has overrun its deadline
+         * @param   generation  Number of the scheduled run, nothing happens if another run has replaced it
+         */
+        private void run(long generation) {
+            synchronized (this) {
+                if (generation != this.generation) {
+                    return;
+                }
+                // A trigger arriving from now on needs another run, the state may have changed after this one read it
+                this.running = true;
+                this.triggered = false;
+            }
+            long start = System.nanoTime();
+            long period = Chord.getMaintenancePeriod(this.task);
+            long delay;
+            if (period > 0) {
+                boolean overrun = execute();
+                long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                delay = overrun ? 0 : Math.max(0, interval(period) - elapsed);
+            } else {
+                // Stopped: look again later whether the task has been given a period
+                delay = Chord.STABILIZATION_DELAY * 1000;
+            }
+            synchronized (this) {
+                this.running = false;
+                if (!executor.isShutdown()) {
+                    scheduleNext(this.triggered ? 0 : delay);
+                }
+            }
+        }
+
+        /**
+         * @brief   Bring the next run of the task forward to right away, or to the end of the current run. Nothing
+         *          happens if the next run has already been brought forward, or if the task is stopped
+         */
+        public void trigger() {
+            if (Chord.getMaintenancePeriod(this.task) == 0 || executor.isShutdown()) {
+                return;
+            }
+            synchronized (this) {
+                if (this.triggered) {
+                    return;
+                }
+                this.triggered = true;
+                this.triggers.incrementAndGet();
+                // A run going on schedules the next one right away when it ends. Otherwise the next run is replaced,
+                // even if it is starting: it has not read the state yet
+                if (!this.running) {
+                    this.next.cancel(false);
+                    scheduleNext(0);
+                }
+            }
+        }
+
+        /**
+         * @brief   Schedule the next run of the task, in place of the one scheduled before
+         * @param   delay   Delay of the run [milliseconds]
+         */
+        private synchronized void scheduleNext(long delay) {
+            final long generation = ++this.generation;
+            this.next = executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    ScheduledTask.this.run(generation);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * @brief   Run the action once. The runs of a task follow one another, never two at the same time
+         * @return  True if the run has taken longer than the deadline of the task
+         */
+        private boolean execute() {
+            long start = System.nanoTime();
+            try {
+                this.action.run();
+            } catch (Exception e) {
+                this.failures.incrementAndGet();
+                e.printStackTrace();
+            }
+            return record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+
+        /**
+         * @return  The interval before the next run, moved at random by up to MAINTENANCE_JITTER of it both ways
+         */
+        private long interval(long period) {
+            long interval = this.action instanceof Paced ? ((Paced) this.action).getInterval(period) : period;
+            return Math.round(interval * (1 + Chord.MAINTENANCE_JITTER * (2 * random.nextDouble() - 1)));
+        }
+
+        /**
+         * @return  True if the run has taken longer than the deadline of the task
+         */
+        private boolean record(long elapsed) {
+            this.runs.incrementAndGet();
+            this.totalTime.addAndGet(elapsed);
+            long max;
+            while (elapsed > (max = this.maxTime.get()) && !this.maxTime.compareAndSet(max, elapsed)) {
+            }
+            long deadline = Chord.getMaintenanceDeadline(this.task);
+            if (elapsed > deadline) {
+                this.overruns.incrementAndGet();
+                Chord.cLogPrint("Maintenance task " + this.task + " took " + elapsed + "ms, over its deadline of " + deadline + "ms");
+                return true;
+            }
+            return false;
+        }
+
+        public MaintenanceTask getTask() {
+            return task;
+        }
+
+        /**
+         * @return  Number of runs of the task
+         */
+        public long getRuns() {
+            return runs.get();
+        }
+
+        /**
+         * @return  Number of runs triggered by an event
+         */
+        public long getTriggers() {
+            return triggers.get();
+        }
+
+        /**
+         * @return  Number of runs that ended with an exception
+         */
+        public long getFailures() {
+            return failures.get();
+        }
+
+        /**
+         * @return  Number of runs that took longer than the deadline of the task
+         */
+        public long getOverruns() {
+            return overruns.get();
+        }
+
+        /**
+         * @return  Average time of a run [milliseconds]
+         */
+        public double getAverageTime() {
+            long runs = this.runs.get();
+            return runs == 0 ? 0 : (double) this.totalTime.get() / runs;
+        }
+
+        /**
+         * @return  Longest time of a run [milliseconds]
+         */
+        public long getMaxTime() {
+            return maxTime.get();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d runs (%d triggered), %d failures, %d overruns, avg %.1fms, max %dms", task,
+                    getRuns(), getTriggers(), getFailures(), getOverruns(), getAverageTime(), getMaxTime());
+        }
+    }
+
+    /**
+     * @param   name    Prefix of the names of the threads
+     */
+    public MaintenanceScheduler(String name) {
+        this.executor = new ScheduledThreadPoolExecutor(MaintenanceTask.values().length,
+                Chord.getExecutionMode().newPooledThreadFactory(name));
+        this.executor.setRemoveOnCancelPolicy(true);
+        this.events = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                ExecutionMode.newThreadFactory(name + "-events"));
+    }
+
+    /**
+     * @brief   Start running a task at its period
+     * @param   task    Which task it is, giving its period and deadline
+     * @param   action  What the task does, a Paced action to choose its own interval between the runs
+     * @throws  IllegalStateException if the task is already scheduled
+     */
+    public synchronized ScheduledTask schedule(MaintenanceTask task, Runnable action) {
+        if (this.tasks.containsKey(task)) {
+            throw new IllegalStateException(task + " is already scheduled");
+        }
+        ScheduledTask scheduledTask = new ScheduledTask(task, action);
+        this.tasks.put(task, scheduledTask);
+        long period = Chord.getMaintenancePeriod(task);
+        scheduledTask.scheduleNext(period > 0 ? (long) (random.nextDouble() * period) : 0);
+        return scheduledTask;
+    }
+
+    /**
+     * @return  The scheduled task, null if it has not been scheduled
+     */
+    public synchronized ScheduledTask getTask(MaintenanceTask task) {
+        return tasks.get(task);
+    }
+
+    /**
+     * @brief   Run a scheduled task as soon as possible (see ScheduledTask.trigger()), nothing happens if the task has not
+     *          been scheduled
+     */
+    public void trigger(MaintenanceTask task) {
+        ScheduledTask scheduledTask = getTask(task);
+        if (scheduledTask != null) {
+            scheduledTask.trigger();
+        }
+    }
+
+    /**
+     * @brief   Run a piece of work once, for the work triggered by an event that does not belong to a task (a message
+     *          to another node). The pieces of work run one after the other on a thread apart from the tasks. Nothing
+     *          happens once the scheduler is shut down
+     */
+    public void execute(final Runnable work) {
+        if (this.events.isShutdown()) {
+            return;
+        }
+        this.events.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    work.run();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * @brief   Stop running the tasks, letting the current runs end
+     */
+    public void shutdown() {
+        this.executor.shutdown();
+        this.events.shutdown();
+    }
+
+    /**
+     * @brief   Print the measures of the tasks
+     */
+    public synchronized void printStatusLogs() {
+        for (ScheduledTask task : this.tasks.values()) {
+            Chord.cLogPrint(task.toString());
+        }
+    }
+}
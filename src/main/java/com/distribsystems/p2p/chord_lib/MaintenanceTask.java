@@ -0,0 +1,53 @@
+package com.distribsystems.p2p.chord_lib;
+
+/**
+ * MaintenanceTask: the periodic tasks that keep the routing state and the items of a node correct, each one run by the
+ * MaintenanceScheduler at its own period, with its own deadline. The defaults can be changed with
+ * Chord.setMaintenancePeriod() and Chord.setMaintenanceDeadline()
+ */
+public enum MaintenanceTask {
+    /**
+     * Ask the successor for its predecessor and adopt it if it sits between the node and its successor, then copy the
+     * successor list of the successor and the predecessor list of the predecessor
+     */
+    STABILIZE(Chord.STABILIZATION_DELAY * 1000, 2 * Chord.SOCKET_TIMEOUT * 1000),
+    /**
+     * Look up the next fingers (see FingerFixer). The period is the shortest interval between two lookups: the
+     * FingerFixer slows down from it while the FingerTable does not change
+     */
+    FIX_FINGERS(Chord.FIX_FINGERS_MIN_INTERVAL, Chord.SOCKET_TIMEOUT * 1000),
+    /**
+     * Check that the predecessor is alive
+     */
+    CHECK_PREDECESSOR(Chord.PING_DELAY * 1000, Chord.SOCKET_TIMEOUT * 1000),
+    /**
+     * Check that the successor is alive, and repair it if not
+     */
+    PING(Chord.PING_DELAY * 1000, Chord.SOCKET_TIMEOUT * 1000),
+    /**
+     * Hand over the items of the ItemTable that belong to another node
+     */
+    RECONCILE_ITEMS(Chord.STABILIZATION_DELAY * 1000, Chord.STABILIZATION_DELAY * 1000);
+
+    private final long  defaultPeriod;
+    private final long  defaultDeadline;
+
+    MaintenanceTask(long defaultPeriod, long defaultDeadline) {
+        this.defaultPeriod = defaultPeriod;
+        this.defaultDeadline = defaultDeadline;
+    }
+
+    /**
+     * @return  The period of the task if it has not been set [milliseconds]
+     */
+    public long getDefaultPeriod() {
+        return defaultPeriod;
+    }
+
+    /**
+     * @return  The deadline of the task if it has not been set [milliseconds]
+     */
+    public long getDefaultDeadline() {
+        return defaultDeadline;
+    }
+}
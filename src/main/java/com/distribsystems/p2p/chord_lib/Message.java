@@ -0,0 +1,431 @@
+package com.distribsystems.p2p.chord_lib;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Message: a query or a response exchanged between two nodes, independently of how it travels on the wire
+ * (text lines or binary frames, see MessageCodec). Messages are mutable so that the Server can decode every query
+ * into, and encode every response from, objects that are reused from one message to the next
+ */
+public class Message {
+    private Command     command;
+    private int         requestId;
+    private RingId      id;
+    private long        idValue;
+    private boolean     hasIdValue;
+    private String      ipAddr;
+    private int         port;
+    private String      item;
+    private ByteBuffer  itemBytes;
+    private int         itemEncoding;
+    private int         lookupId;
+    private RingId      rangeStart;
+    private RingId[]    ids;
+    private Finger[]    fingers;
+    private int         bits;
+    private Coordinates coordinates;
+
+    public Message(String command) {
+        this(Command.fromText(command));
+    }
+
+    public Message(Command command) {
+        this.command = command;
+    }
+
+    Message() {
+    }
+
+    /**
+     * @brief   Create a message carrying an identifier (FIND_FINGER, FORGET_FINGER, PING, FIND_ITEM, ...)
+     */
+    public static Message withId(String command, RingId id) {
+        Message message = new Message(command);
+        message.id = id;
+        return message;
+    }
+
+    /**
+     * @brief   Create a message carrying the address of a node (FINGER_FOUND, NEW_PREDECESSOR, NEW_SUCCESSOR, PREDECESSOR)
+     */
+    public static Message withAddress(String command, String ipAddr, int port) {
+        Message message = new Message(command);
+        message.setAddress(ipAddr, port);
+        return message;
+    }
+
+    /**
+     * @brief   Create a message carrying the address of a node (FINGER_FOUND, NEW_PREDECESSOR, NEW_SUCCESSOR, PREDECESSOR)
+     */
+    public static Message withAddress(String command, Finger finger) {
+        return withAddress(command, finger.getIpAddr(), finger.getPort());
+    }
+
+    /**
+     * @brief   Create a PLACE_ITEM query
+     */
+    public static Message placeItem(RingId key, String item) {
+        Message message = withId(Chord.PLACE_ITEM, key);
+        message.item = item;
+        return message;
+    }
+
+    /**
+     * @brief   Create an ITEM_FOUND response, sent by the node storing the item
+     */
+    public static Message itemFound(String ipAddr, int port, String item) {
+        Message message = withAddress(Chord.ITEM_FOUND, ipAddr, port);
+        message.item = item;
+        return message;
+    }
+
+    /**
+     * @brief   Create a FIND_FINGER_DIRECT or FIND_ITEM_DIRECT query, whose answer is sent by the owner of the id
+     *          straight to the origin of the lookup
+     * @param   command     FIND_FINGER_DIRECT or FIND_ITEM_DIRECT
+     * @param   id          Identifier looked up
+     * @param   ipAddr      IP Address of the Server of the origin
+     * @param   port        PORT number of the Server of the origin
+     * @param   lookupId    Identifier of the lookup at the origin, quoted by the DIRECT_REPLY
+     */
+    public static Message direct(String command, RingId id, String ipAddr, int port, int lookupId) {
+        Message message = withId(command, id);
+        message.setAddress(ipAddr, port);
+        message.lookupId = lookupId;
+        return message;
+    }
+
+    /**
+     * @brief   Create a DIRECT_REPLY, sent by the owner of an id to the origin of the lookup
+     * @param   lookupId    Identifier of the lookup at the origin
+     * @param   ipAddr      IP Address of the owner
+     * @param   port        PORT number of the owner
+     * @param   item        Item found, null for a finger lookup or if the owner does not have it
+     */
+    public static Message directReply(int lookupId, String ipAddr, int port, String item) {
+        Message message = withAddress(Chord.DIRECT_REPLY, ipAddr, port);
+        message.lookupId = lookupId;
+        message.item = item;
+        return message;
+    }
+
+    /**
+     * @brief   Create a FIND_FINGERS query, asking for the owners of all the ids at once
+     */
+    public static Message findFingers(RingId[] ids) {
+        Message message = new Message(Chord.FIND_FINGERS);
+        message.ids = ids;
+        return message;
+    }
+
+    /**
+     * @brief   Create a FINGERS_FOUND response
+     * @param   fingers     Owners of the ids of the FIND_FINGERS query, in the same order (null if not found)
+     */
+    public static Message fingersFound(Finger[] fingers) {
+        Message message = new Message(Chord.FINGERS_FOUND);
+        message.fingers = fingers;
+        return message;
+    }
+
+    /**
+     * @brief   Create a ROUTING_STATE response, the routing state of a node transferred to a node joining just before it.
+     *          The layout is the one of the nodes of version 5, that only read the first two successors: the whole
+     *          successor and predecessor lists are transferred as SUCCESSORS and PREDECESSORS to the nodes that ask
+     *          for them (see Node.joinFromSuccessor())
+     * @param   state   Routing state of the node
+     * @return  The message, whose fingers are the first predecessor, the first and the second successor (the first
+     *          one again if it is the only one) and then the FingerTable of the node
+     */
+    public static Message routingState(RoutingState state) {
+        List<Finger> successors = state.getSuccessors();
+        Finger[] fingers = new Finger[3 + FingerLayout.size()];
+        fingers[0] = state.getFirstPredecessor();
+        fingers[1] = state.getFirstSuccessor();
+        fingers[2] = successors.size() > 1 ? successors.get(1) : state.getFirstSuccessor();
+        for (int i = 0; i < FingerLayout.size(); i++) {
+            fingers[3 + i] = state.getFingerTable().get(i);
+        }
+        Message message = new Message(Chord.ROUTING_STATE);
+        message.fingers = fingers;
+        return message;
+    }
+
+    /**
+     * @brief   Create a SUCCESSORS or PREDECESSORS response
+     * @param   command     SUCCESSORS or PREDECESSORS
+     * @param   nodes       Successor or predecessor list of the node, the closest first
+     */
+    public static Message neighbours(String command, List<Finger> nodes) {
+        Message message = new Message(command);
+        message.fingers = nodes.toArray(new Finger[nodes.size()]);
+        return message;
+    }
+
+    /**
+     * @brief   Create an ID_BITS response
+     * @param   bits    Number of bits of the identifiers of the ring of the node answering
+     */
+    public static Message idBits(int bits) {
+        Message message = new Message(Chord.ID_BITS);
+        message.bits = bits;
+        return message;
+    }
+
+    public boolean is(String command) {
+        return this.command.getText().equals(command);
+    }
+
+    public String getCommand() {
+        return command.getText();
+    }
+
+    public Command getType() {
+        return command;
+    }
+
+    /**
+     * @brief   Reset the message to the given command, dropping all its fields
+     */
+    public void reset(Command command) {
+        this.command = command;
+        this.requestId = 0;
+        this.id = null;
+        this.hasIdValue = false;
+        this.ipAddr = null;
+        this.port = 0;
+        this.item = null;
+        this.itemBytes = null;
+        this.itemEncoding = Compression.RAW;
+        this.lookupId = 0;
+        this.rangeStart = null;
+        this.ids = null;
+        this.fingers = null;
+        this.bits = 0;
+        this.coordinates = null;
+    }
+
+    /**
+     * @brief   Make this message a copy of another one (the request id excluded)
+     */
+    public void copy(Message message) {
+        this.command = message.command;
+        this.id = message.id;
+        this.idValue = message.idValue;
+        this.hasIdValue = message.hasIdValue;
+        this.ipAddr = message.ipAddr;
+        this.port = message.port;
+        this.item = message.item;
+        this.itemBytes = message.itemBytes;
+        this.itemEncoding = message.itemEncoding;
+        this.lookupId = message.lookupId;
+        this.rangeStart = message.rangeStart;
+        this.ids = message.ids;
+        this.fingers = message.fingers;
+        this.bits = message.bits;
+        this.coordinates = message.coordinates;
+    }
+
+    public int getRequestId() {
+        return requestId;
+    }
+
+    public void setRequestId(int requestId) {
+        this.requestId = requestId;
+    }
+
+    /**
+     * @return  The identifier carried by the message, null if there is none. An identifier decoded as a primitive
+     *          value is converted only when it is asked for
+     */
+    public RingId getId() {
+        if (id == null && hasIdValue) {
+            id = RingId.valueOf(idValue);
+        }
+        return id;
+    }
+
+    public void setId(RingId id) {
+        this.id = id;
+        this.hasIdValue = false;
+    }
+
+    boolean hasIdValue() {
+        return hasIdValue;
+    }
+
+    long getIdValue() {
+        return idValue;
+    }
+
+    /**
+     * @brief   Set an identifier small enough to fit in a long, without creating its RingId
+     */
+    void setIdValue(long idValue) {
+        this.id = null;
+        this.idValue = idValue;
+        this.hasIdValue = true;
+    }
+
+    /**
+     * @return  The identifier of the lookup at its origin (direct-reply lookups only)
+     */
+    public int getLookupId() {
+        return lookupId;
+    }
+
+    public void setLookupId(int lookupId) {
+        this.lookupId = lookupId;
+    }
+
+    /**
+     * @return  The id of the predecessor of the node that answered (ITEM_FOUND and ITEM_PLACED), which owns the ids in
+     *          (rangeStart, its id]. Null if the node did not tell
+     */
+    public RingId getRangeStart() {
+        return rangeStart;
+    }
+
+    /**
+     * @brief   Tell the origin of a lookup the range of ids owned by the node answering it
+     * @param   rangeStart  Id of the predecessor of the node
+     * @param   ipAddr      IP Address of the node
+     * @param   port        PORT number of the node
+     */
+    public void setRange(RingId rangeStart, String ipAddr, int port) {
+        this.rangeStart = rangeStart;
+        setAddress(ipAddr, port);
+    }
+
+    /**
+     * @return  The ids of a FIND_FINGERS query, null for any other message
+     */
+    public RingId[] getIds() {
+        return ids;
+    }
+
+    public void setIds(RingId[] ids) {
+        this.ids = ids;
+    }
+
+    /**
+     * @return  The owners found by a FINGERS_FOUND response (null where an owner could not be found), the nodes of a
+     *          ROUTING_STATE response or the neighbours of a SUCCESSORS or PREDECESSORS response, null for any other
+     *          message
+     */
+    public Finger[] getFingers() {
+        return fingers;
+    }
+
+    public void setFingers(Finger[] fingers) {
+        this.fingers = fingers;
+    }
+
+    /**
+     * @return  The number of bits of the identifiers carried by an ID_BITS response, 0 for any other message
+     */
+    public int getBits() {
+        return bits;
+    }
+
+    public void setBits(int bits) {
+        this.bits = bits;
+    }
+
+    /**
+     * @return  The network coordinates of the node answering a PING or a FIND_FINGER, null if it did not tell them
+     */
+    public Coordinates getCoordinates() {
+        return coordinates;
+    }
+
+    public void setCoordinates(Coordinates coordinates) {
+        this.coordinates = coordinates;
+    }
+
+    public String getIpAddr() {
+        return ipAddr;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setAddress(String ipAddr, int port) {
+        this.ipAddr = ipAddr;
+        this.port = port;
+    }
+
+    /**
+     * @return  The item carried by the message, inflated and decoded from its bytes the first time it is asked for
+     *          (null if its bytes can not be inflated)
+     */
+    public String getItem() {
+        if (item == null && itemBytes != null) {
+            try {
+                ByteBuffer bytes = itemEncoding == Compression.RAW ? itemBytes : Compression.inflate(itemBytes, itemEncoding);
+                item = MessageCodec.UTF8.decode(bytes.duplicate()).toString();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return item;
+    }
+
+    public void setItem(String item) {
+        this.item = item;
+        this.itemBytes = null;
+        this.itemEncoding = Compression.RAW;
+    }
+
+    /**
+     * @return  The item if it has already been decoded, null otherwise
+     */
+    String getDecodedItem() {
+        return item;
+    }
+
+    /**
+     * @brief   Set the decoded item, keeping the bytes it has been decoded from
+     */
+    void setDecodedItem(String item) {
+        this.item = item;
+    }
+
+    /**
+     * @return  The bytes of the item as they were received (possibly compressed, see getItemEncoding()), null if the
+     *          item has not been received as bytes
+     */
+    ByteBuffer getItemBytes() {
+        return itemBytes;
+    }
+
+    /**
+     * @return  Compression.RAW if the item bytes are plain UTF-8, otherwise how they have been compressed
+     */
+    int getItemEncoding() {
+        return itemEncoding;
+    }
+
+    /**
+     * @brief   Set the item as bytes, that are decoded only if the item is asked for and are written as they are
+     *          when the message is encoded again (for example when a query is forwarded to the next node)
+     * @param   itemBytes   Bytes of the item
+     * @param   encoding    Compression.RAW for plain UTF-8, otherwise how they have been compressed
+     */
+    void setItemBytes(ByteBuffer itemBytes, int encoding) {
+        this.item = null;
+        this.itemBytes = itemBytes;
+        this.itemEncoding = encoding;
+    }
+
+    /**
+     * @return  The message in the text form of the line protocol
+     */
+    @Override
+    public String toString() {
+        return MessageCodec.encodeText(this);
+    }
+}
@@ -0,0 +1,677 @@
+package com.distribsystems.p2p.chord_lib;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * MessageCodec: encodes and decodes the Messages in both the wire formats understood by the nodes:
+ *  - Text: one line per message, of the form COMMAND:CONTENT (the only format known by older nodes);
+ *  - Binary: length-prefixed frames of the form [length:int][opcode:byte][requestId:int][fields...], where ids are
+ *    fixed-width unsigned big-endian numbers, lookup ids are ints and strings are length-prefixed. From version 3 the
+ *    high bits of the opcode tell whether the item of the frame is compressed (see Compression).
+ * Every connection starts in text. The client offers the binary format with a PING carrying the HANDSHAKE: a node
+ * that supports it answers with a PONG carrying the agreed version and both sides switch to frames, while an older
+ * node simply answers PONG and the connection stays in text.
+ */
+public class MessageCodec {
+    public final static Charset UTF8 = Charset.forName("UTF-8");
+    private final static String HANDSHAKE = "HELLO/";
+
+    // Identifiers up to this number of bytes are decoded as primitive values
+    private final static int MAX_PRIMITIVE_ID_BYTES = 7;
+    // Bits of the opcode byte that identify the command, the others carry the encoding of the item
+    private final static int OPCODE_MASK = 0x3F;
+
+    /*------------------------------------------------ Negotiation ------------------------------------------------*/
+
+    /**
+     * @return  The PING sent by a client to offer the binary protocol
+     */
+    public static String handshakeQuery() {
+        return Chord.PING + ":" + HANDSHAKE + Chord.PROTOCOL_VERSION;
+    }
+
+    /**
+     * @brief   Control whether a line received by the server is a handshake, and if so agree on a version
+     * @param   line    Line received
+     * @return  The version agreed with the client, 0 if the line is not a handshake
+     */
+    public static int acceptHandshake(String line) {
+        String prefix = Chord.PING + ":" + HANDSHAKE;
+        if (!line.startsWith(prefix)) {
+            return 0;
+        }
+        try {
+            return Math.min(Integer.parseInt(line.substring(prefix.length())), Chord.PROTOCOL_VERSION);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return  The PONG sent back by the server to agree on the version
+     */
+    public static String handshakeResponse(int version) {
+        return Chord.PONG + ":" + HANDSHAKE + version;
+    }
+
+    /**
+     * @brief   Read the response of the server to the handshake
+     * @param   line    Line received (a plain PONG if the server only knows the text protocol)
+     * @return  The version agreed with the server, 1 (text) if the server did not accept the handshake
+     */
+    public static int handshakeVersion(String line) {
+        String prefix = Chord.PONG + ":" + HANDSHAKE;
+        if (line.startsWith(prefix)) {
+            try {
+                return Integer.parseInt(line.substring(prefix.length()));
+            } catch (NumberFormatException e) {
+                return 1;
+            }
+        }
+        return 1;
+    }
+
+    /*------------------------------------------------ Text format ------------------------------------------------*/
+
+    /**
+     * @brief   Encode a message as a line of the text protocol (without the line terminator)
+     */
+    public static String encodeText(Message message) {
+        String command = message.getCommand();
+        switch (command) {
+            case Chord.FINGER_FOUND:
+            case Chord.NEW_PREDECESSOR:
+            case Chord.NEW_SUCCESSOR:
+            case Chord.NEXT_HOP:
+                return command + ":" + message.getIpAddr() + ":" + message.getPort();
+            case Chord.FIND_FINGER_DIRECT:
+            case Chord.FIND_ITEM_DIRECT:
+                return command + ":" + message.getId() + ":" + message.getIpAddr() + ":" + message.getPort() + ":" + message.getLookupId();
+            case Chord.DIRECT_REPLY:
+                return command + ":" + message.getLookupId() + ":" + message.getIpAddr() + ":" + message.getPort() + ":" + message.getItem();
+            case Chord.PREDECESSOR:
+                return message.getIpAddr() + ":" + message.getPort();
+            case Chord.ITEM_FOUND:
+                return command + ":" + message.getIpAddr() + ":" + message.getPort() + ":" + message.getItem();
+            case Chord.PLACE_ITEM:
+                return command + ":" + message.getId() + ":" + message.getItem();
+            case Chord.FIND_FINGERS: {
+                StringBuilder line = new StringBuilder(command).append(':');
+                for (int i = 0; i < message.getIds().length; i++) {
+                    line.append(i > 0 ? "," : "").append(message.getIds()[i]);
+                }
+                return line.toString();
+            }
+            case Chord.FINGERS_FOUND:
+            case Chord.ROUTING_STATE:
+            case Chord.SUCCESSORS:
+            case Chord.PREDECESSORS: {
+                // The owners that could not be found are left empty
+                StringBuilder line = new StringBuilder(command).append(':');
+                for (int i = 0; i < message.getFingers().length; i++) {
+                    Finger finger = message.getFingers()[i];
+                    line.append(i > 0 ? "," : "");
+                    if (finger != null) {
+                        line.append(finger.getIpAddr()).append(':').append(finger.getPort());
+                    }
+                }
+                return line.toString();
+            }
+            case Chord.ID_BITS:
+                return command + ":" + message.getBits();
+            default:
+                return message.getId() != null ? command + ":" + message.getId() : command;
+        }
+    }
+
+    /**
+     * @brief   Decode a line of the text protocol
+     * @param   line            Line received
+     * @param   requestCommand  Command of the query the line responds to, null if the line is a query. It is needed
+     *                          because the response to REQUEST_PREDECESSOR is just the address
+     * @return  The decoded message
+     * @throws  IOException if the line is malformed
+     */
+    public static Message decodeText(String line, String requestCommand) throws IOException {
+        try {
+            if (Chord.REQUEST_PREDECESSOR.equals(requestCommand)) {
+                String[] address = line.split(":");
+                return Message.withAddress(Chord.PREDECESSOR, address[0], Integer.valueOf(address[1]));
+            }
+
+            //The Command and the Content are splinted by a : character
+            String[] queryElements = line.split(":", 2);
+            String command = queryElements[0];
+            String content = queryElements.length > 1 ? queryElements[1] : "";
+
+            switch (command) {
+                case Chord.FINGER_FOUND:
+                case Chord.NEW_PREDECESSOR:
+                case Chord.NEW_SUCCESSOR:
+                case Chord.NEXT_HOP: {
+                    String[] address = content.split(":");
+                    return Message.withAddress(command, address[0], Integer.valueOf(address[1]));
+                }
+                case Chord.FIND_FINGER_DIRECT:
+                case Chord.FIND_ITEM_DIRECT: {
+                    String[] contentFragments = content.split(":");
+                    return Message.direct(command, RingId.parse(contentFragments[0]), contentFragments[1],
+                            Integer.valueOf(contentFragments[2]), Integer.valueOf(contentFragments[3]));
+                }
+                case Chord.DIRECT_REPLY: {
+                    // The item is everything after the address, so that it can contain ':' as well
+                    String[] contentFragments = content.split(":", 4);
+                    return Message.directReply(Integer.valueOf(contentFragments[0]), contentFragments[1],
+                            Integer.valueOf(contentFragments[2]), contentFragments[3]);
+                }
+                case Chord.ITEM_FOUND: {
+                    String[] contentFragments = content.split(":", 3);
+                    return Message.itemFound(contentFragments[0], Integer.valueOf(contentFragments[1]), contentFragments[2]);
+                }
+                case Chord.PLACE_ITEM: {
+                    // The item is everything after the key, so that it can contain ':' as well
+                    String[] contentFragments = content.split(":", 2);
+                    return Message.placeItem(RingId.parse(contentFragments[0]), contentFragments[1]);
+                }
+                case Chord.FIND_FINGERS: {
+                    String[] contentFragments = content.isEmpty() ? new String[0] : content.split(",");
+                    RingId[] ids = new RingId[contentFragments.length];
+                    for (int i = 0; i < ids.length; i++) {
+                        ids[i] = RingId.parse(contentFragments[i]);
+                    }
+                    return Message.findFingers(ids);
+                }
+                case Chord.FINGERS_FOUND:
+                case Chord.ROUTING_STATE:
+                case Chord.SUCCESSORS:
+                case Chord.PREDECESSORS: {
+                    String[] contentFragments = content.isEmpty() ? new String[0] : content.split(",", -1);
+                    Finger[] fingers = new Finger[contentFragments.length];
+                    for (int i = 0; i < fingers.length; i++) {
+                        if (!contentFragments[i].isEmpty()) {
+                            String[] address = contentFragments[i].split(":");
+                            fingers[i] = new Finger(address[0], Integer.valueOf(address[1]));
+                        }
+                    }
+                    Message message = new Message(command);
+                    message.setFingers(fingers);
+                    return message;
+                }
+                case Chord.ID_BITS:
+                    return Message.idBits(Integer.valueOf(content.trim()));
+                case Chord.REQUEST_PREDECESSOR:
+                case Chord.REQUEST_ROUTING_STATE:
+                case Chord.REQUEST_SUCCESSORS:
+                case Chord.REQUEST_PREDECESSORS:
+                case Chord.REQUEST_ID_BITS:
+                case Chord.PONG:
+                case Chord.FINGER_FORGOTTEN:
+                case Chord.NOT_FOUND:
+                    return new Message(command);
+                case Chord.PING: {
+                    // Older nodes do not always send a numeric id with the ping
+                    Message message = new Message(command);
+                    if (content.matches("[0-9]+")) {
+                        message.setId(RingId.parse(content));
+                    }
+                    return message;
+                }
+                default:
+                    if (Command.fromText(command) == null) {
+                        throw new IOException("Unknown command: " + line);
+                    }
+                    return Message.withId(command, RingId.parse(content.trim()));
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Malformed message: " + line);
+        }
+    }
+
+    /**
+     * @brief   Read a line from the stream one byte at a time, so that nothing is read beyond it: this allows the
+     *          same stream to switch to binary frames right after the handshake
+     * @param   in  Input stream (should be buffered)
+     * @return  The line without its terminator, null if the stream has ended
+     * @throws  IOException if the stream can not be read or the line is too long
+     */
+    public static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                if (line.size() == 0) {
+                    return null;
+                }
+                break;
+            }
+            if (line.size() >= Chord.MAX_MESSAGE_LENGTH) {
+                throw new IOException("Line too long");
+            }
+            line.write(b);
+        }
+        byte[] bytes = line.toByteArray();
+        int length = bytes.length;
+        if (length > 0 && bytes[length - 1] == '\r') {
+            length--;
+        }
+        return new String(bytes, 0, length, UTF8);
+    }
+
+    /**
+     * @brief   Write a message as a line of the text protocol
+     */
+    public static void writeText(OutputStream out, Message message) throws IOException {
+        out.write((encodeText(message) + "\n").getBytes(UTF8));
+    }
+
+    /*----------------------------------------------- Binary format -----------------------------------------------*/
+
+    /**
+     * @return  The fixed number of bytes used for the identifiers in the frames
+     */
+    static int idBytes() {
+        return (Chord.getFingerTableSize() + 7) / 8;
+    }
+
+    /**
+     * @brief   Compute the size of the binary frame of a message
+     * @return  The number of bytes of the frame, length prefix included
+     */
+    public static int frameLength(Message message) {
+        Command command = message.getType();
+        int length = 4 + 1 + 4;
+        if (command.has(Command.ID)) {
+            length += idBytes();
+        }
+        if (command.has(Command.ADDRESS)) {
+            length += 1 + utf8Length(message.getIpAddr()) + 2;
+        }
+        if (command.has(Command.LOOKUP)) {
+            length += 4;
+        }
+        if (command.has(Command.ITEM)) {
+            if (message.getItemBytes() != null) {
+                length += 4 + message.getItemBytes().remaining();
+            } else {
+                length += 4 + (message.getItem() != null ? utf8Length(message.getItem()) : 0);
+            }
+        }
+        if (command.has(Command.RANGE) && message.getRangeStart() != null) {
+            length += idBytes();
+            if (!command.has(Command.ADDRESS)) {
+                length += 1 + utf8Length(message.getIpAddr()) + 2;
+            }
+        }
+        if (command.has(Command.IDS)) {
+            length += 2 + message.getIds().length * idBytes();
+        }
+        if (command.has(Command.FINGERS)) {
+            length += 2;
+            for (Finger finger : message.getFingers()) {
+                length += 1 + (finger != null ? utf8Length(finger.getIpAddr()) : 0) + 2;
+            }
+        }
+        if (command.has(Command.BITS)) {
+            length += 2;
+        }
+        if (command.has(Command.COORDINATES) && message.getCoordinates() != null) {
+            length += 4 * 4;
+        }
+        return length;
+    }
+
+    /**
+     * @brief   Encode a message as a binary frame, length prefix included
+     * @return  The frame, ready to be written
+     */
+    public static ByteBuffer encodeFrame(Message message) throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(frameLength(message));
+        encodeFrame(message, frame);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * @brief   Encode a message as a binary frame at the position of the buffer, without allocating anything
+     * @param   message Message to encode
+     * @param   frame   Buffer with at least frameLength(message) bytes remaining
+     */
+    public static void encodeFrame(Message message, ByteBuffer frame) throws IOException {
+        Command command = message.getType();
+        if (command == null) {
+            throw new IOException("Unknown command");
+        }
+
+        // The length is written once the frame is complete
+        int start = frame.position();
+        frame.putInt(0);
+        frame.put((byte) (command.getOpcode() | (command.has(Command.ITEM) ? message.getItemEncoding() : 0)));
+        frame.putInt(message.getRequestId());
+        if (command.has(Command.ID)) {
+            putId(frame, message);
+        }
+        if (command.has(Command.ADDRESS)) {
+            putAddress(frame, message);
+        }
+        if (command.has(Command.LOOKUP)) {
+            frame.putInt(message.getLookupId());
+        }
+        if (command.has(Command.ITEM)) {
+            if (message.getItemBytes() != null) {
+                // Payload received from another node, written back untouched
+                frame.putInt(message.getItemBytes().remaining());
+                frame.put(message.getItemBytes().duplicate());
+            } else if (message.getItem() != null) {
+                frame.putInt(utf8Length(message.getItem()));
+                putUtf8(frame, message.getItem());
+            } else {
+                frame.putInt(-1);
+            }
+        }
+        if (command.has(Command.RANGE) && message.getRangeStart() != null) {
+            message.getRangeStart().writeTo(frame, idBytes());
+            if (!command.has(Command.ADDRESS)) {
+                putAddress(frame, message);
+            }
+        }
+        if (command.has(Command.IDS)) {
+            frame.putShort((short) message.getIds().length);
+            for (RingId id : message.getIds()) {
+                id.writeTo(frame, idBytes());
+            }
+        }
+        if (command.has(Command.FINGERS)) {
+            frame.putShort((short) message.getFingers().length);
+            for (Finger finger : message.getFingers()) {
+                if (finger != null) {
+                    putAddress(frame, finger.getIpAddr(), finger.getPort());
+                } else {
+                    putAddress(frame, "", 0);
+                }
+            }
+        }
+        if (command.has(Command.BITS)) {
+            frame.putShort((short) message.getBits());
+        }
+        if (command.has(Command.COORDINATES) && message.getCoordinates() != null) {
+            Coordinates coordinates = message.getCoordinates();
+            frame.putFloat((float) coordinates.getX());
+            frame.putFloat((float) coordinates.getY());
+            frame.putFloat((float) coordinates.getHeight());
+            frame.putFloat((float) coordinates.getError());
+        }
+        frame.putInt(start, frame.position() - start - 4);
+    }
+
+    /**
+     * @brief   Decode a binary frame
+     * @param   frame   Buffer positioned right after the length prefix, whose limit is the end of the frame
+     * @return  The decoded message
+     * @throws  IOException if the frame is malformed
+     */
+    public static Message decodeFrame(ByteBuffer frame) throws IOException {
+        Message message = new Message();
+        decodeFrame(frame, message, false);
+        return message;
+    }
+
+    /**
+     * @brief   Decode a binary frame into an existing message. Only the addresses, the items and the identifiers
+     *          too wide for a long are allocated. Items are kept as UTF-8 bytes, decoded only if they are used
+     * @param   frame           Buffer positioned right after the length prefix, whose limit is the end of the frame
+     * @param   message         Message overwritten with the content of the frame
+     * @param   sharePayload    True if the item can refer to the bytes of the buffer, False if the buffer is going to
+     *                          be reused and the item must be copied
+     * @throws  IOException if the frame is malformed
+     */
+    public static void decodeFrame(ByteBuffer frame, Message message, boolean sharePayload) throws IOException {
+        try {
+            int opcode = frame.get() & 0xFF;
+            int encoding = opcode & ~OPCODE_MASK;
+            Command command = Command.fromOpcode(opcode & OPCODE_MASK);
+            if (command == null) {
+                throw new IOException("Unknown opcode: " + opcode);
+            }
+            message.reset(command);
+            message.setRequestId(frame.getInt());
+
+            if (command.has(Command.ID)) {
+                getId(frame, message);
+            }
+            if (command.has(Command.ADDRESS)) {
+                getAddress(frame, message);
+            }
+            if (command.has(Command.LOOKUP)) {
+                message.setLookupId(frame.getInt());
+            }
+            if (command.has(Command.ITEM)) {
+                int length = frame.getInt();
+                if (length >= 0) {
+                    ByteBuffer item;
+                    if (sharePayload) {
+                        item = frame.slice();
+                        item.limit(length);
+                        frame.position(frame.position() + length);
+                    } else {
+                        byte[] bytes = new byte[length];
+                        frame.get(bytes);
+                        item = ByteBuffer.wrap(bytes);
+                    }
+                    message.setItemBytes(item.asReadOnlyBuffer(), encoding);
+                }
+            }
+            if (command.has(Command.RANGE) && frame.hasRemaining()) {
+                RingId rangeStart = RingId.readFrom(frame, idBytes());
+                if (!command.has(Command.ADDRESS)) {
+                    getAddress(frame, message);
+                }
+                message.setRange(rangeStart, message.getIpAddr(), message.getPort());
+            }
+            if (command.has(Command.IDS)) {
+                RingId[] ids = new RingId[frame.getShort() & 0xFFFF];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = RingId.readFrom(frame, idBytes());
+                }
+                message.setIds(ids);
+            }
+            if (command.has(Command.FINGERS)) {
+                Finger[] fingers = new Finger[frame.getShort() & 0xFFFF];
+                for (int i = 0; i < fingers.length; i++) {
+                    byte[] address = new byte[frame.get() & 0xFF];
+                    frame.get(address);
+                    int port = frame.getShort() & 0xFFFF;
+                    if (address.length > 0) {
+                        fingers[i] = new Finger(new String(address, UTF8), port);
+                    }
+                }
+                message.setFingers(fingers);
+            }
+            if (command.has(Command.BITS)) {
+                message.setBits(frame.getShort() & 0xFFFF);
+            }
+            if (command.has(Command.COORDINATES) && frame.hasRemaining()) {
+                message.setCoordinates(new Coordinates(frame.getFloat(), frame.getFloat(), frame.getFloat(), frame.getFloat()));
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated frame");
+        }
+    }
+
+    /**
+     * @brief   Prepare the item of a message for a connection: compress it if the other node can inflate it (and the
+     *          compression is enabled), or inflate it if it was received compressed but the other node can not
+     * @param   message Message about to be encoded as a binary frame
+     * @param   version Protocol version agreed on the connection
+     * @throws  IOException if a compressed item can not be inflated
+     */
+    public static void preparePayload(Message message, int version) throws IOException {
+        if (!message.getType().has(Command.ITEM) || (message.getItemBytes() == null && message.getDecodedItem() == null)) {
+            return;
+        }
+
+        boolean compress = version >= 3 && Chord.isCompression();
+        if (message.getItemEncoding() != Compression.RAW) {
+            // Compressed payloads are forwarded untouched to the nodes that can inflate them
+            if (version < 3) {
+                message.setItemBytes(Compression.inflate(message.getItemBytes(), message.getItemEncoding()), Compression.RAW);
+            }
+            return;
+        }
+        if (compress) {
+            ByteBuffer raw = message.getItemBytes();
+            if (raw == null) {
+                raw = ByteBuffer.allocate(utf8Length(message.getDecodedItem()));
+                putUtf8(raw, message.getDecodedItem());
+                raw.flip();
+            }
+            ByteBuffer compressed = Compression.compress(raw);
+            if (compressed != null) {
+                // Keep the decoded item (if any), the sender may still need it
+                String item = message.getDecodedItem();
+                message.setItemBytes(compressed, Compression.encoding());
+                message.setDecodedItem(item);
+            }
+        }
+    }
+
+    /**
+     * @brief   Write a message as a binary frame
+     */
+    public static void writeFrame(OutputStream out, Message message) throws IOException {
+        ByteBuffer frame = encodeFrame(message);
+        out.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+    }
+
+    /**
+     * @brief   Read a binary frame from a blocking stream
+     * @return  The decoded message
+     * @throws  EOFException if the stream has ended
+     */
+    public static Message readFrame(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        int length = data.readInt();
+        if (length <= 0 || length > Chord.MAX_MESSAGE_LENGTH) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+        byte[] frame = new byte[length];
+        data.readFully(frame);
+        // The frame is not reused, the item can stay in it
+        Message message = new Message();
+        decodeFrame(ByteBuffer.wrap(frame), message, true);
+        return message;
+    }
+
+    /**
+     * @brief   Write the address of the message as [length:byte][ip address][port:short]
+     */
+    private static void putAddress(ByteBuffer frame, Message message) {
+        putAddress(frame, message.getIpAddr(), message.getPort());
+    }
+
+    private static void putAddress(ByteBuffer frame, String ipAddr, int port) {
+        frame.put((byte) utf8Length(ipAddr));
+        putUtf8(frame, ipAddr);
+        frame.putShort((short) port);
+    }
+
+    /**
+     * @brief   Read an address written by putAddress() into the message
+     */
+    private static void getAddress(ByteBuffer frame, Message message) {
+        byte[] address = new byte[frame.get() & 0xFF];
+        frame.get(address);
+        message.setAddress(new String(address, UTF8), frame.getShort() & 0xFFFF);
+    }
+
+    /**
+     * @brief   Write the identifier of the message as a fixed-width unsigned big-endian number (zero if the message
+     *          has none)
+     */
+    private static void putId(ByteBuffer frame, Message message) {
+        int width = idBytes();
+        if (message.hasIdValue()) {
+            long value = message.getIdValue();
+            for (int i = width - 1; i >= 0; i--) {
+                frame.put(i < 8 ? (byte) (value >>> (8 * i)) : 0);
+            }
+            return;
+        }
+
+        RingId id = message.getId();
+        (id != null ? id : RingId.ZERO).writeTo(frame, width);
+    }
+
+    /**
+     * @brief   Read an identifier written by putId() into the message
+     */
+    private static void getId(ByteBuffer frame, Message message) {
+        int width = idBytes();
+        if (width <= MAX_PRIMITIVE_ID_BYTES) {
+            long value = 0;
+            for (int i = 0; i < width; i++) {
+                value = (value << 8) | (frame.get() & 0xFF);
+            }
+            message.setIdValue(value);
+            return;
+        }
+
+        message.setId(RingId.readFrom(frame, width));
+    }
+
+    /**
+     * @return  The number of bytes of the string encoded in UTF-8
+     */
+    static int utf8Length(String string) {
+        int length = 0;
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < string.length() && Character.isLowSurrogate(string.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                // Lone surrogates are encoded as '?', as String.getBytes() does
+                length += Character.isSurrogate(c) ? 1 : 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * @brief   Write the string encoded in UTF-8, without the intermediate byte array of String.getBytes()
+     */
+    static void putUtf8(ByteBuffer buffer, String string) {
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < string.length() && Character.isLowSurrogate(string.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, string.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+}
@@ -1,18 +1,14 @@
 package com.distribsystems.p2p.chord_lib;
 
-import org.apache.commons.codec.digest.DigestUtils;
-
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.math.BigInteger;
-import java.net.Socket;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Node
@@ -25,17 +21,24 @@ public class Node
     private String          existingNodeIpAddr = null;
     private int             existingNodePort;
 
-    private BigInteger      id;
+    private RingId          id;
     //private String          hex;
-    private Finger          firstSuccessor;
-    private Finger          firstPredecessor;
-    private Finger          secondSuccessor;
-    private Finger          secondPredecessor;
 
-    private Map<Integer, Finger>        fingerTable = new HashMap<>();
-    private Map<BigInteger, String>     itemTable = new HashMap<>();
+    private final AtomicReference<RoutingState>     routingState = new AtomicReference<>(RoutingState.EMPTY);
+    private Map<RingId, String>         itemTable = new ConcurrentHashMap<>();
     private Thread                  server;
-    private Semaphore semaphore = new Semaphore(1);
+    private Heartbeat               heartbeat;
+    private MaintenanceScheduler    maintenance;
+    private volatile Stabilizer     stabilizer;
+    private ConnectionPool          connectionPool = new ConnectionPool();
+    private final LookupStrategy    lookupStrategy = Chord.getLookupStrategy();
+    private final DirectReplies     directReplies = new DirectReplies();
+    private final OwnerCache        ownerCache = new OwnerCache();
+    private volatile boolean        fastJoined = false;
+    private final FingerFixer       fingerFixer = new FingerFixer(this);
+    private final boolean           counterClockwiseFingers = Chord.isCounterClockwiseFingers();
+    private final boolean           proximityFingers = Chord.isProximityFingers();
+    private final Proximity         proximity = new Proximity();
 
     /**
      * @brief   Chord First Node Constructor: Initializes the first Node in the ChordRing
@@ -49,6 +52,7 @@ public class Node
             this.port   = portNumber;
             this.server = new Server(this);
             this.server.start();
+            startHeartbeat();
 
             //Create the Node Identifier by taking the SHA-1 hash function of the IP address and the PORT number
             setNodeId(ipAddress, portNumber);
@@ -65,7 +69,9 @@ public class Node
             new Thread(new ItemQueryTester(this)).start();
 
             //Run Stabilization protocol
-            new Thread(new Stabilizer(this)).start();
+            this.maintenance = new MaintenanceScheduler("chord-maintenance-" + this.port);
+            this.stabilizer = new Stabilizer(this);
+            this.stabilizer.start();
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -77,6 +83,7 @@ public class Node
      * @param   portNumber            PORT number of the Node
      * @param   existingNodeIpAddr    IP Address of the already existing Node
      * @param   existingNodePort      PORT number of the already existing Node
+     * @throws  IllegalStateException if the identifiers of the existing ring do not have Chord.getFingerTableSize() bits
      */
     public Node(String ipAddress, int portNumber, String existingNodeIpAddr, int existingNodePort) {
         try {
@@ -85,8 +92,10 @@ public class Node
             this.port   = portNumber;
             this.existingNodeIpAddr = existingNodeIpAddr;
             this.existingNodePort   = existingNodePort;
+            checkIdBits();
             this.server = new Server(this);
             this.server.start();
+            startHeartbeat();
 
             //Create the Node Identifier by taking the SHA-1 hash function of the IP address and the PORT number
             setNodeId(ipAddress, portNumber);
@@ -96,92 +105,298 @@ public class Node
             Chord.cLogPrint("Server listening on port " + this.port);
             Chord.cLogPrint("Connected to the existing node " + this.existingNodeIpAddr + ":" + this.existingNodePort);
             Chord.cLogPrint("Node's position is " + this.id);
-            initFingerTable();
-            initSuccessors();
+            if (!Chord.isFastJoin() || !joinFromSuccessor()) {
+                initFingerTable();
+                initSuccessors();
+            }
 
             //Item Generation and Query Testers
             new Thread(new ItemGenerationTester(this)).start();
             new Thread(new ItemQueryTester(this)).start();
 
             //Run Stabilization protocol
-            new Thread(new Stabilizer(this)).start();
+            this.maintenance = new MaintenanceScheduler("chord-maintenance-" + this.port);
+            this.stabilizer = new Stabilizer(this);
+            this.stabilizer.start();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * @brief   Start checking the liveness of the neighbours with UDP heartbeats, if enabled. If the UDP port can not
+     *          be opened the Stabilizer keeps checking them with TCP PINGs
+     */
+    private void startHeartbeat() {
+        if (!Chord.isUdpHeartbeat()) {
+            return;
+        }
+        try {
+            this.heartbeat = new Heartbeat(this);
+            this.heartbeat.start();
+        } catch (IOException e) {
+            Chord.cLogPrint("UDP heartbeats unavailable on port " + this.port + ", falling back to TCP");
+            this.heartbeat = null;
+        }
+    }
+
     /**
      * @brief   Set/Create the Node Identifier by taking the SHA-1 hash function of the IP address and the PORT number
      * @param   ipAddress     IP Address of the Node
      * @param   portNumber    PORT number of the Node
      */
     void setNodeId(String ipAddress, int portNumber){
-        String hex = DigestUtils.sha1Hex(ipAddress + ":" + String.valueOf(portNumber));
-        BigInteger baseTwo = BigInteger.valueOf(2L);
-        this.id = new BigInteger(hex, 16);
-        this.id = this.id.mod(baseTwo.pow(Chord.FINGER_TABLE_SIZE));
+        this.id = RingId.hash(ipAddress + ":" + String.valueOf(portNumber));
         Chord.cLogPrint(this.id.toString());
     }
 
     /**
      * @brief   Initialize the Finger Table of the Node:
      *              1) If it is the first node in the ChordRing than all fingers will refer to itself; otherwise
-     *              2) Create the finger table by contacting the node passed as argument already present on the ring, ask one
-     *              finger at a time and wait to get the corresponding node;
+     *              2) Create the finger table by contacting the node passed as argument already present on the ring, ask all
+     *              the fingers at once and then wait to get the corresponding nodes (the fingers it could not resolve
+     *              refer to it until the next stabilization);
      */
     public void initFingerTable() {
         // If this is the first node in the ChordRing
         if (this.existingNodeIpAddr == null) {
             // Initialize all fingers to refer to itself
-            for (int i = 0; i < Chord.FINGER_TABLE_SIZE; i++) {
-                this.fingerTable.put(i, new Finger(this.ipAddr, this.port));
+            Map<Integer, Finger> fingerTable = new HashMap<>();
+            for (int i = 0; i < FingerLayout.size(); i++) {
+                fingerTable.put(i, new Finger(this.ipAddr, this.port));
             }
+            setFingerTable(fingerTable);
+            initCounterClockwiseFingers(RoutingIndex.EMPTY);
         } else {
-            // Open connection to contact node
+            // Borrow a connection to contact node
             try {
-                BigInteger baseTwo = BigInteger.valueOf(2L);
-                Socket socket = new Socket(this.existingNodeIpAddr, this.existingNodePort);
-                socket.setSoTimeout(Chord.SOCKET_TIMEOUT*1000);
-
-                // Open reader/writer to chord node
-                PrintWriter socketWriter = new PrintWriter(socket.getOutputStream(), true);
-                BufferedReader socketReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-
-                // Iterate all the Fingers in the FingerTable
-                for (int i = 0; i < Chord.FINGER_TABLE_SIZE; i++) {
-                    BigInteger fingerNode = baseTwo.pow(i);
-                    fingerNode = fingerNode.add(this.id);
-
-                    // If overflow occur
-                    if (fingerNode.compareTo(BigInteger.valueOf(2L).pow(Chord.FINGER_TABLE_SIZE)) >= 0) {
-                        fingerNode = fingerNode.subtract(BigInteger.valueOf(2L).pow(Chord.FINGER_TABLE_SIZE));
+                Connection connection = this.connectionPool.borrow(this.existingNodeIpAddr, this.existingNodePort, true);
+
+                // Ask for all the Fingers in the FingerTable at once, and build the new FingerTable aside
+                Map<Integer, Finger> fingerTable = new HashMap<>();
+                try {
+                    Finger existingNode = new Finger(this.existingNodeIpAddr, this.existingNodePort);
+                    Finger[] fingers = requestFingers(connection, existingNode);
+
+                    for (int i = 0; i < FingerLayout.size(); i++) {
+                        // Add response finger to table
+                        fingerTable.put(i, fingers[i] != null ? fingers[i] : existingNode);
                     }
+                    setFingerTable(fingerTable);
+                    initCounterClockwiseFingers(getRoutingIndex());
+                } catch (IOException e) {
+                    this.connectionPool.invalidate(connection);
+                    throw e;
+                }
 
-                    // Send query to chord
-                    socketWriter.println(Chord.FIND_FINGER + ":" + fingerNode.toString());
-                    Chord.cLogPrint("Sending: " + Chord.FIND_FINGER + ":" + fingerNode.toString());
+                // Give the connection back to the pool
+                this.connectionPool.release(connection);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
 
-                    // Read response from chord
-                    String serverResponse = socketReader.readLine();
+    /**
+     * @brief   Look up the nodes of all the fingers of the FingerTable, starting from another node. With the recursive
+     *          strategy the starts of all the fingers travel in a single FIND_FINGERS query, which every node on the
+     *          way resolves as far as it can before splitting the rest among its next hops (see PendingFingers for
+     *          older nodes), otherwise every finger is looked up with the LookupStrategy of the node
+     * @param   connection  Connection to the node the lookups start from
+     * @param   hop         The node the lookups start from
+     * @return  The nodes of the fingers, in the order of the FingerTable (null for the fingers that could not be
+     *          resolved)
+     * @throws  IOException if the node did not respond
+     */
+    public Finger[] requestFingers(Connection connection, Finger hop) throws IOException {
+        // Start of the fingers (wrapping around the ring)
+        RingId[] fingerStarts = new RingId[FingerLayout.size()];
+        for (int i = 0; i < FingerLayout.size(); i++) {
+            fingerStarts[i] = FingerLayout.start(this.id, i);
+        }
 
-                    // Parse out address and port
-                    String[] serverResponseFragments = serverResponse.split(":", 2);
-                    String[] addressFragments = serverResponseFragments[1].split(":");
+        if (this.lookupStrategy == LookupStrategy.RECURSIVE) {
+            return PendingFingers.request(connection, fingerStarts).get();
+        }
 
-                    // Add response finger to table
-                    this.fingerTable.put(i, new Finger(addressFragments[0], Integer.valueOf(addressFragments[1])));
+        Finger[] fingers = new Finger[FingerLayout.size()];
+        for (int i = 0; i < FingerLayout.size(); i++) {
+            // Send query to chord
+            Chord.cLogPrint("Sent: " + Chord.FIND_FINGER + ":" + fingerStarts[i]);
+            Message serverResponse = this.lookupStrategy.lookup(this, hop, Message.withId(Chord.FIND_FINGER, fingerStarts[i]));
+            Chord.cLogPrint("Received: " + serverResponse);
+            if (serverResponse.is(Chord.FINGER_FOUND)) {
+                fingers[i] = new Finger(serverResponse.getIpAddr(), serverResponse.getPort());
+            }
+        }
+        return fingers;
+    }
+
+    /**
+     * @brief   Fill the counter-clockwise fingers, if the Node keeps any, with the first known node at or after the
+     *          start of each of them, or with the Node itself if there is none before it. They are only hints, verified
+     *          by the FingerFixer
+     * @param   known   Nodes known so far
+     */
+    private void initCounterClockwiseFingers(RoutingIndex known) {
+        if (!this.counterClockwiseFingers) {
+            return;
+        }
+        Finger self = new Finger(this.ipAddr, this.port);
+        Map<Integer, Finger> fingerTable = new HashMap<>();
+        for (int i = 0; i < FingerLayout.size(); i++) {
+            RingId fingerStart = FingerLayout.counterClockwiseStart(this.id, i);
+            Finger finger = known.successor(fingerStart);
+            fingerTable.put(i, RoutingState.isBehind(finger, fingerStart, this.id) ? finger : self);
+        }
+        refreshCounterClockwiseFingerTable(fingerTable);
+    }
 
-                    Chord.cLogPrint("Received: " + serverResponse);
+    /**
+     * @brief   Check that the identifiers of the ring of the existing node have as many bits as ours, before the Node
+     *          shows up in the ring. Nodes older than PROTOCOL_VERSION 6 always have DEFAULT_FINGER_TABLE_SIZE bits;
+     *          on a text connection the node is asked anyway, and the check is skipped if it does not understand
+     * @throws  IllegalStateException if the numbers of bits differ
+     */
+    private void checkIdBits() {
+        int bits;
+        Connection connection;
+        try {
+            connection = this.connectionPool.borrow(this.existingNodeIpAddr, this.existingNodePort, true);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (connection.isReportingIdBits() || !connection.isBinary()) {
+            try {
+                Message serverResponse = connection.request(new Message(Chord.REQUEST_ID_BITS));
+                this.connectionPool.release(connection);
+                if (!serverResponse.is(Chord.ID_BITS)) {
+                    return;
                 }
+                bits = serverResponse.getBits();
+            } catch (IOException e) {
+                this.connectionPool.giveBack(connection, e);
+                Chord.cLogPrint("Could not check the identifier width of " + this.existingNodeIpAddr + ":" + this.existingNodePort);
+                return;
+            }
+        } else {
+            this.connectionPool.release(connection);
+            bits = Chord.DEFAULT_FINGER_TABLE_SIZE;
+        }
+
+        if (bits != Chord.getFingerTableSize()) {
+            throw new IllegalStateException("The ring of " + this.existingNodeIpAddr + ":" + this.existingNodePort +
+                    " has identifiers of " + bits + " bits, this node of " + Chord.getFingerTableSize());
+        }
+    }
+
+    /**
+     * @brief   Join the ChordRing from the routing state of the successor: locate the successor with a single lookup
+     *          through the existing node, fetch its predecessor, successors and FingerTable in one transfer, and derive
+     *          the FingerTable of the Node from them. The fingers derived are only hints, verified by the Stabilizer
+     *          at its next refresh. A successor that keeps neighbour lists sends its whole successor and predecessor
+     *          lists along (pipelined on the same connection), which seed the lists of the Node
+     * @return  True if the Node has joined, False if the successor could not be located or is too old to transfer
+     *          its routing state (the Node then has to look up every finger)
+     */
+    private boolean joinFromSuccessor() {
+        Message stateResponse;
+        Message successorsResponse = null;
+        Message predecessorsResponse = null;
+        Finger successor;
+        try {
+            // Locate the successor, the owner of our own id
+            Message serverResponse = this.lookupStrategy.lookup(this, new Finger(this.existingNodeIpAddr, this.existingNodePort),
+                    Message.withId(Chord.FIND_FINGER, this.id));
+            if (!serverResponse.is(Chord.FINGER_FOUND)) {
+                return false;
+            }
+            successor = new Finger(serverResponse.getIpAddr(), serverResponse.getPort());
 
-                // Close connections
-                socketWriter.close();
-                socketReader.close();
-                socket.close();
+            // Fetch its routing state, and its neighbour lists if it keeps them
+            Connection connection = this.connectionPool.borrow(successor.getIpAddr(), successor.getPort(), true);
+            try {
+                if (!connection.isTransferringRoutingState()) {
+                    this.connectionPool.release(connection);
+                    return false;
+                }
+                PendingResponse state = connection.requestAsync(new Message(Chord.REQUEST_ROUTING_STATE));
+                PendingResponse successors = null;
+                PendingResponse predecessors = null;
+                if (connection.isSendingNeighbourLists()) {
+                    successors = connection.requestAsync(new Message(Chord.REQUEST_SUCCESSORS));
+                    predecessors = connection.requestAsync(new Message(Chord.REQUEST_PREDECESSORS));
+                }
+                stateResponse = state.get();
+                if (successors != null) {
+                    successorsResponse = successors.get();
+                    predecessorsResponse = predecessors.get();
+                }
+                this.connectionPool.release(connection);
             } catch (IOException e) {
-                e.printStackTrace();
+                this.connectionPool.giveBack(connection, e);
+                throw e;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        Finger[] transferred = stateResponse.getFingers();
+        if (!stateResponse.is(Chord.ROUTING_STATE) || transferred.length < 3) {
+            return false;
+        }
+        Chord.cLogPrint("Received the routing state of the successor " + successor.getIpAddr() + ":" + successor.getPort());
+
+        // The successor owns the ids up to its own, each of the following fingers is the first node known by the
+        // successor at or after its start
+        List<Finger> known = new ArrayList<>();
+        known.add(successor);
+        for (Finger finger : transferred) {
+            if (finger != null) {
+                known.add(finger);
             }
         }
+        RoutingIndex candidates = RoutingIndex.of(known);
+        Map<Integer, Finger> fingerTable = new HashMap<>();
+        for (int i = 0; i < FingerLayout.size(); i++) {
+            RingId fingerStart = FingerLayout.start(this.id, i);
+            fingerTable.put(i, fingerStart.isBetween(this.id, successor.getId()) ? successor : candidates.successor(fingerStart));
+        }
+
+        // Our predecessors are the ones of the successor, and the successors of the successor come after it. An older
+        // successor only tells its first predecessor and two successors: the rest of the lists is copied from the
+        // neighbours at the next stabilization
+        List<Finger> successors = new ArrayList<>();
+        successors.add(successor);
+        List<Finger> predecessors = new ArrayList<>();
+        if (successorsResponse != null && successorsResponse.is(Chord.SUCCESSORS)
+                && predecessorsResponse != null && predecessorsResponse.is(Chord.PREDECESSORS)) {
+            successors.addAll(Arrays.asList(successorsResponse.getFingers()));
+            predecessors.addAll(Arrays.asList(predecessorsResponse.getFingers()));
+        } else {
+            successors.add(transferred[1]);
+            successors.add(transferred[2]);
+            predecessors.add(transferred[0]);
+        }
+        successors.removeAll(Collections.singleton(null));
+        predecessors.removeAll(Collections.singleton(null));
+        successors = untilSelf(successors);
+        predecessors = untilSelf(predecessors);
+        if (predecessors.get(0).getId().equals(this.id)) {
+            // The successor was alone on the ring, or did not know its predecessor
+            predecessors = Collections.singletonList(successor);
+        }
+        RoutingState state;
+        do {
+            state = this.routingState.get();
+        } while (!this.routingState.compareAndSet(state, state.withFingerTable(fingerTable).withSuccessors(successors)
+                .withPredecessors(predecessors)));
+        initCounterClockwiseFingers(candidates);
+        notifyFirstSuccessor();
+
+        this.fastJoined = true;
+        return true;
     }
 
     /**
@@ -189,27 +404,27 @@ public class Node
      *          We will correct this anyway on the Stabilization protocol if we get it wrongly.                 //TODO: maybe a NEW_SUCCESSOR in case we are the successor might perform better
      */
     private void initSuccessors() {
-        this.firstSuccessor = this.fingerTable.get(0);
-        this.secondSuccessor = this.fingerTable.get(1);
-        this.firstPredecessor = new Finger(this.ipAddr, this.port);
-        this.secondPredecessor = new Finger(this.ipAddr, this.port);
+        Finger self = new Finger(this.ipAddr, this.port);
+        RoutingState state;
+        do {
+            state = this.routingState.get();
+        } while (!this.routingState.compareAndSet(state, state.withSuccessors(Arrays.asList(state.getFingerTable().get(0),
+                state.getFingerTable().get(1))).withPredecessors(Collections.singletonList(self))));
+        notifyFirstSuccessor();
+    }
+
+    /**
+     * @brief   Notify the first successor that we are its new predecessor
+     */
+    private void notifyFirstSuccessor() {
+        Finger firstSuccessor = getFirstSuccessor();
 
         // If we do not open a connection to ourselves --> Notify the first successor that we are the new predecessor
-        if (!this.ipAddr.equals(this.firstSuccessor.getIpAddr()) || (this.port != this.firstSuccessor.getPort())) {
+        if (!this.ipAddr.equals(firstSuccessor.getIpAddr()) || (this.port != firstSuccessor.getPort())) {
             try {
-                Socket socket = new Socket(this.firstSuccessor.getIpAddr(), this.firstSuccessor.getPort());
-                socket.setSoTimeout(Chord.SOCKET_TIMEOUT*1000);
-
-                // Open writer to successor node
-                PrintWriter socketWriter = new PrintWriter(socket.getOutputStream(), true);
-
                 // Tell successor that this node is its new predecessor
-                socketWriter.println(Chord.NEW_PREDECESSOR + ":" + this.getIpAddr() + ":" + this.getPort());
-                Chord.cLogPrint("Sending: " + Chord.NEW_PREDECESSOR + ":" + this.getIpAddr() + ":" + this.getPort() + " to " + this.firstSuccessor.getIpAddr() + ":" + this.firstSuccessor.getPort());
-
-                // Close connections
-                socketWriter.close();
-                socket.close();
+                this.connectionPool.send(firstSuccessor, Message.withAddress(Chord.NEW_PREDECESSOR, this.getIpAddr(), this.getPort()));
+                Chord.cLogPrint("Sending: " + Chord.NEW_PREDECESSOR + ":" + this.getIpAddr() + ":" + this.getPort() + " to " + firstSuccessor.getIpAddr() + ":" + firstSuccessor.getPort());
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -217,39 +432,45 @@ public class Node
     }
 
     /**
-     * @brief   Print the Status Logs, witch includes the whole FingerTable plus the two successors and the two predecessors
+     * @brief   Print the Status Logs, witch includes the whole FingerTable plus the successor and predecessor lists,
+     *          the measures of the maintenance tasks and of the compression of the items
      */
     public void printStatusLogs(){
+        if (!Chord.isEnableLogs()) {
+            return;
+        }
+        RoutingState state = getRoutingState();
         Chord.cLogPrint("---------------------------------------");
         Chord.cLogPrint("Node "+this.getId()+":");
         Chord.cLogPrint("---------------------------------------");
         // Print Predecessors and Successors
-        Chord.cLogPrint("FirstPredecessor--->" + getFirstPredecessor().getIpAddr() + ":" + getFirstPredecessor().getPort() +
-                " (id_= " + getFirstPredecessor().getId().toString() + ")");
-        Chord.cLogPrint("SecondPredecessor-->" + getSecondPredecessor().getIpAddr() + ":" + getSecondPredecessor().getPort() +
-                " (id_= " + getSecondPredecessor().getId().toString() + ")");
-        Chord.cLogPrint("FirstSuccessor----->" + getFirstSuccessor().getIpAddr() + ":" + getFirstSuccessor().getPort() +
-                " (id_= " + getFirstSuccessor().getId().toString() + ")");
-        Chord.cLogPrint("SecondSuccessor---->" + getSecondSuccessor().getIpAddr() + ":" + getSecondSuccessor().getPort() +
-                " (id_= " + getSecondSuccessor().getId().toString() + ")");
+        for (int i = state.getPredecessors().size() - 1; i >= 0; i--) {
+            Finger predecessor = state.getPredecessors().get(i);
+            Chord.cLogPrint("Predecessor[" + i + "]-->" + predecessor.getIpAddr() + ":" + predecessor.getPort() +
+                    " (id_= " + predecessor.getId().toString() + ")");
+        }
+        for (int i = 0; i < state.getSuccessors().size(); i++) {
+            Finger successor = state.getSuccessors().get(i);
+            Chord.cLogPrint("Successor[" + i + "]---->" + successor.getIpAddr() + ":" + successor.getPort() +
+                    " (id_= " + successor.getId().toString() + ")");
+        }
         Chord.cLogPrint("---------------------------------------");
         // Iterate all the Fingers in the FingerTable and print them
-        BigInteger baseTwo = BigInteger.valueOf(2L);
-        for (int i = 0; i < Chord.FINGER_TABLE_SIZE; i++) {
-            BigInteger fingerNode = baseTwo.pow(i);
-            fingerNode = fingerNode.add(this.id);
-
-            // If overflow occur
-            if (fingerNode.compareTo(BigInteger.valueOf(2L).pow(Chord.FINGER_TABLE_SIZE)) >= 0) {
-                fingerNode = fingerNode.subtract(BigInteger.valueOf(2L).pow(Chord.FINGER_TABLE_SIZE));
-            }
+        for (int i = 0; i < FingerLayout.size(); i++) {
+            // Start of the finger (wrapping around the ring)
+            RingId fingerNode = FingerLayout.start(this.id, i);
 
 
-            Finger finger = fingerTable.get(i);
+            Finger finger = state.getFingerTable().get(i);
             Chord.cLogPrint("Finger " + String.valueOf(i) + "(" + fingerNode + "): " + finger.getIpAddr() + ":" + finger.getPort() + "-->" + finger.getId());
         }
         Chord.cLogPrint("---------------------------------------");
-        for(BigInteger key: itemTable.keySet()){
+        if (this.maintenance != null) {
+            this.maintenance.printStatusLogs();
+        }
+        Chord.cLogPrint("Compression: " + Compression.report());
+        Chord.cLogPrint("---------------------------------------");
+        for(RingId key: itemTable.keySet()){
             Chord.cLogPrint("Item: " + key.toString() + " --> '" + itemTable.get(key) + "'");
         }
         Chord.cLogPrint("---------------------------------------");
@@ -257,98 +478,44 @@ public class Node
 
     /**
      * @brief   Find Item with the specified key in the ChordRing Network
-     * @param   key BigInteger key of the item to find
+     * @param   key RingId key of the item to find
      * @return  String of the response (containing the item in case of success)
      */
-    public String findItem(BigInteger key){
-        BigInteger baseTwo = BigInteger.valueOf(2L);
-        BigInteger ringSize = baseTwo.pow(Chord.FINGER_TABLE_SIZE);
-        BigInteger minimumDistance = ringSize;
-        BigInteger smallestId = ringSize;
+    public String findItem(RingId key){
         String response = Chord.NOT_FOUND;
-        Finger closestSuccessor = null;
-        Finger smallestFinger = null;
-        boolean itemIsGreaterThanAllFingers = true;
-        boolean nodeIsGreaterThanAllFingers = true;
-
-        // Look for a node identifier in the finger table that is less than the key we are looking for
-        // but is also the closest
-        for (Finger finger : getFingerTable().values()) {
-            BigInteger distance;
-
-            // Find clockwise distance from finger to key
-            if (key.compareTo(finger.getId()) <= 0) {
-                distance = finger.getId().subtract(key);
-            } else {
-                distance = ringSize;
-            }
 
-            // If the distance we have found is smaller than the current minimum, replace the current minimum
-            if (distance.compareTo(minimumDistance) == -1) {
-                minimumDistance = distance;
-                closestSuccessor = finger;
-            }
-
-            // Find at least one finger's id that is greater than the item key
-            if(key.compareTo(finger.getId()) < 0){
-                itemIsGreaterThanAllFingers = false;
-            }
-
-            // Find at least one finger's id that is greater than the node key
-            if(this.getId().compareTo(finger.getId()) < 0){
-                nodeIsGreaterThanAllFingers = false;
-            }
-
-            // If this finger has an id smaller than the smallest we have already register, then set this as the
-            // smallest id and save the finger as the smallest
-            if(finger.getId().compareTo(smallestId) < 0){
-                smallestId = finger.getId();
-                smallestFinger = finger;
-            }
+        // If the owner of the key is already known, ask it directly
+        Message cachedResponse = requestCachedOwner(key, Message.withId(Chord.FIND_ITEM, key));
+        if (cachedResponse != null) {
+            return cachedResponse.toString();
         }
 
-        // If closest successor is null it means that there is no finger that has an ID greater than the key
-        // we are looking for, we should forward the request anyway to the finger with the larger id
+        RoutingIndex index = getRoutingIndex();
+
+        // Look for the finger with the smallest id that is not less than the key we are looking for. If there is
+        // none, we should forward the request anyway to the finger with the larger id
+        Finger closestSuccessor = index.ceiling(key);
         if(closestSuccessor == null){
-            BigInteger maxFingerId = new BigInteger("0");
-            for (Finger finger : this.getFingerTable().values()) {
-                if (maxFingerId.compareTo(finger.getId()) < 0){
-                    maxFingerId = finger.getId();
-                    closestSuccessor = finger;
-                }
-            }
+            closestSuccessor = index.last();
         }
 
-        // If the ItemKey is greater than the Node's Id, but the node is already the greatest among fingers, then
-        // it should go to the smallest finger
+        // If the ItemKey is greater than the Node's Id, but the node is already the greatest among fingers (no finger's
+        // id is greater than the item key nor the node key), then it should go to the smallest finger
+        boolean itemIsGreaterThanAllFingers = index.higher(key) == null;
+        boolean nodeIsGreaterThanAllFingers = index.higher(this.getId()) == null;
         if(nodeIsGreaterThanAllFingers && itemIsGreaterThanAllFingers && key.compareTo(this.getId()) > 0){
-            if(smallestFinger != null)
-                closestSuccessor = smallestFinger;
+            if(index.first() != null)
+                closestSuccessor = index.first();
         }
 
         try {
-            // Open socket to chord node
-            Socket socket = new Socket(closestSuccessor.getIpAddr(), closestSuccessor.getPort());
-            socket.setSoTimeout(Chord.SOCKET_TIMEOUT*1000);
-
-            // Open reader/writer to chord node
-            PrintWriter socketWriter = new PrintWriter(socket.getOutputStream(), true);
-            BufferedReader socketReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-
-            // Send query to chord
-            socketWriter.println(Chord.FIND_ITEM + ":" + key.toString());
+            // Send query to chord and read its response
+            Message serverResponse = this.lookupStrategy.lookup(this, closestSuccessor, Message.withId(Chord.FIND_ITEM, key));
+            learnRange(null, serverResponse);
             Chord.cLogPrint("Sent: " + Chord.FIND_ITEM + ":" + key.toString());
-
-            // Read response from chord
-            String serverResponse = socketReader.readLine();
             Chord.cLogPrint("Response from node " + closestSuccessor.getIpAddr() + ", port " + closestSuccessor.getPort() + ", position " + " (" + closestSuccessor.getId() + "):");
             Chord.cLogPrint("\n"+serverResponse.toString()+"\n");
-            response = serverResponse;
-
-            // Close connections
-            socketWriter.close();
-            socketReader.close();
-            socket.close();
+            response = serverResponse.toString();
         } catch (IOException e) {
             e.printStackTrace();
         } catch (Exception e) {
@@ -364,76 +531,40 @@ public class Node
      * @return  String of the response (containing the node that is storing the item)
      */
     public String placeItem(String item){
-        BigInteger itemKey = getKeyOfItem(item);
+        RingId itemKey = getKeyOfItem(item);
         return placeItem(itemKey, item);
     }
 
     /**
      * @brief   Place an Item with with the specified key in the ChordRing Network
-     * @param   itemKey BigInteger key of the item to place
+     * @param   itemKey RingId key of the item to place
      * @param   item    Item to place on the ChordRing
      * @return  String of the response (containing the node that is storing the item)
      */
-    public String placeItem(BigInteger itemKey, String item){
-        BigInteger baseTwo = BigInteger.valueOf(2L);
-        BigInteger ringSize = baseTwo.pow(Chord.FINGER_TABLE_SIZE);
-        BigInteger minimumDistance = ringSize;
+    public String placeItem(RingId itemKey, String item){
         String response = Chord.NOT_FOUND;
-        Finger closestSuccessor = null;
-
-        // Look for a node identifier in the finger table that is less than the key we are looking for
-        // but is also the closest
-        for (Finger finger : getFingerTable().values()) {
-            BigInteger distance;
-
-            // Find clockwise distance from finger to key
-            if (itemKey.compareTo(finger.getId()) <= 0) {
-                distance = finger.getId().subtract(itemKey);
-            } else {
-                distance = ringSize;
-            }
 
-            // If the distance we have found is smaller than the current minimum, replace the current minimum
-            if (distance.compareTo(minimumDistance) == -1) {
-                minimumDistance = distance;
-                closestSuccessor = finger;
-            }
+        // If the owner of the key is already known, send the item directly
+        Message cachedResponse = requestCachedOwner(itemKey, Message.placeItem(itemKey, item));
+        if (cachedResponse != null) {
+            return cachedResponse.toString();
         }
 
-        // If closest successor is null it means that there is no finger that has an ID greater than the key
-        // we are looking for, we should forward the request anyway to the finger with the larger id
+        // Look for the finger with the smallest id that is not less than the key we are looking for. If there is
+        // none, we should forward the request anyway to the finger with the larger id
+        RoutingIndex index = getRoutingIndex();
+        Finger closestSuccessor = index.ceiling(itemKey);
         if(closestSuccessor == null){
-            BigInteger maxFingerId = new BigInteger("0");
-            for (Finger finger : getFingerTable().values()) {
-                if (maxFingerId.compareTo(finger.getId()) < 0){
-                    maxFingerId = finger.getId();
-                    closestSuccessor = finger;
-                }
-            }
+            closestSuccessor = index.last();
         }
 
         try {
-            // Open socket to chord node
-            Socket socket = new Socket(closestSuccessor.getIpAddr(), closestSuccessor.getPort());
-            socket.setSoTimeout(Chord.SOCKET_TIMEOUT*1000);
-
-            // Open reader/writer to chord node
-            PrintWriter socketWriter = new PrintWriter(socket.getOutputStream(), true);
-            BufferedReader socketReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-
-            // Send query to chord
-            socketWriter.println(Chord.PLACE_ITEM + ":" + itemKey.toString() + ":" +  item);
+            // Send query to chord and read its response
+            Message serverResponse = this.connectionPool.request(closestSuccessor, Message.placeItem(itemKey, item));
+            learnRange(null, serverResponse);
             Chord.cLogPrint("Sent: " + Chord.PLACE_ITEM + ":" + itemKey.toString() + ":" +  item);
-
-            // Read response from chord
-            String serverResponse = socketReader.readLine();
             Chord.cLogPrint("Response from node " + closestSuccessor.getIpAddr() + ", port " + closestSuccessor.getPort() + ", position " + " (" + closestSuccessor.getId() + "):");
-            response = serverResponse;
-
-            // Close connections
-            socketWriter.close();
-            socketReader.close();
-            socket.close();
+            response = serverResponse.toString();
         } catch (IOException e) {
             e.printStackTrace();
         } catch (Exception e) {
@@ -443,43 +574,73 @@ public class Node
         return response;
     }
 
+    /**
+     * @brief   Send a FIND_ITEM or PLACE_ITEM query straight to the owner of the key, if its range has been learned
+     * @param   key     Key of the item
+     * @param   query   Query to send
+     * @return  The response, null if the owner of the key is not known or could not be contacted (its range is then
+     *          forgotten)
+     */
+    private Message requestCachedOwner(RingId key, Message query) {
+        Finger owner = this.ownerCache.get(key);
+        if (owner == null) {
+            return null;
+        }
+        try {
+            Message response = this.connectionPool.request(owner, query);
+            Chord.cLogPrint("Sent: " + query + " to the owner " + owner.getIpAddr() + ":" + owner.getPort());
+            learnRange(owner, response);
+            return response;
+        } catch (IOException e) {
+            Chord.cLogPrint("Owner " + owner.getIpAddr() + ":" + owner.getPort() + " unreachable, routing through the fingers");
+            this.ownerCache.invalidate(owner);
+            return null;
+        }
+    }
+
+    /**
+     * @brief   Learn the range of ids owned by the node that answered a lookup, if it told it
+     * @param   contacted   The owner the query was sent to according to the cache, null if it was routed through the
+     *                      fingers
+     * @param   response    ITEM_FOUND or ITEM_PLACED response
+     */
+    private void learnRange(Finger contacted, Message response) {
+        if (response.getRangeStart() == null) {
+            return;
+        }
+        Finger owner = contacted;
+        if (owner == null || !owner.getIpAddr().equals(response.getIpAddr()) || owner.getPort() != response.getPort()) {
+            // The range of the cached owner has changed: another node answered for the key
+            if (contacted != null) {
+                this.ownerCache.invalidate(contacted);
+            }
+            owner = new Finger(response.getIpAddr(), response.getPort());
+        }
+        this.ownerCache.put(response.getRangeStart(), owner);
+    }
+
     /**
      * @brief   Place the Item on the the finger passed as argument
      * @param   finger  finger where to place the item
      * @param   itemKey item's key to place
      * @return  true if the item has been correctly placed, false otherwise
      */
-    public boolean placeItem(Finger finger, BigInteger itemKey){
+    public boolean placeItem(Finger finger, RingId itemKey){
+        // The item may have been moved elsewhere in the meantime
+        String item = getItemTable().get(itemKey);
+        if (item == null) {
+            return false;
+        }
         try {
-            // Open socket to chord node
-            Socket socket = new Socket(finger.getIpAddr(), finger.getPort());
-            socket.setSoTimeout(Chord.SOCKET_TIMEOUT*1000);
-
-            // Open reader/writer to chord node
-            PrintWriter socketWriter = new PrintWriter(socket.getOutputStream(), true);
-            BufferedReader socketReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-
-            // Send query to chord
-            socketWriter.println(Chord.PLACE_ITEM + ":" + itemKey.toString() + ":" +  getItemTable().get(itemKey));
-            Chord.cLogPrint("Sent: " + Chord.PLACE_ITEM + ":" + itemKey.toString() + ":" +  getItemTable().get(itemKey));
-
-            // Read response from chord
-            String serverResponse = socketReader.readLine();
+            // Send query to chord and read its response
+            Message serverResponse = this.connectionPool.request(finger, Message.placeItem(itemKey, item));
+            Chord.cLogPrint("Sent: " + Chord.PLACE_ITEM + ":" + itemKey.toString() + ":" +  item);
             Chord.cLogPrint("Response from node " + finger.getIpAddr() + ", port " + finger.getPort() + ", position " + " (" + finger.getId() + "):");
 
             //Correct Response --> remove the item from this node
-            if(serverResponse != null){
-                if(serverResponse.contains(Chord.ITEM_PLACED)){
-                    return true;
-                }
+            if(serverResponse.is(Chord.ITEM_PLACED)){
+                return true;
             }
-            else
-                return false;
-
-            // Close connections
-            socketWriter.close();
-            socketReader.close();
-            socket.close();
         } catch (IOException e) {
             e.printStackTrace();
         } catch (Exception e) {
@@ -492,12 +653,8 @@ public class Node
      * @brief   Create the Identifier(key) by taking the SHA-1 hash function of the item passed as argument
      * @param   item     String of the Item
      */
-    public BigInteger getKeyOfItem(String item){
-        String hex = DigestUtils.sha1Hex(item);
-        BigInteger baseTwo = BigInteger.valueOf(2L);
-        BigInteger key = new BigInteger(hex, 16);
-        key = key.mod(baseTwo.pow(Chord.FINGER_TABLE_SIZE));
-        return key;
+    public RingId getKeyOfItem(String item){
+        return RingId.hash(item);
     }
 
     /**
@@ -506,47 +663,18 @@ public class Node
      */
     public void emptyItemTable() {
         // Iterate all keys in the temp item table, and for each of them send it to another appropriate node
-        Map<BigInteger, String> itemTable = new HashMap<>();
+        Map<RingId, String> itemTable = new HashMap<>();
         itemTable.putAll(this.getItemTable());                 //Iterate Throughout a copy of the ItemTable for concurrency reasons
-        for (BigInteger key : itemTable.keySet()) {
-            BigInteger baseTwo = BigInteger.valueOf(2L);
-            BigInteger ringSize = baseTwo.pow(Chord.FINGER_TABLE_SIZE);
-            BigInteger minimumDistance = ringSize;
-            Finger closestSuccessor = null;
-
-            this.acquire();
-
+        for (RingId key : itemTable.keySet()) {
             /**
              * Look for a node identifier in the finger table that is greater(or equal) than the key we are looking for
-             * but is also the closer than the current node
+             * but is also the closer than the current node. If there is none, we should forward the request anyway to
+             * the finger with the larger id
              */
-            for (Finger finger : this.getFingerTable().values()) {
-                BigInteger distance;
-
-                // Find clockwise distance from finger to query
-                if (key.compareTo(finger.getId()) <= 0) {
-                    distance = finger.getId().subtract(key);
-                } else {
-                    distance = ringSize;
-                }
-
-                // If the distance we have found is smaller than the current minimum, replace the current minimum
-                if (distance.compareTo(minimumDistance) == -1) {
-                    minimumDistance = distance;
-                    closestSuccessor = finger;
-                }
-            }
-
-            // If closest successor is null it means that there is no finger that has an ID greater than the key
-            // we are looking for, we should forward the request anyway to the finger with the larger id
+            RoutingIndex index = getRoutingIndex();
+            Finger closestSuccessor = index.ceiling(key);
             if(closestSuccessor == null){
-                BigInteger maxFingerId = new BigInteger("0");
-                for (Finger finger : this.getFingerTable().values()) {
-                    if (maxFingerId.compareTo(finger.getId()) < 0){
-                        maxFingerId = finger.getId();
-                        closestSuccessor = finger;
-                    }
-                }
+                closestSuccessor = index.last();
             }
 
             //Send the item and delete it locally
@@ -558,7 +686,6 @@ public class Node
                 }
             }
 
-            this.release();
         }
     }
 
@@ -567,87 +694,205 @@ public class Node
      * @return  None
      */
     public void notifyNodeDestruction(){
-        BigInteger baseTwo = BigInteger.valueOf(2L);
-        BigInteger ringSize = baseTwo.pow(Chord.FINGER_TABLE_SIZE);
-        BigInteger minimumDistance = ringSize;
-        List<BigInteger> notifiedFingers = new ArrayList<>();
-
-        this.acquire();
-
-        // Iterate the FingerTable an notify all the nodes (but just ones)
-        for (Finger finger : getFingerTable().values()) {
-            //Control if the node has already been notified
-            if(notifiedFingers.contains(finger.getId()) == false){
-                try {
-                    // Open socket to chord node
-                    Socket socket = new Socket(finger.getIpAddr(), finger.getPort());
-                    socket.setSoTimeout(Chord.SOCKET_TIMEOUT*1000);
-
-                    // Open reader/writer to chord node
-                    PrintWriter socketWriter = new PrintWriter(socket.getOutputStream(), true);
-                    BufferedReader socketReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-
-                    // Send query to chord
-                    socketWriter.println(Chord.FORGET_FINGER + ":" + this.getId());
-                    Chord.cLogPrint("Sent: " + Chord.FORGET_FINGER + ":" + this.getId());
-
-                    // Read response from chord
-                    String serverResponse = socketReader.readLine();
-                    Chord.cLogPrint("Response from node " + finger.getIpAddr() + ", port " + finger.getPort() + ", position " + " (" + finger.getId() + "):");
-                    Chord.cLogPrint(serverResponse);
-
-                    // Close connections
-                    socketWriter.close();
-                    socketReader.close();
-                    socket.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
+        // Notify all the nodes of the FingerTable (but just ones)
+        RoutingIndex index = getRoutingIndex();
+        for (int i = 0; i < index.size(); i++) {
+            Finger finger = index.get(i);
+            try {
+                // Send query to chord and read its response
+                Message serverResponse = this.connectionPool.request(finger, Message.withId(Chord.FORGET_FINGER, this.getId()));
+                Chord.cLogPrint("Sent: " + Chord.FORGET_FINGER + ":" + this.getId());
+                Chord.cLogPrint("Response from node " + finger.getIpAddr() + ", port " + finger.getPort() + ", position " + " (" + finger.getId() + "):");
+                Chord.cLogPrint(serverResponse.toString());
+            } catch (IOException e) {
+                e.printStackTrace();
+            } catch (Exception e) {
+                e.printStackTrace();
             }
         }
-        this.release();
     }
 
+    /**
+     * @return  The UDP heartbeats of the node, null if the neighbours are checked with TCP PINGs only
+     */
+    public Heartbeat getHeartbeat() {
+        return heartbeat;
+    }
+
+    /**
+     * @return  How the lookups started by the node travel around the ring
+     */
+    public LookupStrategy getLookupStrategy() {
+        return lookupStrategy;
+    }
+
+    /**
+     * @return  The direct-reply lookups of the node waiting for their answer
+     */
+    DirectReplies getDirectReplies() {
+        return directReplies;
+    }
+
+    /**
+     * @return  The ranges of ids whose owner the node has learned from its lookups
+     */
+    public OwnerCache getOwnerCache() {
+        return ownerCache;
+    }
+
+    /**
+     * @return  The scheduler of the maintenance tasks of the node
+     */
+    public MaintenanceScheduler getMaintenance() {
+        return maintenance;
+    }
+
+    /**
+     * @return  The maintenance of the node, receiving the events that change its neighbours. Null until the node has
+     *          joined the ring
+     */
+    public Stabilizer getStabilizer() {
+        return stabilizer;
+    }
+
+    /**
+     * @return  The task keeping the FingerTable up to date, run by the MaintenanceScheduler
+     */
+    public FingerFixer getFingerFixer() {
+        return fingerFixer;
+    }
+
+    /**
+     * @return  True if the Node has joined the ChordRing from the routing state of its successor, so that its routing
+     *          is usable without waiting for the first stabilization
+     */
+    public boolean isFastJoined() {
+        return fastJoined;
+    }
+
+    public ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    /**
+     * @return  The current snapshot of the FingerTable, successors and predecessors. Read it once to take several
+     *          routing decisions on the same state
+     */
+    public RoutingState getRoutingState() {
+        return routingState.get();
+    }
+
+    /**
+     * @return  The FingerTable (read-only, see setFingerTable())
+     */
     public Map<Integer, Finger> getFingerTable() {
-        return fingerTable;
+        return routingState.get().getFingerTable();
     }
 
-    public void setIpAddr(String ipAddr) {
-        this.ipAddr = ipAddr;
+    /**
+     * @brief   Send a PING to a node, and refine the network coordinates of the Node with the round-trip time measured
+     *          if the node tells its own
+     * @param   finger  Node to ping
+     * @return  The response of the node
+     * @throws  IOException if the node did not respond
+     */
+    public Message ping(Finger finger) throws IOException {
+        Connection connection = this.connectionPool.borrow(finger.getIpAddr(), finger.getPort(), true);
+        Message serverResponse;
+        long sent = System.nanoTime();
+        try {
+            serverResponse = connection.request(Message.withId(Chord.PING, this.id));
+        } catch (IOException e) {
+            this.connectionPool.giveBack(connection, e);
+            throw e;
+        }
+        long rtt = System.nanoTime() - sent;
+        this.connectionPool.release(connection);
+
+        if (serverResponse.getCoordinates() != null) {
+            this.proximity.observe(finger, serverResponse.getCoordinates(), rtt);
+        }
+        return serverResponse;
     }
 
-    public Finger getFirstSuccessor() {
-        return firstSuccessor;
+    /**
+     * @return  The network coordinates of the Node and of the peers it has measured
+     */
+    public Proximity getProximity() {
+        return proximity;
     }
 
-    public void setFirstSuccessor(Finger firstSuccessor) {
-        this.firstSuccessor = firstSuccessor;
+    /**
+     * @return  True if the Node picks its fingers by proximity (see Chord.setProximityFingers())
+     */
+    public boolean hasProximityFingers() {
+        return proximityFingers;
     }
 
-    public Finger getFirstPredecessor() {
-        return firstPredecessor;
+    /**
+     * @return  True if the Node keeps counter-clockwise fingers as well
+     */
+    public boolean hasCounterClockwiseFingers() {
+        return counterClockwiseFingers;
     }
 
-    public void setFirstPredecessor(Finger firstPredecessor) {
-        this.firstPredecessor = firstPredecessor;
+    /**
+     * @return  The counter-clockwise fingers (read-only), empty if the Node does not keep any
+     */
+    public Map<Integer, Finger> getCounterClockwiseFingerTable() {
+        return routingState.get().getCounterClockwiseFingerTable();
+    }
+
+    /**
+     * @brief   Replace the counter-clockwise fingers with a copy of the ones given, built aside by the caller
+     */
+    public void refreshCounterClockwiseFingerTable(Map<Integer, Finger> fingerTable) {
+        RoutingState state;
+        do {
+            state = this.routingState.get();
+        } while (!this.routingState.compareAndSet(state, state.withCounterClockwiseFingerTable(fingerTable)));
+    }
+
+    /**
+     * @brief   Choose the node a lookup of the key is forwarded to (see RoutingState.nextHop())
+     * @param   key     Identifier looked up
+     * @return  The next hop
+     */
+    public Finger nextHop(RingId key) {
+        return getRoutingState().nextHop(this.id, key);
+    }
+
+    /**
+     * @return  The FingerTable sorted by the ids of the nodes, to route the queries
+     */
+    public RoutingIndex getRoutingIndex() {
+        return routingState.get().getRoutingIndex();
     }
 
-    public Finger getSecondSuccessor() {
-        return secondSuccessor;
+    public void setIpAddr(String ipAddr) {
+        this.ipAddr = ipAddr;
     }
 
-    public void setSecondSuccessor(Finger secondSuccessor) {
-        this.secondSuccessor = secondSuccessor;
+    public Finger getFirstSuccessor() {
+        return routingState.get().getFirstSuccessor();
     }
 
-    public Finger getSecondPredecessor() {
-        return secondPredecessor;
+    public void setFirstSuccessor(Finger firstSuccessor) {
+        RoutingState state;
+        do {
+            state = this.routingState.get();
+        } while (!this.routingState.compareAndSet(state, state.withFirstSuccessor(firstSuccessor)));
     }
 
-    public void setSecondPredecessor(Finger secondPredecessor) {
-        this.secondPredecessor = secondPredecessor;
+    public Finger getFirstPredecessor() {
+        return routingState.get().getFirstPredecessor();
+    }
+
+    public void setFirstPredecessor(Finger firstPredecessor) {
+        RoutingState state;
+        do {
+            state = this.routingState.get();
+        } while (!this.routingState.compareAndSet(state, state.withFirstPredecessor(firstPredecessor)));
     }
 
     public String getIpAddr() {
@@ -658,7 +903,7 @@ public class Node
         return port;
     }
 
-    public BigInteger getId() {
+    public RingId getId() {
         return id;
     }
 
@@ -682,32 +927,136 @@ public class Node
         this.port = port;
     }
 
-    public void setId(BigInteger id) {
+    public void setId(RingId id) {
         this.id = id;
     }
 
+    /**
+     * @brief   Replace the FingerTable with a copy of the one given, built aside by the caller
+     */
     public void setFingerTable(Map<Integer, Finger> fingerTable) {
-        this.fingerTable = fingerTable;
+        RoutingState state;
+        do {
+            state = this.routingState.get();
+        } while (!this.routingState.compareAndSet(state, state.withFingerTable(fingerTable)));
     }
 
-    public Map<BigInteger, String> getItemTable() {
-        return itemTable;
+    /**
+     * @brief   Replace the FingerTable with a copy of the one given, built aside by the caller, and take its first
+     *          finger as the first successor (see RoutingState.withRefreshedFingerTable())
+     */
+    public void refreshFingerTable(Map<Integer, Finger> fingerTable) {
+        RoutingState state;
+        do {
+            state = this.routingState.get();
+        } while (!this.routingState.compareAndSet(state, state.withRefreshedFingerTable(fingerTable)));
     }
 
-    public void setItemTable(Map<BigInteger, String> itemTable) {
-        this.itemTable = itemTable;
+    /**
+     * @brief   Adopt a node as the new first successor (and first finger), the others moving one place down
+     */
+    public void adoptSuccessor(Finger successor) {
+        RoutingState state;
+        do {
+            state = this.routingState.get();
+        } while (!this.routingState.compareAndSet(state, state.withNewSuccessor(successor)));
     }
 
-    public void acquire() {
-        try {
-            this.semaphore.acquire();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+    /**
+     * @brief   Replace the successor list, the closest first
+     */
+    public void setSuccessors(List<Finger> successors) {
+        RoutingState state;
+        do {
+            state = this.routingState.get();
+        } while (!this.routingState.compareAndSet(state, state.withSuccessors(successors)));
+    }
+
+    /**
+     * @brief   Take the successor list of the successor as ours: the successor followed by its own successors, up to
+     *          the Node itself. Nothing changes if the successor has been replaced in the meantime
+     * @param   successor   The successor that has told its list
+     * @param   successors  Its successor list
+     */
+    public void adoptSuccessorList(Finger successor, Finger[] successors) {
+        List<Finger> list = new ArrayList<>(successors.length + 1);
+        list.add(successor);
+        list.addAll(Arrays.asList(successors));
+        list = untilSelf(list);
+        RoutingState state;
+        do {
+            state = this.routingState.get();
+            if (!state.getFirstSuccessor().getId().equals(successor.getId())) {
+                return;
+            }
+        } while (!this.routingState.compareAndSet(state, state.withSuccessors(list)));
+    }
+
+    /**
+     * @brief   Take the predecessor list of the predecessor as ours (see adoptSuccessorList())
+     * @param   predecessor     The predecessor that has told its list
+     * @param   predecessors    Its predecessor list
+     */
+    public void adoptPredecessorList(Finger predecessor, Finger[] predecessors) {
+        List<Finger> list = new ArrayList<>(predecessors.length + 1);
+        list.add(predecessor);
+        list.addAll(Arrays.asList(predecessors));
+        list = untilSelf(list);
+        RoutingState state;
+        do {
+            state = this.routingState.get();
+            if (!state.getFirstPredecessor().getId().equals(predecessor.getId())) {
+                return;
+            }
+        } while (!this.routingState.compareAndSet(state, state.withPredecessors(list)));
+    }
+
+    /**
+     * @return  The nodes of a neighbour list up to the Node itself: in a ring smaller than the list, the nodes after it
+     *          are the ones of the list again
+     */
+    private List<Finger> untilSelf(List<Finger> nodes) {
+        List<Finger> list = new ArrayList<>(nodes.size());
+        for (Finger node : nodes) {
+            if (node != null && node.getId().equals(this.id)) {
+                break;
+            }
+            list.add(node);
+        }
+        if (list.isEmpty()) {
+            list.add(new Finger(this.ipAddr, this.port));
         }
+        return list;
+    }
+
+    /**
+     * @brief   Adopt a node as the new first predecessor, the others moving one place down
+     */
+    public void adoptPredecessor(Finger predecessor) {
+        RoutingState state;
+        do {
+            state = this.routingState.get();
+        } while (!this.routingState.compareAndSet(state, state.withNewPredecessor(predecessor)));
     }
 
-    public void release() {
-        this.semaphore.release();
+    /**
+     * @brief   Forget a node that is leaving the ring, in the FingerTable, successors and predecessors
+     * @param   id  Identifier of the node
+     */
+    public void forgetNode(RingId id) {
+        Finger self = new Finger(this.ipAddr, this.port);
+        RoutingState state;
+        do {
+            state = this.routingState.get();
+        } while (!this.routingState.compareAndSet(state, state.withoutNode(id, self)));
+    }
+
+    public Map<RingId, String> getItemTable() {
+        return itemTable;
+    }
+
+    public void setItemTable(Map<RingId, String> itemTable) {
+        this.itemTable = itemTable;
     }
 
 }
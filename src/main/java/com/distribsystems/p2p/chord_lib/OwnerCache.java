@@ -0,0 +1,104 @@
+package com.distribsystems.p2p.chord_lib;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * OwnerCache: the ranges of ids (predecessor id, owner id] learned from the owners answering the lookups of the Node,
+ * so that the next lookup of a key in a known range goes straight to its owner instead of starting from the
+ * FingerTable. The cache only gives hints: an owner that is no longer responsible for a key forwards the query as
+ * usual, and reports its new range with the response.
+ * At most OWNER_CACHE_SIZE ranges are kept, the least recently used being evicted first
+ */
+public class OwnerCache {
+    private final int                       capacity;
+    // Ranges by the id of their owner, that is the end of the range
+    private final TreeMap<RingId, Range>    ranges = new TreeMap<>();
+    // Same ranges, in the order of their last use
+    private final LinkedHashMap<RingId, Range> recent = new LinkedHashMap<>(16, 0.75f, true);
+
+    private static class Range {
+        final RingId    start;
+        final Finger    owner;
+
+        Range(RingId start, Finger owner) {
+            this.start = start;
+            this.owner = owner;
+        }
+    }
+
+    public OwnerCache() {
+        this(Chord.OWNER_CACHE_SIZE);
+    }
+
+    public OwnerCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return  The node owning the key according to the ranges learned, null if the key is not in any of them
+     */
+    public synchronized Finger get(RingId key) {
+        if (this.ranges.isEmpty()) {
+            return null;
+        }
+        // The only range that can contain the key is the first one ending at or after it (wrapping around the ring)
+        Map.Entry<RingId, Range> entry = this.ranges.ceilingEntry(key);
+        if (entry == null) {
+            entry = this.ranges.firstEntry();
+        }
+        Range range = entry.getValue();
+        if (!key.isBetween(range.start, range.owner.getId())) {
+            return null;
+        }
+        this.recent.get(entry.getKey());
+        return range.owner;
+    }
+
+    /**
+     * @brief   Learn the range of a node, replacing the ranges it overlaps
+     * @param   start   Id of the predecessor of the node (excluded from the range)
+     * @param   owner   The node, whose id is the end of the range
+     */
+    public synchronized void put(RingId start, Finger owner) {
+        RingId end = owner.getId();
+
+        // Forget the ranges ending inside the new one, they are out of date
+        if (start.compareTo(end) < 0) {
+            forget(this.ranges.subMap(start, false, end, true));
+        } else {
+            // Wrapping around zero (or the whole ring)
+            forget(this.ranges.tailMap(start, false));
+            forget(this.ranges.headMap(end, true));
+        }
+
+        Range range = new Range(start, owner);
+        this.ranges.put(end, range);
+        this.recent.put(end, range);
+        if (this.recent.size() > this.capacity) {
+            RingId eldest = this.recent.keySet().iterator().next();
+            this.recent.remove(eldest);
+            this.ranges.remove(eldest);
+        }
+    }
+
+    private void forget(Map<RingId, Range> outdated) {
+        for (RingId end : outdated.keySet()) {
+            this.recent.remove(end);
+        }
+        outdated.clear();
+    }
+
+    /**
+     * @brief   Forget the range of a node, for example because it could not be contacted
+     */
+    public synchronized void invalidate(Finger owner) {
+        this.ranges.remove(owner.getId());
+        this.recent.remove(owner.getId());
+    }
+
+    public synchronized int size() {
+        return this.ranges.size();
+    }
+}
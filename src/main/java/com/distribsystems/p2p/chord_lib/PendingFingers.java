@@ -0,0 +1,59 @@
+package com.distribsystems.p2p.chord_lib;
+
+import java.io.IOException;
+
+/**
+ * PendingFingers: the owners of a batch of ids asked to a node, that have not necessarily arrived yet. A node that
+ * agreed on PROTOCOL_VERSION 4 or later receives all the ids in a single FIND_FINGERS query, an older one receives a
+ * FIND_FINGER query per id, all sent before reading the first response
+ */
+public class PendingFingers {
+    private final int                   count;
+    private final PendingResponse[]     responses;
+
+    private PendingFingers(int count, PendingResponse[] responses) {
+        this.count = count;
+        this.responses = responses;
+    }
+
+    /**
+     * @brief   Send the queries for the owners of the ids, without waiting for the responses
+     * @param   connection  Connection to the node to ask
+     * @param   ids         Ids whose owners are looked up
+     * @return  The owners, to be waited for with get()
+     * @throws  IOException if the queries could not be sent
+     */
+    public static PendingFingers request(Connection connection, RingId[] ids) throws IOException {
+        if (connection.isBatching()) {
+            Chord.cLogPrint("Sent: " + Chord.FIND_FINGERS + " for " + ids.length + " ids");
+            return new PendingFingers(ids.length, new PendingResponse[] { connection.requestAsync(Message.findFingers(ids)) });
+        }
+
+        PendingResponse[] responses = new PendingResponse[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            Chord.cLogPrint("Sent: " + Chord.FIND_FINGER + ":" + ids[i]);
+            responses[i] = connection.requestAsync(Message.withId(Chord.FIND_FINGER, ids[i]));
+        }
+        return new PendingFingers(ids.length, responses);
+    }
+
+    /**
+     * @brief   Wait for the owners, at most SOCKET_TIMEOUT seconds per response
+     * @return  The owners, in the order of the ids (null for the ids whose owner could not be found)
+     * @throws  IOException if the connection failed or a response did not arrive in time
+     */
+    public Finger[] get() throws IOException {
+        Finger[] fingers = new Finger[this.count];
+        for (int i = 0; i < this.responses.length; i++) {
+            Message response = this.responses[i].get();
+            Chord.cLogPrint("Received: " + response);
+
+            if (response.is(Chord.FINGERS_FOUND)) {
+                System.arraycopy(response.getFingers(), 0, fingers, 0, Math.min(response.getFingers().length, this.count));
+            } else if (response.is(Chord.FINGER_FOUND)) {
+                fingers[i] = new Finger(response.getIpAddr(), response.getPort());
+            }
+        }
+        return fingers;
+    }
+}
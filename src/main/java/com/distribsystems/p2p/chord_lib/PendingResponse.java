@@ -0,0 +1,73 @@
+package com.distribsystems.p2p.chord_lib;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PendingResponse: response to a query sent on a Connection that has not necessarily arrived yet. It allows to send
+ * several queries before waiting for any of their responses. Direct replies, that arrive on another connection, are
+ * waited for in the same way (without a Connection)
+ */
+public class PendingResponse {
+    private final Connection        connection;
+    private final int               requestId;
+    private final CountDownLatch    done = new CountDownLatch(1);
+    private volatile Message        response;
+    private volatile IOException    failure;
+
+    PendingResponse(Connection connection, int requestId) {
+        this.connection = connection;
+        this.requestId = requestId;
+    }
+
+    /**
+     * @brief   Create a response that is already available
+     */
+    static PendingResponse completed(Message response) {
+        PendingResponse pending = new PendingResponse(null, response.getRequestId());
+        pending.complete(response);
+        return pending;
+    }
+
+    void complete(Message response) {
+        this.response = response;
+        done.countDown();
+    }
+
+    void fail(IOException failure) {
+        this.failure = failure;
+        done.countDown();
+    }
+
+    /**
+     * @brief   Wait for the response, at most SOCKET_TIMEOUT seconds
+     * @return  The message received as response
+     * @throws  IOException if the connection failed or the response did not arrive in time
+     */
+    public Message get() throws IOException {
+        try {
+            if (!done.await(Chord.SOCKET_TIMEOUT, TimeUnit.SECONDS)) {
+                if (connection == null) {
+                    throw new SocketTimeoutException("No reply to lookup " + requestId);
+                }
+                connection.cancel(requestId);
+                throw new SocketTimeoutException("No response to request " + requestId + " from " + connection.getKey());
+            }
+        } catch (InterruptedException e) {
+            if (connection != null) {
+                connection.cancel(requestId);
+            }
+            throw new IOException("Interrupted while waiting for request " + requestId);
+        }
+        if (failure != null) {
+            throw new IOException(failure.getMessage(), failure);
+        }
+        return response;
+    }
+
+    int getRequestId() {
+        return requestId;
+    }
+}
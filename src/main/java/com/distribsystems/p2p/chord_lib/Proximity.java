@@ -0,0 +1,73 @@
+package com.distribsystems.p2p.chord_lib;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Proximity: the Vivaldi coordinates of the node, refined with every round-trip time it measures on its PINGs and
+ * FIND_FINGER lookups, and the coordinates told by the peers it has measured, so that the latency to any of them can be
+ * predicted without measuring it again. Only the peers used most recently are kept
+ */
+public class Proximity {
+    private final int                                   capacity;
+    private volatile Coordinates                        coordinates = Coordinates.ORIGIN;
+    private final LinkedHashMap<String, Coordinates>    peers = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong                            samples = new AtomicLong();
+
+    public Proximity() {
+        this(Chord.PROXIMITY_PEERS);
+    }
+
+    public Proximity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return  The current coordinates of the node
+     */
+    public Coordinates getCoordinates() {
+        return coordinates;
+    }
+
+    /**
+     * @brief   Take into account a round-trip time measured to a peer
+     * @param   peer    The peer
+     * @param   remote  Coordinates told by the peer
+     * @param   rtt     Round-trip time [nanoseconds]
+     */
+    public synchronized void observe(Finger peer, Coordinates remote, long rtt) {
+        this.coordinates = this.coordinates.update(remote, rtt / 1e6);
+        this.peers.put(key(peer), remote);
+        if (this.peers.size() > this.capacity) {
+            this.peers.remove(this.peers.keySet().iterator().next());
+        }
+        this.samples.incrementAndGet();
+    }
+
+    /**
+     * @return  True if the coordinates of the peer are known
+     */
+    public synchronized boolean isKnown(Finger peer) {
+        return this.peers.containsKey(key(peer));
+    }
+
+    /**
+     * @return  The round-trip time predicted to the peer [milliseconds], Double.MAX_VALUE if its coordinates are not
+     *          known
+     */
+    public synchronized double predictRtt(Finger peer) {
+        Coordinates remote = this.peers.get(key(peer));
+        return remote != null ? this.coordinates.distanceTo(remote) : Double.MAX_VALUE;
+    }
+
+    /**
+     * @return  Number of round-trip times taken into account
+     */
+    public long getSamples() {
+        return samples.get();
+    }
+
+    private static String key(Finger peer) {
+        return peer.getIpAddr() + ":" + peer.getPort();
+    }
+}
@@ -0,0 +1,274 @@
+package com.distribsystems.p2p.chord_lib;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * RingId: an identifier on the ChordRing (of a node, a finger or an item), that is a number modulo 2^m with m the
+ * number of bits of the ring (Chord.getFingerTableSize(), up to 160).
+ * The identifier is kept in three primitive words, so that comparisons, clockwise distances and interval tests never
+ * allocate anything, and the arithmetic wraps around the ring by itself. RingIds are immutable
+ */
+public final class RingId implements Comparable<RingId> {
+    public final static RingId  ZERO = new RingId(0, 0, 0);
+
+    // The identifiers of a small ring are all cached, so that decoding them does not allocate anything
+    private final static RingId[]   SMALL = new RingId[1 << 12];
+    static {
+        for (int i = 0; i < SMALL.length; i++) {
+            SMALL[i] = new RingId(i);
+        }
+    }
+
+    // Bits 128..159, 64..127 and 0..63 of the identifier
+    private final long  high;
+    private final long  middle;
+    private final long  low;
+
+    private RingId(long high, long middle, long low) {
+        this.high = high & mask(2);
+        this.middle = middle & mask(1);
+        this.low = low & mask(0);
+    }
+
+    private RingId(long low) {
+        this.high = 0;
+        this.middle = 0;
+        this.low = low;
+    }
+
+    /**
+     * @return  The number of bits of the identifiers, that is the ring has 2^bits() positions
+     */
+    public static int bits() {
+        return Chord.getFingerTableSize();
+    }
+
+    /**
+     * @return  The mask of the bits of the given word that belong to the ring
+     */
+    private static long mask(int word) {
+        int bits = bits() - 64 * word;
+        if (bits <= 0) {
+            return 0;
+        }
+        return bits >= 64 ? -1L : (1L << bits) - 1;
+    }
+
+    /**
+     * @return  The identifier of the given value, modulo the size of the ring
+     */
+    public static RingId valueOf(long value) {
+        long low = value & mask(0);
+        if (low >= 0 && low < SMALL.length && low == value) {
+            return SMALL[(int) low];
+        }
+        return new RingId(0, 0, value);
+    }
+
+    /**
+     * @return  The identifier of the given value, modulo the size of the ring
+     */
+    public static RingId valueOf(BigInteger value) {
+        BigInteger ring = value.mod(BigInteger.ONE.shiftLeft(bits()));
+        return new RingId(ring.shiftRight(128).longValue(), ring.shiftRight(64).longValue(), ring.longValue());
+    }
+
+    /**
+     * @brief   Parse an identifier written in decimal (as in the text protocol)
+     * @throws  NumberFormatException if the text is not a number
+     */
+    public static RingId parse(String text) {
+        if (text.length() <= 18) {
+            return valueOf(Long.parseLong(text));
+        }
+        return valueOf(new BigInteger(text));
+    }
+
+    /**
+     * @return  The identifier given by the SHA-1 hash of the text, modulo the size of the ring
+     */
+    public static RingId hash(String text) {
+        ByteBuffer digest = ByteBuffer.wrap(DigestUtils.sha1(text));
+        return new RingId(digest.getInt(0) & 0xFFFFFFFFL, digest.getLong(4), digest.getLong(12));
+    }
+
+    /**
+     * @brief   Read an identifier written by writeTo()
+     * @param   buffer  Buffer to read from
+     * @param   width   Number of bytes of the identifier
+     */
+    public static RingId readFrom(ByteBuffer buffer, int width) {
+        long[] words = new long[3];
+        for (int i = width - 1; i >= 0; i--) {
+            long b = buffer.get() & 0xFF;
+            if (i < 24) {
+                words[i / 8] |= b << (8 * (i % 8));
+            }
+        }
+        return new RingId(words[2], words[1], words[0]);
+    }
+
+    /**
+     * @brief   Write the identifier as an unsigned big-endian number of the given number of bytes
+     */
+    public void writeTo(ByteBuffer buffer, int width) {
+        for (int i = width - 1; i >= 0; i--) {
+            long word = i < 8 ? low : i < 16 ? middle : i < 24 ? high : 0;
+            buffer.put((byte) (word >>> (8 * (i % 8))));
+        }
+    }
+
+    /**
+     * @return  The identifier that is 2^exponent positions after this one (the start of the finger at that index)
+     */
+    public RingId addPowerOfTwo(int exponent) {
+        long bit = 1L << (exponent % 64);
+        return add(exponent >= 128 ? bit : 0, exponent >= 64 && exponent < 128 ? bit : 0, exponent < 64 ? bit : 0);
+    }
+
+    /**
+     * @return  This identifier + other, wrapped around the ring
+     */
+    public RingId add(RingId other) {
+        return add(other.high, other.middle, other.low);
+    }
+
+    private RingId add(long high, long middle, long low) {
+        long sumLow = this.low + low;
+        long carry = lessThan(sumLow, low) ? 1 : 0;
+        long sumMiddle = this.middle + middle + carry;
+        carry = lessThan(sumMiddle, middle) || (carry == 1 && sumMiddle == middle) ? 1 : 0;
+        return new RingId(this.high + high + carry, sumMiddle, sumLow);
+    }
+
+    /**
+     * @return  This identifier - other, wrapped around the ring
+     */
+    public RingId subtract(RingId other) {
+        long borrow = lessThan(this.low, other.low) ? 1 : 0;
+        long middle = this.middle - other.middle - borrow;
+        borrow = lessThan(this.middle, other.middle) || (borrow == 1 && this.middle == other.middle) ? 1 : 0;
+        return new RingId(this.high - other.high - borrow, middle, this.low - other.low);
+    }
+
+    /**
+     * @return  The clockwise distance from this identifier to the other one
+     */
+    public RingId distanceTo(RingId other) {
+        return other.subtract(this);
+    }
+
+    /**
+     * @brief   Compare the clockwise distances from this identifier and from another one to the same target, without
+     *          computing them
+     * @return  A negative number if this identifier is closer to the target than other, zero if they are equally
+     *          close, a positive number otherwise
+     */
+    public int compareDistance(RingId other, RingId target) {
+        // The closer of the two is the one that comes later on the way to the target
+        if (this.equals(other)) {
+            return 0;
+        }
+        if (this.equals(target)) {
+            return -1;
+        }
+        if (other.equals(target)) {
+            return 1;
+        }
+        return isBetween(other, target) ? -1 : 1;
+    }
+
+    /**
+     * @brief   Control whether the identifier is in the interval (from, to] going clockwise around the ring. An
+     *          interval whose ends are the same covers the whole ring
+     */
+    public boolean isBetween(RingId from, RingId to) {
+        int order = from.compareTo(to);
+        if (order < 0) {
+            return this.compareTo(from) > 0 && this.compareTo(to) <= 0;
+        }
+        // Wrapping around zero (or the whole ring)
+        return this.compareTo(from) > 0 || this.compareTo(to) <= 0;
+    }
+
+    /**
+     * @brief   Control whether the identifier is in the interval (from, to) going clockwise around the ring. An
+     *          interval whose ends are the same covers the whole ring but its end
+     */
+    public boolean isStrictlyBetween(RingId from, RingId to) {
+        return isBetween(from, to) && !this.equals(to);
+    }
+
+    /**
+     * @return  True if the identifier is a non-negative long (see longValue())
+     */
+    public boolean isLong() {
+        return high == 0 && middle == 0 && low >= 0;
+    }
+
+    /**
+     * @return  The lowest 64 bits of the identifier
+     */
+    public long longValue() {
+        return low;
+    }
+
+    public BigInteger toBigInteger() {
+        if (isLong()) {
+            return BigInteger.valueOf(low);
+        }
+        return unsigned(high).shiftLeft(128).or(unsigned(middle).shiftLeft(64)).or(unsigned(low));
+    }
+
+    private static BigInteger unsigned(long word) {
+        BigInteger value = BigInteger.valueOf(word & Long.MAX_VALUE);
+        return word < 0 ? value.setBit(63) : value;
+    }
+
+    /**
+     * @brief   Unsigned comparison of two words
+     */
+    private static boolean lessThan(long a, long b) {
+        return (a ^ Long.MIN_VALUE) < (b ^ Long.MIN_VALUE);
+    }
+
+    @Override
+    public int compareTo(RingId other) {
+        if (this.high != other.high) {
+            return lessThan(this.high, other.high) ? -1 : 1;
+        }
+        if (this.middle != other.middle) {
+            return lessThan(this.middle, other.middle) ? -1 : 1;
+        }
+        if (this.low != other.low) {
+            return lessThan(this.low, other.low) ? -1 : 1;
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof RingId)) {
+            return false;
+        }
+        RingId other = (RingId) object;
+        return this.low == other.low && this.middle == other.middle && this.high == other.high;
+    }
+
+    @Override
+    public int hashCode() {
+        long hash = low ^ (middle * 31) ^ (high * 961);
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * @return  The identifier in decimal
+     */
+    @Override
+    public String toString() {
+        return isLong() ? Long.toString(low) : toBigInteger().toString();
+    }
+}
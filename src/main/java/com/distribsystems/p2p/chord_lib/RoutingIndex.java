@@ -0,0 +1,159 @@
+package com.distribsystems.p2p.chord_lib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * RoutingIndex: the distinct nodes of the FingerTable sorted by their position on the ring, so that the routing
+ * decisions (the closest finger preceding a key, the first finger following it, ...) are a binary search instead of
+ * a scan of the whole FingerTable. Fingers often point to the same node, and each node appears only once.
+ * An index is immutable: the Node builds a new one every time its fingers change
+ */
+public final class RoutingIndex {
+    public final static RoutingIndex    EMPTY = new RoutingIndex(new RingId[0], new Finger[0]);
+
+    private final RingId[]  ids;
+    private final Finger[]  fingers;
+
+    private RoutingIndex(RingId[] ids, Finger[] fingers) {
+        this.ids = ids;
+        this.fingers = fingers;
+    }
+
+    /**
+     * @brief   Build the index of the given fingers
+     * @param   fingers     Fingers of the FingerTable (null entries are skipped)
+     * @return  The index of the distinct nodes among the fingers
+     */
+    public static RoutingIndex of(Collection<Finger> fingers) {
+        List<Finger> sorted = new ArrayList<>(fingers.size());
+        for (Finger finger : fingers) {
+            if (finger != null) {
+                sorted.add(finger);
+            }
+        }
+        Collections.sort(sorted, new Comparator<Finger>() {
+            @Override
+            public int compare(Finger a, Finger b) {
+                return a.getId().compareTo(b.getId());
+            }
+        });
+
+        RingId[] ids = new RingId[sorted.size()];
+        Finger[] distinct = new Finger[sorted.size()];
+        int size = 0;
+        for (Finger finger : sorted) {
+            // Fingers with the same id are the same node
+            if (size == 0 || !ids[size - 1].equals(finger.getId())) {
+                ids[size] = finger.getId();
+                distinct[size] = finger;
+                size++;
+            }
+        }
+        return new RoutingIndex(Arrays.copyOf(ids, size), Arrays.copyOf(distinct, size));
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public boolean isEmpty() {
+        return ids.length == 0;
+    }
+
+    /**
+     * @return  The i-th node, in the order of the ring
+     */
+    public Finger get(int i) {
+        return fingers[i];
+    }
+
+    /**
+     * @return  The node with the smallest id, null if the index is empty
+     */
+    public Finger first() {
+        return ids.length > 0 ? fingers[0] : null;
+    }
+
+    /**
+     * @return  The node with the greatest id, null if the index is empty
+     */
+    public Finger last() {
+        return ids.length > 0 ? fingers[ids.length - 1] : null;
+    }
+
+    /**
+     * @return  The node with the greatest id less than or equal to the key, null if there is none
+     */
+    public Finger floor(RingId key) {
+        int i = search(key);
+        return i >= 0 ? fingers[i] : (-i - 2 >= 0 ? fingers[-i - 2] : null);
+    }
+
+    /**
+     * @return  The node with the smallest id greater than or equal to the key, null if there is none
+     */
+    public Finger ceiling(RingId key) {
+        int i = ceilingIndex(key);
+        return i < ids.length ? fingers[i] : null;
+    }
+
+    /**
+     * @return  The node with the smallest id strictly greater than the key, null if there is none
+     */
+    public Finger higher(RingId key) {
+        int i = search(key);
+        int next = i >= 0 ? i + 1 : -i - 1;
+        return next < ids.length ? fingers[next] : null;
+    }
+
+    /**
+     * @return  The position of the node with the smallest id greater than or equal to the key, size() if there is none
+     */
+    public int ceilingIndex(RingId key) {
+        int i = search(key);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    /**
+     * @return  The node closest to the key going clockwise, that is the closest one preceding it (or the key itself),
+     *          wrapping around the ring. Null if the index is empty
+     */
+    public Finger closestPreceding(RingId key) {
+        Finger finger = floor(key);
+        return finger != null ? finger : last();
+    }
+
+    /**
+     * @return  The first node following the key (or the key itself), wrapping around the ring. Null if the index is
+     *          empty
+     */
+    public Finger successor(RingId key) {
+        Finger finger = ceiling(key);
+        return finger != null ? finger : first();
+    }
+
+    /**
+     * @return  The position of the key if it is in the index, otherwise (-(insertion point) - 1)
+     */
+    private int search(RingId key) {
+        int low = 0;
+        int high = ids.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int order = ids[middle].compareTo(key);
+            if (order < 0) {
+                low = middle + 1;
+            } else if (order > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+}
@@ -0,0 +1,304 @@
+package com.distribsystems.p2p.chord_lib;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RoutingState: a snapshot of what the Node knows about the ring, that is its FingerTable (with the RoutingIndex of
+ * it), its counter-clockwise fingers if any (see Chord.setCounterClockwiseFingers()), its successor list and its
+ * predecessor list (the closest first, up to Chord.getSuccessorListLength() nodes each).
+ * A snapshot is immutable: the Node publishes the current one through an atomic reference, so that the queries read it
+ * without taking any lock, while a change builds a new snapshot aside and swaps it in
+ */
+public final class RoutingState {
+    public final static RoutingState    EMPTY = new RoutingState(Collections.<Integer, Finger>emptyMap(),
+            RoutingIndex.EMPTY, Collections.<Integer, Finger>emptyMap(), RoutingIndex.EMPTY,
+            Collections.<Finger>emptyList(), Collections.<Finger>emptyList());
+
+    private final Map<Integer, Finger>  fingerTable;
+    private final RoutingIndex          routingIndex;
+    private final Map<Integer, Finger>  counterClockwiseFingerTable;
+    private final RoutingIndex          counterClockwiseIndex;
+    private final List<Finger>          successors;
+    private final List<Finger>          predecessors;
+
+    private RoutingState(Map<Integer, Finger> fingerTable, RoutingIndex routingIndex,
+                         Map<Integer, Finger> counterClockwiseFingerTable, RoutingIndex counterClockwiseIndex,
+                         List<Finger> successors, List<Finger> predecessors) {
+        this.fingerTable = fingerTable;
+        this.routingIndex = routingIndex;
+        this.counterClockwiseFingerTable = counterClockwiseFingerTable;
+        this.counterClockwiseIndex = counterClockwiseIndex;
+        this.successors = successors;
+        this.predecessors = predecessors;
+    }
+
+    /**
+     * @return  The snapshot with the given FingerTable (which is copied) and the same successors and predecessors
+     */
+    public RoutingState withFingerTable(Map<Integer, Finger> fingerTable) {
+        Map<Integer, Finger> copy = Collections.unmodifiableMap(new HashMap<>(fingerTable));
+        return new RoutingState(copy, RoutingIndex.of(copy.values()), counterClockwiseFingerTable,
+                counterClockwiseIndex, successors, predecessors);
+    }
+
+    /**
+     * @return  The snapshot with the given counter-clockwise fingers (which are copied) and the same FingerTable,
+     *          successors and predecessors
+     */
+    public RoutingState withCounterClockwiseFingerTable(Map<Integer, Finger> counterClockwiseFingerTable) {
+        Map<Integer, Finger> copy = Collections.unmodifiableMap(new HashMap<>(counterClockwiseFingerTable));
+        return new RoutingState(fingerTable, routingIndex, copy, RoutingIndex.of(copy.values()), successors,
+                predecessors);
+    }
+
+    /**
+     * @return  The snapshot with the given FingerTable (which is copied), whose first finger becomes the first
+     *          successor. The rest of the successor list is kept, the second finger filling it in only while the list
+     *          holds a single node
+     */
+    public RoutingState withRefreshedFingerTable(Map<Integer, Finger> fingerTable) {
+        RoutingState state = withFingerTable(fingerTable);
+        Finger firstFinger = state.fingerTable.get(0);
+        if (firstFinger == null) {
+            return state;
+        }
+        List<Finger> successors = replaceFirst(this.successors, firstFinger);
+        if (successors.size() < 2) {
+            successors.add(state.fingerTable.get(1));
+        }
+        return state.withSuccessors(successors);
+    }
+
+    /**
+     * @return  The snapshot with the given successor list, the closest first. The nodes after the first
+     *          Chord.getSuccessorListLength() ones, the repeated nodes and the null entries are left out
+     */
+    public RoutingState withSuccessors(List<Finger> successors) {
+        return new RoutingState(fingerTable, routingIndex, counterClockwiseFingerTable, counterClockwiseIndex,
+                neighbours(successors), predecessors);
+    }
+
+    /**
+     * @return  The snapshot with the given predecessor list, the closest first (see withSuccessors())
+     */
+    public RoutingState withPredecessors(List<Finger> predecessors) {
+        return new RoutingState(fingerTable, routingIndex, counterClockwiseFingerTable, counterClockwiseIndex,
+                successors, neighbours(predecessors));
+    }
+
+    /**
+     * @return  The snapshot where the node replaces the first successor, the others staying behind it
+     */
+    public RoutingState withFirstSuccessor(Finger firstSuccessor) {
+        return withSuccessors(replaceFirst(successors, firstSuccessor));
+    }
+
+    /**
+     * @return  The snapshot where the node replaces the first predecessor, the others staying behind it
+     */
+    public RoutingState withFirstPredecessor(Finger firstPredecessor) {
+        return withPredecessors(replaceFirst(predecessors, firstPredecessor));
+    }
+
+    /**
+     * @return  The snapshot where the node is the new first successor, the others moving one place down, and the first
+     *          finger moves to the second place of the FingerTable
+     */
+    public RoutingState withNewSuccessor(Finger successor) {
+        Map<Integer, Finger> fingers = new HashMap<>(fingerTable);
+        fingers.put(1, fingerTable.get(0));
+        fingers.put(0, successor);
+        return withFingerTable(fingers).withSuccessors(prepend(successor, successors));
+    }
+
+    /**
+     * @return  The snapshot where the node is the new first predecessor, the others moving one place down
+     */
+    public RoutingState withNewPredecessor(Finger predecessor) {
+        return withPredecessors(prepend(predecessor, predecessors));
+    }
+
+    /**
+     * @brief   Forget a node that is leaving the ring, or that has failed: it is dropped from the successors and the
+     *          predecessors, and its fingers are replaced by the successor that follows it (it owns the ids of the node
+     *          now) or, if it does not come in the successor list, by the current node
+     * @param   id      Identifier of the node to forget
+     * @param   self    The current node
+     * @return  The snapshot without the node
+     */
+    public RoutingState withoutNode(RingId id, Finger self) {
+        int index = indexOf(successors, id);
+        Finger replacement = index >= 0 && index + 1 < successors.size() ? successors.get(index + 1) : self;
+
+        // Replace the node in the FingerTable
+        Map<Integer, Finger> fingers = new HashMap<>(fingerTable);
+        for (Map.Entry<Integer, Finger> entry : fingers.entrySet()) {
+            if (entry.getValue().getId().equals(id)) {
+                entry.setValue(replacement);
+            }
+        }
+        RoutingState state = withFingerTable(fingers);
+        if (!counterClockwiseFingerTable.isEmpty()) {
+            Map<Integer, Finger> counterClockwiseFingers = new HashMap<>(counterClockwiseFingerTable);
+            for (Map.Entry<Integer, Finger> entry : counterClockwiseFingers.entrySet()) {
+                if (entry.getValue().getId().equals(id)) {
+                    entry.setValue(self);
+                }
+            }
+            state = state.withCounterClockwiseFingerTable(counterClockwiseFingers);
+        }
+
+        //Test Predecessors
+        if (indexOf(predecessors, id) >= 0) {
+            List<Finger> remaining = without(predecessors, id);
+            if (remaining.isEmpty()) {
+                // Use the finger with the smallest clockwise distance to the node id as predecessor
+                Finger closestPredecessor = state.routingIndex.closestPreceding(self.getId());
+                remaining.add(closestPredecessor != null ? closestPredecessor : self);
+            }
+            state = state.withPredecessors(remaining);
+        }
+
+        //Test Successors
+        if (index >= 0) {
+            List<Finger> remaining = without(successors, id);
+            if (remaining.isEmpty()) {
+                remaining.add(state.fingerTable.get(0));
+            }
+            state = state.withSuccessors(remaining);
+        }
+        return state;
+    }
+
+    /**
+     * @return  The nodes in order, without the null entries and the repeated nodes, up to Chord.getSuccessorListLength()
+     */
+    private static List<Finger> neighbours(List<Finger> nodes) {
+        List<Finger> neighbours = new ArrayList<>(Math.min(nodes.size(), Chord.getSuccessorListLength()));
+        for (Finger node : nodes) {
+            if (neighbours.size() == Chord.getSuccessorListLength()) {
+                break;
+            }
+            if (node != null && indexOf(neighbours, node.getId()) < 0) {
+                neighbours.add(node);
+            }
+        }
+        return Collections.unmodifiableList(neighbours);
+    }
+
+    private static List<Finger> prepend(Finger node, List<Finger> nodes) {
+        List<Finger> list = new ArrayList<>(nodes.size() + 1);
+        list.add(node);
+        list.addAll(nodes);
+        return list;
+    }
+
+    private static List<Finger> replaceFirst(List<Finger> nodes, Finger node) {
+        return prepend(node, nodes.isEmpty() ? nodes : nodes.subList(1, nodes.size()));
+    }
+
+    private static List<Finger> without(List<Finger> nodes, RingId id) {
+        List<Finger> list = new ArrayList<>(nodes.size());
+        for (Finger node : nodes) {
+            if (!node.getId().equals(id)) {
+                list.add(node);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * @return  The position of the node in the list, -1 if it is not there
+     */
+    static int indexOf(List<Finger> nodes, RingId id) {
+        for (int i = 0; i < nodes.size(); i++) {
+            if (nodes.get(i).getId().equals(id)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @brief   Choose the node a lookup of the key is forwarded to: the finger closest to the key going clockwise or,
+     *          with counter-clockwise fingers, the closest node between the key and us (the first predecessor
+     *          included) when it is nearer to the key. Either way the distance to the key shrinks at every hop, so the
+     *          lookup still ends at the owner of the key
+     * @param   self    Identifier of the node
+     * @param   key     Identifier looked up
+     * @return  The next hop
+     */
+    public Finger nextHop(RingId self, RingId key) {
+        Finger closestPreceding = routingIndex.closestPreceding(key);
+        if (counterClockwiseFingerTable.isEmpty()) {
+            return closestPreceding;
+        }
+
+        Finger firstPredecessor = getFirstPredecessor();
+        Finger closestFollowing = counterClockwiseIndex.successor(key);
+        if (isBehind(firstPredecessor, key, self) && (!isBehind(closestFollowing, key, self)
+                || key.distanceTo(firstPredecessor.getId()).compareTo(key.distanceTo(closestFollowing.getId())) < 0)) {
+            closestFollowing = firstPredecessor;
+        }
+        if (!isBehind(closestFollowing, key, self) || (closestPreceding != null
+                && closestPreceding.getId().distanceTo(key).compareTo(key.distanceTo(closestFollowing.getId())) <= 0)) {
+            return closestPreceding;
+        }
+        return closestFollowing;
+    }
+
+    /**
+     * @return  True if the node is in [key, self), that is going back from it towards the key gets closer to the key
+     */
+    static boolean isBehind(Finger finger, RingId key, RingId self) {
+        return finger != null && (finger.getId().equals(key) || finger.getId().isStrictlyBetween(key, self));
+    }
+
+    /**
+     * @return  The FingerTable (read-only)
+     */
+    public Map<Integer, Finger> getFingerTable() {
+        return fingerTable;
+    }
+
+    public RoutingIndex getRoutingIndex() {
+        return routingIndex;
+    }
+
+    /**
+     * @return  The counter-clockwise fingers (read-only), empty if the node does not keep any
+     */
+    public Map<Integer, Finger> getCounterClockwiseFingerTable() {
+        return counterClockwiseFingerTable;
+    }
+
+    public RoutingIndex getCounterClockwiseIndex() {
+        return counterClockwiseIndex;
+    }
+
+    /**
+     * @return  The successor list (read-only), the first successor first
+     */
+    public List<Finger> getSuccessors() {
+        return successors;
+    }
+
+    /**
+     * @return  The predecessor list (read-only), the first predecessor first
+     */
+    public List<Finger> getPredecessors() {
+        return predecessors;
+    }
+
+    public Finger getFirstSuccessor() {
+        return successors.isEmpty() ? null : successors.get(0);
+    }
+
+    public Finger getFirstPredecessor() {
+        return predecessors.isEmpty() ? null : predecessors.get(0);
+    }
+}
@@ -0,0 +1,181 @@
+package com.distribsystems.p2p.chord_lib;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ServerBenchmark: compares the ExecutionModes of the Server by keeping many connections open to a single Node and
+ * sending PING and FIND_FINGER queries on all of them at the same time. Then measures the same number of queries
+ * sent by all the client threads through a single multiplexed Connection of a ConnectionPool.
+ *
+ * Program Arguments
+ * args[0] = number of connections kept open at the same time (default 2000)
+ * args[1] = number of queries sent on each connection (default 50)
+ * args[2] = first PORT number used by the benchmarked Nodes (default 8500)
+ */
+public class ServerBenchmark {
+    private final static int CLIENT_THREADS = 32;
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int queries     = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int port        = args.length > 2 ? Integer.parseInt(args[2]) : 8500;
+
+        Chord.setEnableLogs(false);
+        System.out.println("Connections: " + connections + ", queries per connection: " + queries + ", client threads: " + CLIENT_THREADS);
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            run(mode, "127.0.0.1", port, connections, queries);
+            port += 10;
+        }
+        Chord.setExecutionMode(ExecutionMode.SELECTOR);
+        runMultiplexed("127.0.0.1", port, connections, queries);
+        System.exit(0);
+    }
+
+    /**
+     * @brief   Create a Node in the given mode and measure its throughput and the threads it needs
+     */
+    private static void run(ExecutionMode mode, final String ipAddress, final int port, int connections, final int queries) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        Chord.setExecutionMode(mode);
+        new Node(ipAddress, port);
+        Thread.sleep(1000);
+
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong maxLatency = new AtomicLong();
+        List<Thread> clients = new ArrayList<>();
+        int threadsBefore = threads.getThreadCount();
+        threads.resetPeakThreadCount();
+
+        long start = System.nanoTime();
+        for (int t = 0; t < CLIENT_THREADS; t++) {
+            final int clientConnections = connections / CLIENT_THREADS + (t < connections % CLIENT_THREADS ? 1 : 0);
+            Thread client = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runClient(ipAddress, port, clientConnections, queries, failures, maxLatency);
+                }
+            });
+            clients.add(client);
+            client.start();
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        long total = (long) connections * queries;
+        System.out.println(String.format("%-16s %8.0f queries/s, max latency %5d ms, failures %d, server threads ~%d",
+                mode, total * 1e9 / elapsed, maxLatency.get() / 1000000, failures.get(),
+                threads.getPeakThreadCount() - threadsBefore - CLIENT_THREADS));
+    }
+
+    /**
+     * @brief   Send all the queries through one ConnectionPool: every client thread keeps PIPELINE queries in flight
+     *          on the connection shared with the other threads
+     */
+    private static void runMultiplexed(String ipAddress, final int port, int connections, int queries) throws Exception {
+        final int PIPELINE = 64;
+        new Node(ipAddress, port);
+        Thread.sleep(1000);
+
+        final ConnectionPool pool = new ConnectionPool();
+        final Connection connection = pool.borrow(ipAddress, port);
+        final AtomicLong failures = new AtomicLong();
+        final int clientQueries = (connections * queries) / CLIENT_THREADS;
+        List<Thread> clients = new ArrayList<>();
+
+        long start = System.nanoTime();
+        for (int t = 0; t < CLIENT_THREADS; t++) {
+            Thread client = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    PendingResponse[] responses = new PendingResponse[PIPELINE];
+                    try {
+                        for (int q = 0; q < clientQueries; q += PIPELINE) {
+                            int count = Math.min(PIPELINE, clientQueries - q);
+                            for (int i = 0; i < count; i++) {
+                                Message query = ((q + i) % 2 == 0) ? new Message(Chord.PING) :
+                                        Message.withId(Chord.FIND_FINGER, RingId.valueOf(q + i));
+                                responses[i] = connection.requestAsync(query);
+                            }
+                            for (int i = 0; i < count; i++) {
+                                responses[i].get();
+                            }
+                        }
+                    } catch (IOException e) {
+                        failures.incrementAndGet();
+                        e.printStackTrace();
+                    }
+                }
+            });
+            clients.add(client);
+            client.start();
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        pool.close();
+
+        long total = (long) clientQueries * CLIENT_THREADS;
+        System.out.println(String.format("%-16s %8.0f queries/s, failures %d, on a single connection",
+                "MULTIPLEXED", total * 1e9 / elapsed, failures.get()));
+    }
+
+    /**
+     * @brief   Open all the connections of a client thread, then send one query on each of them at a time and
+     *          read back all the responses
+     */
+    private static void runClient(String ipAddress, int port, int connections, int queries, AtomicLong failures, AtomicLong maxLatency) {
+        List<Socket> sockets = new ArrayList<>();
+        List<PrintWriter> writers = new ArrayList<>();
+        List<BufferedReader> readers = new ArrayList<>();
+        try {
+            for (int i = 0; i < connections; i++) {
+                Socket socket = new Socket(ipAddress, port);
+                socket.setSoTimeout(Chord.SOCKET_TIMEOUT * 1000 * 10);
+                sockets.add(socket);
+                writers.add(new PrintWriter(socket.getOutputStream(), true));
+                readers.add(new BufferedReader(new InputStreamReader(socket.getInputStream())));
+            }
+
+            for (int q = 0; q < queries; q++) {
+                long sent = System.nanoTime();
+                String query = (q % 2 == 0) ? Chord.PING + ":0" : Chord.FIND_FINGER + ":" + RingId.valueOf(q);
+                for (PrintWriter writer : writers) {
+                    writer.println(query);
+                }
+                for (BufferedReader reader : readers) {
+                    if (reader.readLine() == null) {
+                        failures.incrementAndGet();
+                    }
+                }
+                long latency = System.nanoTime() - sent;
+                if (latency > maxLatency.get()) {
+                    maxLatency.set(latency);
+                }
+            }
+        } catch (IOException e) {
+            failures.incrementAndGet();
+            e.printStackTrace();
+        } finally {
+            for (Socket socket : sockets) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // Benchmark is over anyway
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package com.distribsystems.p2p.chord_lib;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+/**
+ * ServerConnection: state of a single connection accepted by the Server. It decodes the messages received
+ * incrementally (text lines, or binary frames once the handshake has been accepted) and executes them on the Server's
+ * workers, writing the responses into an output buffer until the channel can take them. Text queries are executed
+ * one at a time (in order), while binary frames carry their request id and are all executed at the same time, their
+ * responses being written back as soon as they are ready.
+ * The queries are decoded into Tasks, and their responses encoded from them, that are reused by the following
+ * queries: once the buffers have grown to the size of the traffic, serving a PING does not allocate anything
+ */
+class ServerConnection {
+    private final static int INITIAL_BUFFER_SIZE = 512;
+    private final static int MAX_IDLE_TASKS = 64;
+
+    private final Server                server;
+    private final SelectionKey          key;
+    private final SocketChannel         channel;
+    private ByteBuffer                  input = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private ByteBuffer                  output = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private int                         version = 1;
+    private boolean                     binary = false;
+    private final ArrayDeque<Task>      queries = new ArrayDeque<>();
+    private final ArrayDeque<Task>      idleTasks = new ArrayDeque<>();
+    private boolean                     busy = false;
+    private boolean                     writeRequested = false;
+
+    /**
+     * A query of the connection and its response, executed by one of the workers
+     */
+    private class Task implements Runnable {
+        final Message query = new Message();
+        final Message response = new Message();
+
+        @Override
+        public void run() {
+            boolean respond;
+            try {
+                respond = server.getHandler().handle(query, response);
+            } catch (Exception e) {
+                e.printStackTrace();
+                close();
+                return;
+            }
+            completed(this, respond);
+        }
+    }
+
+    ServerConnection(Server server, SelectionKey key) {
+        this.server = server;
+        this.key = key;
+        this.channel = (SocketChannel) key.channel();
+    }
+
+    /**
+     * @brief   Read the available bytes (selector thread) and dispatch every complete message
+     * @param   readBuffer  Buffer shared by all the connections of the selector thread
+     * @throws  IOException if the connection has been closed by the other node or sent a malformed message
+     */
+    void read(ByteBuffer readBuffer) throws IOException {
+        int count;
+        readBuffer.clear();
+        while ((count = channel.read(readBuffer)) > 0) {
+            readBuffer.flip();
+            input = ensureCapacity(input, readBuffer.remaining());
+            input.put(readBuffer);
+            readBuffer.clear();
+            decode();
+        }
+        if (count < 0) {
+            throw new IOException("Connection closed by " + channel);
+        }
+    }
+
+    /**
+     * @brief   Grow a buffer (in write mode) so that it has at least the given number of bytes remaining
+     * @return  The buffer itself if it is already large enough, otherwise a larger copy of it
+     */
+    private ByteBuffer ensureCapacity(ByteBuffer buffer, int needed) throws IOException {
+        if (buffer.remaining() >= needed) {
+            return buffer;
+        }
+        int size = buffer.position() + needed;
+        if (size > 2 * (Chord.MAX_MESSAGE_LENGTH + 4)) {
+            throw new IOException("Too much data pending on " + channel);
+        }
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(size, buffer.capacity() * 2));
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+
+    /**
+     * @brief   Extract all the complete messages from the input buffer
+     */
+    private void decode() throws IOException {
+        input.flip();
+        while (input.hasRemaining()) {
+            if (binary) {
+                if (!decodeFrame()) {
+                    break;
+                }
+            } else {
+                String line = decodeLine();
+                if (line == null) {
+                    break;
+                }
+                int version = MessageCodec.acceptHandshake(line);
+                if (version > 0) {
+                    handshake(version);
+                } else {
+                    Task task = newTask();
+                    task.query.copy(MessageCodec.decodeText(line, null));
+                    enqueue(task);
+                }
+            }
+        }
+        input.compact();
+    }
+
+    /**
+     * @brief   Decode and dispatch the next frame of the input buffer
+     * @return  True if a frame has been decoded, False if it has not been completely received yet
+     */
+    private boolean decodeFrame() throws IOException {
+        if (input.remaining() < 4) {
+            return false;
+        }
+        int length = input.getInt(input.position());
+        if (length <= 0 || length > Chord.MAX_MESSAGE_LENGTH) {
+            throw new IOException("Invalid frame length from " + channel);
+        }
+        if (input.remaining() < 4 + length) {
+            return false;
+        }
+
+        int end = input.position() + 4 + length;
+        int limit = input.limit();
+        input.position(input.position() + 4);
+        input.limit(end);
+        Task task = newTask();
+        MessageCodec.decodeFrame(input, task.query, false);
+        input.limit(limit);
+        input.position(end);
+        enqueue(task);
+        return true;
+    }
+
+    /**
+     * @return  The next line of the input buffer (without its terminator), null if it has not been completely
+     *          received yet
+     */
+    private String decodeLine() throws IOException {
+        int start = input.position();
+        for (int i = start; i < input.limit(); i++) {
+            if (input.get(i) == '\n') {
+                int length = i - start;
+                if (length > 0 && input.get(i - 1) == '\r') {
+                    length--;
+                }
+                input.position(i + 1);
+                return new String(input.array(), input.arrayOffset() + start, length, MessageCodec.UTF8);
+            }
+        }
+        if (input.remaining() > Chord.MAX_MESSAGE_LENGTH) {
+            throw new IOException("Line too long from " + channel);
+        }
+        return null;
+    }
+
+    /**
+     * @brief   Agree on the version offered by the client: the response is still a line, the following messages
+     *          are binary frames
+     */
+    private synchronized void handshake(int version) throws IOException {
+        byte[] response = (MessageCodec.handshakeResponse(version) + "\n").getBytes(MessageCodec.UTF8);
+        output = ensureCapacity(output, response.length);
+        output.put(response);
+        flush();
+        this.version = version;
+        binary = version >= 2;
+    }
+
+    /**
+     * @return  A task to decode a query into, reused if possible
+     */
+    private synchronized Task newTask() {
+        Task task = idleTasks.pollFirst();
+        return task != null ? task : new Task();
+    }
+
+    /**
+     * @brief   Queue a query, and hand it to the workers if no other query of this connection is being executed
+     *          (binary queries are handed to the workers right away, or served right away if they allow it)
+     */
+    private synchronized void enqueue(Task task) {
+        if (binary) {
+            if (task.query.getType().isServedInline()) {
+                task.run();
+            } else {
+                dispatch(task);
+            }
+        } else if (busy) {
+            queries.add(task);
+        } else {
+            busy = true;
+            dispatch(task);
+        }
+    }
+
+    /**
+     * @brief   Hand a query to the workers. If they are overloaded the query is refused on its own and answered
+     *          NOT_FOUND right away, so that the client does not wait for its timeout. On a text connection a
+     *          notification gets no answer, since a line that is not expected would put the text exchange out of step
+     *          (on a binary one the answer is ignored by the client)
+     */
+    private void dispatch(Task task) {
+        if (!server.dispatch(this, task, task.query.getType().isServedByControlWorkers())) {
+            task.response.reset(Command.NOT_FOUND);
+            completed(task, binary || task.query.getType().expectsResponse());
+        }
+    }
+
+    /**
+     * @brief   Called by a worker when a query has been executed: write its response and dispatch the next query
+     * @param   task    Task that has been executed
+     * @param   respond True if the response of the task must be sent back
+     */
+    synchronized void completed(Task task, boolean respond) {
+        if (respond && channel.isOpen()) {
+            try {
+                if (binary) {
+                    task.response.setRequestId(task.query.getRequestId());
+                    MessageCodec.preparePayload(task.response, version);
+                    output = ensureCapacity(output, MessageCodec.frameLength(task.response));
+                    MessageCodec.encodeFrame(task.response, output);
+                } else {
+                    byte[] line = (MessageCodec.encodeText(task.response) + "\n").getBytes(MessageCodec.UTF8);
+                    output = ensureCapacity(output, line.length);
+                    output.put(line);
+                }
+                flush();
+            } catch (IOException e) {
+                close();
+            }
+        }
+        if (idleTasks.size() < MAX_IDLE_TASKS) {
+            idleTasks.addFirst(task);
+        }
+        if (binary) {
+            return;
+        }
+
+        Task next = queries.poll();
+        if (next != null) {
+            dispatch(next);
+        } else {
+            busy = false;
+        }
+    }
+
+    /**
+     * @brief   Write the output buffer right away (from the calling thread): the selector is involved only if the
+     *          channel can not take all of it
+     */
+    private void flush() throws IOException {
+        if (writeRequested) {
+            // The selector is already waiting for the channel to be writable
+            return;
+        }
+        output.flip();
+        channel.write(output);
+        output.compact();
+        if (output.position() > 0) {
+            writeRequested = true;
+            server.requestWrite(this);
+        }
+    }
+
+    /**
+     * @brief   Start listening for the channel to be writable (selector thread)
+     */
+    synchronized void enableWrites() {
+        if (key.isValid() && output.position() > 0) {
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * @brief   Write as much of the output buffer as the channel accepts (selector thread)
+     * @throws  IOException if the connection has been closed by the other node
+     */
+    synchronized void write() throws IOException {
+        output.flip();
+        channel.write(output);
+        output.compact();
+        if (output.position() == 0) {
+            writeRequested = false;
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * @brief   Close the channel and forget about its pending queries and responses
+     */
+    synchronized void close() {
+        key.cancel();
+        queries.clear();
+        output.clear();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // The channel is being discarded anyway
+        }
+    }
+
+    @Override
+    public String toString() {
+        return channel.toString();
+    }
+}
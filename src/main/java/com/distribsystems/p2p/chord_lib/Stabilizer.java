@@ -1,256 +1,326 @@
 package com.distribsystems.p2p.chord_lib;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.math.BigInteger;
-import java.net.Socket;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
-
-public class Stabilizer extends Thread {
+import java.util.Set;
+
+/**
+ * Stabilizer: the maintenance of the successors, the predecessors and the items of the node, split into the tasks run
+ * by the MaintenanceScheduler of the node (see MaintenanceTask).
+ * The changes of the neighbours (a new predecessor, a node leaving, a neighbour failing) trigger the work they call for
+ * as soon as they are known, so that a join or a leave is repaired in a fraction of a second: the periodic runs of the
+ * tasks only catch what the events have missed
+ */
+public class Stabilizer {
     private Node node;
-    private int stabilizationDelay = 0;
-    private int pingDelay = 0;
 
     public Stabilizer(Node node) {
         this.node = node;
     }
 
     /**
-     * @brief   This Method must ensure that each Node's successor pointer is up to date.
-     *          It run's periodically the Stability control (once every 8 seconds for now).
-     *          The Successor and Predecessor validator and also runs periodically (but with smaller delay, typically 3seconds).
-     *
-     *          For each node n asks it's successor for the successor's predecessor p, and decides whether p should be n's successor instead (for example if
-     *          p has recently joined)
+     * @brief   Schedule the maintenance tasks of the node:
+     *           - STABILIZE ensures that each Node's successor pointer is up to date: each node n asks its successor
+     *             for the successor's predecessor p, and decides whether p should be n's successor instead (for
+     *             example if p has recently joined). The successor list is copied from the successor, and the
+     *             predecessor list from the predecessor;
+     *           - FIX_FINGERS keeps the FingerTable up to date, at the rate of the FingerFixer of the node;
+     *           - PING and CHECK_PREDECESSOR validate the successor and the predecessor. With the UDP heartbeats they
+     *             run at every heartbeat interval (at most), TCP being used only to confirm a suspected failure;
+     *           - RECONCILE_ITEMS hands over the items that belong to another node.
      */
-    public void run() {
-        while (true) {
-            try {
-                Socket socket = null;
-                PrintWriter socketWriter = null;
-                BufferedReader socketReader = null;
-
-                while (true) {
-                    // Stabilization Delay
-                    Thread.sleep(Chord.STABILIZATION_DELAY * 1000);
-
-                    new Timer().schedule(new TimerTask() {
-                        @Override
-                        public void run() {
-                            try {
-                                // Ping Delay
-                                Thread.sleep(Chord.PING_DELAY * 1000);
-
-                                // Ping Successors and Predecessors
-                                testSuccessor();
-                                testPredecessor();
-                            }catch (Exception e){
-                                e.printStackTrace();
-                            }
-                        }
-                    }, 2000);
-
-                    // If it is not ourselves, open a connection to the successor
-                    if (!this.node.getIpAddr().equals(this.node.getFirstSuccessor().getIpAddr()) || (this.node.getPort() != this.node.getFirstSuccessor().getPort()))
-                    {
-                        // Open socket to successor
-                        socket = new Socket(this.node.getFirstSuccessor().getIpAddr(), this.node.getFirstSuccessor().getPort());
-                        socket.setSoTimeout(Chord.SOCKET_TIMEOUT*1000);
-
-                        // Open reader/writer to chord node
-                        socketWriter = new PrintWriter(socket.getOutputStream(), true);
-                        socketReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-
-                        // Submit a request for the predecessor -->
-                        // n (this node), asks it's successor for the successor's predecessor p, and decides
-                        // whether p should be n's successor instead (for example if p has recently joined)
-                        socketWriter.println(Chord.REQUEST_PREDECESSOR + ":" + this.node.getId() + " asking " + this.node.getFirstSuccessor().getId());
-                        Chord.cLogPrint("Sent: " + Chord.REQUEST_PREDECESSOR + ":" + this.node.getId() + " asking " + this.node.getFirstSuccessor().getId());
-
-                        // Read response from chord
-                        String serverResponse = socketReader.readLine();
-                        Chord.cLogPrint("Received: " + serverResponse);
-
-                        // Parse server response for address and port
-                        String[] predecessorFragments = serverResponse.split(":");
-                        String predecessorAddress = predecessorFragments[0];
-                        int predecessorPort = Integer.valueOf(predecessorFragments[1]);
-
-                        // If the address:port(of p, the successor's predecessor) that was returned from the server is not ourselves
-                        // then we need to adopt it as our new successor
-                        try {
-                            if (!this.node.getIpAddr().equals(predecessorAddress) || (this.node.getPort() != predecessorPort)) {
-                                this.node.acquire();
-
-                                Finger newSuccessor = new Finger(predecessorAddress, predecessorPort);
-
-                                this.node.release();
-
-                                // Close connections
-                                socketWriter.close();
-                                socketReader.close();
-                                socket.close();
-
-                                // Inform new successor that we are now their predecessor
-                                socket = new Socket(newSuccessor.getIpAddr(), newSuccessor.getPort());
-                                socket.setSoTimeout(Chord.SOCKET_TIMEOUT*1000);
-
-                                // Open writer/reader to new successor node
-                                socketWriter = new PrintWriter(socket.getOutputStream(), true);
-                                socketReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-
-                                // Update successor only if connection was successfully
-                                // Update finger table entries to reflect new successor
-                                this.node.getFingerTable().put(1, this.node.getFingerTable().get(0));
-                                this.node.getFingerTable().put(0, newSuccessor);
-
-                                // Update successor entries to reflect new successor
-                                this.node.setSecondSuccessor(this.node.getFirstSuccessor());
-                                this.node.setFirstSuccessor(newSuccessor);
-
-                                // Tell successor that this node is its new predecessor
-                                socketWriter.println(Chord.NEW_PREDECESSOR + ":" + this.node.getIpAddr() + ":" + this.node.getPort());
-                                Chord.cLogPrint("Sent: " + Chord.NEW_PREDECESSOR + ":" + this.node.getIpAddr() + ":" + this.node.getPort());
-                            }
-                        } catch (Exception e){
-                            e.printStackTrace();
-
-                            /**
-                             * If connection has Failed (maybe because the new successor has left), then reopen the connection with the old successor.
-                             * This will give time to the successor to correct it's successors and predecessors so that next Stabilize routine will
-                             * give us valid nodes (if any).
-                             */
-
-                            // Open socket to successor
-                            socket = new Socket(this.node.getFirstSuccessor().getIpAddr(), this.node.getFirstSuccessor().getPort());
-                            socket.setSoTimeout(Chord.SOCKET_TIMEOUT*1000);
-
-                            // Open reader/writer to chord node
-                            socketWriter = new PrintWriter(socket.getOutputStream(), true);
-                            socketReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-                        }
-
-                        BigInteger baseTwo = BigInteger.valueOf(2L);
-
-                        this.node.acquire();
-
-                        // Refresh the FingerTable by asking successor for the nodes
-                        for (int i = 0; i < Chord.FINGER_TABLE_SIZE; i++) {
-                            BigInteger bigResult = baseTwo.pow(i);
-                            bigResult = bigResult.add(node.getId());
-
-                            //If overflow occur
-                            if (bigResult.compareTo(BigInteger.valueOf(2L).pow(Chord.FINGER_TABLE_SIZE)) >= 0) {
-                                bigResult = bigResult.subtract(BigInteger.valueOf(2L).pow(Chord.FINGER_TABLE_SIZE));
-                            }
-
-                            // Send query to chord
-                            socketWriter.println(Chord.FIND_FINGER + ":" + bigResult.longValue());
-                            Chord.cLogPrint("Sent: " + Chord.FIND_FINGER + ":" + bigResult.longValue());
-
-                            // Read response from chord
-                            serverResponse = socketReader.readLine();
-
-                            // Parse out address and port
-                            String[] serverResponseFragments = serverResponse.split(":", 2);
-                            if(serverResponseFragments.length == 2) {
-                                String[] addressFragments = serverResponseFragments[1].split(":");
-
-                                // Add response finger to table
-                                this.node.getFingerTable().put(i, new Finger(addressFragments[0], Integer.valueOf(addressFragments[1])));
-                                this.node.setFirstSuccessor(this.node.getFingerTable().get(0));
-                                this.node.setSecondSuccessor(this.node.getFingerTable().get(1));
-
-                                Chord.cLogPrint("Received: " + serverResponse);
-                            }
-                        }
-
-                        this.node.release();
-
-                        // Close connections
-                        socketWriter.close();
-                        socketReader.close();
-                        socket.close();
-                    }
-                    // Otherwise, if we don't posses a valid successor, open a connection to the predecessor it is not ourselves
-                    else if (!this.node.getIpAddr().equals(this.node.getFirstPredecessor().getIpAddr()) || (this.node.getPort() != this.node.getFirstPredecessor().getPort()))
-                    {
-                        // Open socket to successor
-                        socket = new Socket(this.node.getFirstPredecessor().getIpAddr(), this.node.getFirstPredecessor().getPort());
-                        socket.setSoTimeout(Chord.SOCKET_TIMEOUT*1000);
+    public void start() {
+        MaintenanceScheduler maintenance = this.node.getMaintenance();
+        maintenance.schedule(MaintenanceTask.STABILIZE, new Runnable() {
+            @Override
+            public void run() {
+                stabilize();
+                refreshPredecessorList();
+                //Print LOGs
+                node.printStatusLogs();
+            }
+        });
+        maintenance.schedule(MaintenanceTask.FIX_FINGERS, this.node.getFingerFixer());
+        maintenance.schedule(MaintenanceTask.PING, new MaintenanceScheduler.Paced() {
+            @Override
+            public void run() {
+                testSuccessor();
+            }
+
+            @Override
+            public long getInterval(long period) {
+                return heartbeatInterval(period);
+            }
+        });
+        maintenance.schedule(MaintenanceTask.CHECK_PREDECESSOR, new MaintenanceScheduler.Paced() {
+            @Override
+            public void run() {
+                testPredecessor();
+            }
+
+            @Override
+            public long getInterval(long period) {
+                return heartbeatInterval(period);
+            }
+        });
+        maintenance.schedule(MaintenanceTask.RECONCILE_ITEMS, new Runnable() {
+            @Override
+            public void run() {
+                //Control if some of the Items from the ItemTable need to be delegated(sent) to another node in the Finger Table
+                checkItemTable();
+            }
+        });
+    }
+
+    /**
+     * @brief   Event: a node has told us that it is our new predecessor. The items it now owns are handed over to it, the
+     *          fingers starting in the range it has taken are looked up again, and the old predecessor is told that it
+     *          has a new successor, so that it does not wait for its next stabilization
+     */
+    public void predecessorChanged(Finger oldPredecessor, Finger newPredecessor) {
+        if (oldPredecessor.getId().equals(newPredecessor.getId())) {
+            return;
+        }
+        MaintenanceScheduler maintenance = this.node.getMaintenance();
+        maintenance.trigger(MaintenanceTask.RECONCILE_ITEMS);
+        this.node.getFingerFixer().refresh(oldPredecessor.getId(), newPredecessor.getId());
+        maintenance.trigger(MaintenanceTask.FIX_FINGERS);
+
+        // Only if the new predecessor has joined between the old one and us: otherwise the old one has left or failed
+        if (!isSelf(oldPredecessor) && newPredecessor.getId().isStrictlyBetween(oldPredecessor.getId(), this.node.getId())) {
+            hintNewSuccessor(oldPredecessor, newPredecessor);
+        }
+    }
+
+    /**
+     * @brief   Event: a node has told us that it has joined between us and our successor. Its word is not taken: the
+     *          stabilization runs right away, and asks the successor for its predecessor
+     */
+    public void successorHinted(Finger successor) {
+        if (successor.getId().isStrictlyBetween(this.node.getId(), this.node.getFirstSuccessor().getId())) {
+            this.node.getMaintenance().trigger(MaintenanceTask.STABILIZE);
+        }
+    }
 
-                        // Open reader/writer to chord node
-                        socketWriter = new PrintWriter(socket.getOutputStream(), true);
-                        socketReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+    /**
+     * @brief   Event: a node is leaving the ring. It is forgotten, the fingers that pointed to it are looked up again,
+     *          and the new successor is checked right away if it was the successor
+     */
+    public void forgetNode(RingId id) {
+        boolean successor = this.node.getFirstSuccessor().getId().equals(id);
+        this.node.getFingerFixer().refresh(id);
+        this.node.forgetNode(id);
+
+        MaintenanceScheduler maintenance = this.node.getMaintenance();
+        maintenance.trigger(MaintenanceTask.FIX_FINGERS);
+        if (successor) {
+            maintenance.trigger(MaintenanceTask.STABILIZE);
+        }
+    }
 
-                        BigInteger baseTwo = BigInteger.valueOf(2L);
+    /**
+     * @brief   Event: the UDP heartbeats suspect that a neighbour has failed, the check of that neighbour runs right away
+     * @param   successor   True for the successor, False for the predecessor
+     */
+    public void neighbourSuspected(boolean successor) {
+        this.node.getMaintenance().trigger(successor ? MaintenanceTask.PING : MaintenanceTask.CHECK_PREDECESSOR);
+    }
 
-                        this.node.acquire();
+    /**
+     * @brief   Tell the old predecessor that the node joining has become its successor, on a maintenance thread. Only
+     *          the nodes that understand NEW_SUCCESSOR are told, the others find out at their next stabilization
+     */
+    private void hintNewSuccessor(final Finger oldPredecessor, final Finger newPredecessor) {
+        this.node.getMaintenance().execute(new Runnable() {
+            @Override
+            public void run() {
+                ConnectionPool connectionPool = node.getConnectionPool();
+                Connection connection = null;
+                try {
+                    connection = connectionPool.borrow(oldPredecessor.getIpAddr(), oldPredecessor.getPort(), true);
+                    if (connection.isHintingStabilization()) {
+                        connection.send(Message.withAddress(Chord.NEW_SUCCESSOR, newPredecessor.getIpAddr(), newPredecessor.getPort()));
+                        Chord.cLogPrint("Sent: " + Chord.NEW_SUCCESSOR + ":" + newPredecessor.getIpAddr() + ":" + newPredecessor.getPort());
+                    }
+                    connectionPool.release(connection);
+                } catch (IOException e) {
+                    if (connection != null) {
+                        connectionPool.invalidate(connection);
+                    }
+                    Chord.cLogPrint("Could not tell " + oldPredecessor.getIpAddr() + ":" + oldPredecessor.getPort() + " about its new successor: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    private boolean isSelf(Finger finger) {
+        return this.node.getIpAddr().equals(finger.getIpAddr()) && this.node.getPort() == finger.getPort();
+    }
+
+    /**
+     * @return  The period, shortened to the heartbeat interval if the neighbours are checked with UDP heartbeats
+     */
+    private long heartbeatInterval(long period) {
+        return this.node.getHeartbeat() != null ? Math.min(period, Chord.HEARTBEAT_INTERVAL) : period;
+    }
 
-                        // Refresh the FingerTable by asking the predecessor for nodes
-                        for (int i = 0; i < Chord.FINGER_TABLE_SIZE; i++) {
-                            BigInteger bigResult = baseTwo.pow(i);
-                            bigResult = bigResult.add(node.getId());
+    /**
+     * @brief   Ask the successor for its predecessor p and adopt p as the successor if it has joined in between, then
+     *          copy the successor list of the successor. Refresh the FingerTable from the predecessor instead if the
+     *          node has no other successor than itself
+     */
+    private void stabilize() {
+        ConnectionPool connectionPool = this.node.getConnectionPool();
+        Connection connection = null;
+        Finger connected = this.node.getFirstSuccessor();
+        try {
+            // If it is not ourselves, open a connection to the successor
+            if (!this.node.getIpAddr().equals(this.node.getFirstSuccessor().getIpAddr()) || (this.node.getPort() != this.node.getFirstSuccessor().getPort()))
+            {
+                // Borrow a connection to the successor
+                connection = connectionPool.borrow(this.node.getFirstSuccessor().getIpAddr(), this.node.getFirstSuccessor().getPort(), true);
+
+                // Submit a request for the predecessor -->
+                // n (this node), asks it's successor for the successor's predecessor p, and decides
+                // whether p should be n's successor instead (for example if p has recently joined)
+                Message serverResponse = connection.request(new Message(Chord.REQUEST_PREDECESSOR));
+                Chord.cLogPrint("Sent: " + Chord.REQUEST_PREDECESSOR + ":" + this.node.getId() + " asking " + this.node.getFirstSuccessor().getId());
+                Chord.cLogPrint("Received: " + serverResponse);
 
-                            //If overflow occur
-                            if (bigResult.compareTo(BigInteger.valueOf(2L).pow(Chord.FINGER_TABLE_SIZE)) >= 0) {
-                                bigResult = bigResult.subtract(BigInteger.valueOf(2L).pow(Chord.FINGER_TABLE_SIZE));
-                            }
+                // Address and port of the predecessor
+                String predecessorAddress = serverResponse.getIpAddr();
+                int predecessorPort = serverResponse.getPort();
 
-                            // Send query to chord
-                            socketWriter.println(Chord.FIND_FINGER + ":" + bigResult.longValue());
-                            Chord.cLogPrint("Sent: " + Chord.FIND_FINGER + ":" + bigResult.longValue());
+                // If the address:port(of p, the successor's predecessor) that was returned from the server is not ourselves
+                // and p sits between us and the successor, then we need to adopt it as our new successor
+                try {
+                    Finger newSuccessor = new Finger(predecessorAddress, predecessorPort);
+                    if ((!this.node.getIpAddr().equals(predecessorAddress) || (this.node.getPort() != predecessorPort))
+                            && newSuccessor.getId().isBetween(this.node.getId(), this.node.getFirstSuccessor().getId())) {
 
-                            // Read response from chord
-                            String serverResponse = socketReader.readLine();
+                        // Give the connection back to the pool
+                        connectionPool.release(connection);
+                        connection = null;
 
-                            // Parse out address and port
-                            String[] serverResponseFragments = serverResponse.split(":", 2);
-                            String[] addressFragments = serverResponseFragments[1].split(":");
+                        // Inform new successor that we are now their predecessor
+                        connection = connectionPool.borrow(newSuccessor.getIpAddr(), newSuccessor.getPort(), true);
+                        connected = newSuccessor;
 
-                            // Add response finger to table
-                            this.node.getFingerTable().put(i, new Finger(addressFragments[0], Integer.valueOf(addressFragments[1])));
-                            this.node.setFirstSuccessor(this.node.getFingerTable().get(0));
-                            this.node.setSecondSuccessor(this.node.getFingerTable().get(1));
+                        // Update successor only if connection was successfully
+                        // Update finger table and successor entries to reflect new successor
+                        this.node.adoptSuccessor(newSuccessor);
 
-                            Chord.cLogPrint("Received: " + serverResponse);
-                        }
+                        // The fingers starting up to the new successor are its own now
+                        this.node.getFingerFixer().refresh(this.node.getId(), newSuccessor.getId());
+                        this.node.getMaintenance().trigger(MaintenanceTask.FIX_FINGERS);
 
-                        this.node.release();
+                        // Tell successor that this node is its new predecessor
+                        connection.send(Message.withAddress(Chord.NEW_PREDECESSOR, this.node.getIpAddr(), this.node.getPort()));
+                        Chord.cLogPrint("Sent: " + Chord.NEW_PREDECESSOR + ":" + this.node.getIpAddr() + ":" + this.node.getPort());
+                    }
+                } catch (Exception e){
+                    e.printStackTrace();
+
+                    /**
+                     * If connection has Failed (maybe because the new successor has left), then reopen the connection with the old successor.
+                     * This will give time to the successor to correct it's successors and predecessors so that next Stabilize routine will
+                     * give us valid nodes (if any).
+                     */
+
+                    // Borrow a connection to the successor
+                    if (connection != null) {
+                        connectionPool.invalidate(connection);
+                    }
+                    connected = this.node.getFirstSuccessor();
+                    connection = connectionPool.borrow(connected.getIpAddr(), connected.getPort(), true);
+                }
 
-                        // Close connections
-                        socketWriter.close();
-                        socketReader.close();
-                        socket.close();
+                // Our successors are the successor and its own successors: copy them, so that the ring holds even when
+                // several of them fail at once
+                if (connection.isSendingNeighbourLists()) {
+                    Message successors = connection.request(new Message(Chord.REQUEST_SUCCESSORS));
+                    if (successors.is(Chord.SUCCESSORS)) {
+                        this.node.adoptSuccessorList(connected, successors.getFingers());
                     }
+                }
 
-                    //Control if some of the Items from the ItemTable need to be delegated(sent) to another node in the Finger Table
-                    checkItemTable();
+                // The FingerTable is refreshed by the FingerFixer
 
-                    //Print LOGs
-                    node.printStatusLogs();
+                // Give the connection back to the pool
+                connectionPool.release(connection);
+                connection = null;
+            }
+            // Otherwise, if we don't posses a valid successor, open a connection to the predecessor it is not ourselves
+            else if (!this.node.getIpAddr().equals(this.node.getFirstPredecessor().getIpAddr()) || (this.node.getPort() != this.node.getFirstPredecessor().getPort()))
+            {
+                // Borrow a connection to the predecessor
+                connection = connectionPool.borrow(this.node.getFirstPredecessor().getIpAddr(), this.node.getFirstPredecessor().getPort(), true);
+
+                // Refresh the FingerTable by asking the predecessor for nodes, building it aside
+                Map<Integer, Finger> fingerTable = new HashMap<>(this.node.getFingerTable());
+                Finger[] fingers = this.node.requestFingers(connection, this.node.getFirstPredecessor());
+                for (int i = 0; i < FingerLayout.size(); i++) {
+                    if (fingers[i] != null) {
+                        // Add response finger to table
+                        fingerTable.put(i, fingers[i]);
+                    }
                 }
-            } catch (InterruptedException e) {
-                System.err.println("stabilize thread interrupted");
-                e.printStackTrace();
-            } catch (UnknownHostException e) {
-                System.err.println("stabilize could not find host of first successor");
-                e.printStackTrace();
-            } catch (IOException e) {
-                System.err.println("stabilize could not connect to first successor");
-                e.printStackTrace();
-            } catch (Exception e) {
-                e.printStackTrace();
+                this.node.refreshFingerTable(fingerTable);
+
+                // Give the connection back to the pool
+                connectionPool.release(connection);
+                connection = null;
+            }
+        } catch (UnknownHostException e) {
+            System.err.println("stabilize could not find host of first successor");
+            e.printStackTrace();
+        } catch (IOException e) {
+            System.err.println("stabilize could not connect to first successor");
+            e.printStackTrace();
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            // Never give back a connection that failed in the middle of a request
+            if (connection != null) {
+                connectionPool.invalidate(connection);
             }
         }
     }
 
+    /**
+     * @brief   Copy the predecessor list of the predecessor: the predecessor followed by its own predecessors
+     */
+    private void refreshPredecessorList() {
+        Finger predecessor = this.node.getFirstPredecessor();
+        if (isSelf(predecessor)) {
+            return;
+        }
+        ConnectionPool connectionPool = this.node.getConnectionPool();
+        Connection connection = null;
+        try {
+            connection = connectionPool.borrow(predecessor.getIpAddr(), predecessor.getPort(), true);
+            if (connection.isSendingNeighbourLists()) {
+                Message predecessors = connection.request(new Message(Chord.REQUEST_PREDECESSORS));
+                if (predecessors.is(Chord.PREDECESSORS)) {
+                    this.node.adoptPredecessorList(predecessor, predecessors.getFingers());
+                }
+            }
+            connectionPool.release(connection);
+        } catch (IOException e) {
+            if (connection != null) {
+                connectionPool.invalidate(connection);
+            }
+            // The predecessor is checked on its own by CHECK_PREDECESSOR
+            Chord.cLogPrint("Could not ask " + predecessor.getIpAddr() + ":" + predecessor.getPort() + " for its predecessors: " + e.getMessage());
+        }
+    }
 
     /**
      *  @brief  Check the correctness of the ItemTable by controlling if some of the Items from the ItemTable
@@ -259,29 +329,25 @@ public class Stabilizer extends Thread {
     private void checkItemTable() {
         // Iterate all keys in the temp item table, and for each of them control if it needs to be moved
         // to another node
-        Map<BigInteger, String> itemTable = new HashMap<>();
+        Map<RingId, String> itemTable = new HashMap<>();
         itemTable.putAll(this.node.getItemTable());                 //Iterate Throughout a copy of the ItemTable for concurrency reasons
-        for (BigInteger key : itemTable.keySet()) {
-            BigInteger baseTwo = BigInteger.valueOf(2L);
-            BigInteger ringSize = baseTwo.pow(Chord.FINGER_TABLE_SIZE);
-            BigInteger minimumDistance = ringSize;
-
-            node.acquire();
-
+        for (RingId key : itemTable.keySet()) {
             /**
              * Look for a node identifier in the finger table that is greater(or equal) than the key we are looking for
              * but is also the closer than the current node
              */
-            for (Finger finger : node.getFingerTable().values()) {
-                BigInteger distance;
-
+            RoutingIndex index = node.getRoutingIndex();
+            for (int i = index.ceilingIndex(key); i < index.size(); i++) {
+                Finger finger = index.get(i);
                 //If Finger Id is smaller than the current node Id, but greater than item's id
-                if(finger.getId().compareTo(node.getId()) < 0 && finger.getId().compareTo(key) >= 0){
-                    // Then send the Item to the correct Finger node
-                    if(placeItem(finger, key)){
-                        //Correct Response --> remove the item from this node
-                        this.node.getItemTable().remove(key);
-                    }
+                if(finger.getId().compareTo(node.getId()) >= 0){
+                    break;
+                }
+                // Then send the Item to the correct Finger node
+                if(placeItem(finger, key)){
+                    //Correct Response --> remove the item from this node
+                    this.node.getItemTable().remove(key);
+                    break;
                 }
             }
 
@@ -289,39 +355,18 @@ public class Stabilizer extends Thread {
              * Look for a node identifier in the predecessors and successors that are greater(or equal) than the key we are looking for
              * but is also the closer than the current node
              */
-            // FirstSuccessor
-            if(node.getFirstSuccessor().getId().compareTo(node.getId()) < 0 && node.getFirstSuccessor().getId().compareTo(key) >= 0){
-                // Then send the Item to the correct Finger node
-                if(placeItem(node.getFirstSuccessor(), key)){
-                    //Correct Response --> remove the item from this node
-                    this.node.getItemTable().remove(key);
-                }
-            }
-            // SecondSuccessor
-            if(node.getSecondSuccessor().getId().compareTo(node.getId()) < 0 && node.getSecondSuccessor().getId().compareTo(key) >= 0){
-                // Then send the Item to the correct Finger node
-                if(placeItem(node.getSecondSuccessor(), key)){
-                    //Correct Response --> remove the item from this node
-                    this.node.getItemTable().remove(key);
-                }
-            }
-            // FirstPredecessor
-            if(node.getFirstPredecessor().getId().compareTo(node.getId()) < 0 && node.getFirstPredecessor().getId().compareTo(key) >= 0){
-                // Then send the Item to the correct Finger node
-                if(placeItem(node.getFirstPredecessor(), key)){
-                    //Correct Response --> remove the item from this node
-                    this.node.getItemTable().remove(key);
-                }
-            }
-            // SecondPredecessor
-            if(node.getSecondPredecessor().getId().compareTo(node.getId()) < 0 && node.getSecondPredecessor().getId().compareTo(key) >= 0){
-                // Then send the Item to the correct Finger node
-                if(placeItem(node.getSecondPredecessor(), key)){
-                    //Correct Response --> remove the item from this node
-                    this.node.getItemTable().remove(key);
+            RoutingState state = node.getRoutingState();
+            List<Finger> neighbours = new ArrayList<>(state.getSuccessors());
+            neighbours.addAll(state.getPredecessors());
+            for (Finger neighbour : neighbours) {
+                if(neighbour.getId().compareTo(node.getId()) < 0 && neighbour.getId().compareTo(key) >= 0){
+                    // Then send the Item to the correct Finger node
+                    if(placeItem(neighbour, key)){
+                        //Correct Response --> remove the item from this node
+                        this.node.getItemTable().remove(key);
+                    }
                 }
             }
-            node.release();
         }
     }
 
@@ -331,37 +376,22 @@ public class Stabilizer extends Thread {
      * @param   itemKey item's key to place
      * @return  true if the item has been correctly placed, false otherwise
      */
-    public boolean placeItem(Finger finger, BigInteger itemKey){
+    public boolean placeItem(Finger finger, RingId itemKey){
+        // The item may have been moved elsewhere in the meantime
+        String item = node.getItemTable().get(itemKey);
+        if (item == null) {
+            return false;
+        }
         try {
-            // Open socket to chord node
-            Socket socket = new Socket(finger.getIpAddr(), finger.getPort());
-            socket.setSoTimeout(Chord.SOCKET_TIMEOUT*1000);
-
-            // Open reader/writer to chord node
-            PrintWriter socketWriter = new PrintWriter(socket.getOutputStream(), true);
-            BufferedReader socketReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-
-            // Send query to chord
-            socketWriter.println(Chord.PLACE_ITEM + ":" + itemKey.toString() + ":" +  node.getItemTable().get(itemKey));
-            Chord.cLogPrint("Sent: " + Chord.PLACE_ITEM + ":" + itemKey.toString() + ":" +  node.getItemTable().get(itemKey));
-
-            // Read response from chord
-            String serverResponse = socketReader.readLine();
+            // Send query to chord and read its response
+            Message serverResponse = node.getConnectionPool().request(finger, Message.placeItem(itemKey, item));
+            Chord.cLogPrint("Sent: " + Chord.PLACE_ITEM + ":" + itemKey.toString() + ":" +  item);
             Chord.cLogPrint("Response from node " + finger.getIpAddr() + ", port " + finger.getPort() + ", position " + " (" + finger.getId() + "):");
 
             //Correct Response --> remove the item from this node
-            if(serverResponse != null){
-                if(serverResponse.contains(Chord.ITEM_PLACED)){
-                    return true;
-                }
+            if(serverResponse.is(Chord.ITEM_PLACED)){
+                return true;
             }
-            else
-                return false;
-
-            // Close connections
-            socketWriter.close();
-            socketReader.close();
-            socket.close();
         } catch (IOException e) {
             e.printStackTrace();
         } catch (Exception e) {
@@ -376,34 +406,28 @@ public class Stabilizer extends Thread {
     private void testSuccessor() {
         // Only send heartbeats if we are not the destination
         if (!this.node.getIpAddr().equals(this.node.getFirstSuccessor().getIpAddr()) || (this.node.getPort() != this.node.getFirstSuccessor().getPort())) {
-            try {
-                // Open socket to successor
-                Socket socket = new Socket(this.node.getFirstSuccessor().getIpAddr(), this.node.getFirstSuccessor().getPort());
-                socket.setSoTimeout(Chord.SOCKET_TIMEOUT*1000);
-
-                // Open reader/writer to chord node
-                PrintWriter socketWriter = new PrintWriter(socket.getOutputStream(), true);
-                BufferedReader socketReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            // Nothing to do while the successor acknowledges our UDP heartbeats
+            Finger successor = this.node.getFirstSuccessor();
+            Heartbeat heartbeat = this.node.getHeartbeat();
+            if (heartbeat != null && heartbeat.isAlive(successor)) {
+                return;
+            }
 
-                // Send a ping
-                socketWriter.println(Chord.PING + ":" + this.node.getId());
+            try {
+                // Send a ping to the successor and read the response
+                Message serverResponse = this.node.ping(successor);
                 Chord.cLogPrint("Sent: " + Chord.PING + ":" + this.node.getId());
-
-                // Read response
-                String serverResponse = socketReader.readLine();
                 Chord.cLogPrint("Received: " + serverResponse);
+                if (heartbeat != null && serverResponse.is(Chord.PONG)) {
+                    heartbeat.confirmed(successor);
+                }
 
                 // If we do not receive the proper response then something has gone wrong and we need to set our new immediate successor to the backup
-                if (!serverResponse.equals(Chord.PONG)) {
-                    findNewValidSuccessor();
+                if (!serverResponse.is(Chord.PONG)) {
+                    successorFailed(successor);
                 }
-
-                // Close connections
-                socketWriter.close();
-                socketReader.close();
-                socket.close();
             } catch (IOException e) {
-                findNewValidSuccessor();
+                successorFailed(successor);
             }
         }
     }
@@ -414,137 +438,148 @@ public class Stabilizer extends Thread {
     private void testPredecessor() {
         // Only send heartbeats if we are not the destination
         if (!this.node.getIpAddr().equals(this.node.getFirstPredecessor().getIpAddr()) || (this.node.getPort() != this.node.getFirstPredecessor().getPort())) {
-            try {
-                // Open socket to predecessor
-                Socket socket = new Socket(this.node.getFirstPredecessor().getIpAddr(), this.node.getFirstPredecessor().getPort());
-                socket.setSoTimeout(Chord.SOCKET_TIMEOUT*1000);
-
-                // Open reader/writer to chord node
-                PrintWriter socketWriter = new PrintWriter(socket.getOutputStream(), true);
-                BufferedReader socketReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            // Nothing to do while the predecessor acknowledges our UDP heartbeats
+            Finger predecessor = this.node.getFirstPredecessor();
+            Heartbeat heartbeat = this.node.getHeartbeat();
+            if (heartbeat != null && heartbeat.isAlive(predecessor)) {
+                return;
+            }
 
-                // Send a ping
-                socketWriter.println(Chord.PING + ":" + this.node.getId());
+            try {
+                // Send a ping to the predecessor and read the response
+                Message serverResponse = this.node.ping(predecessor);
                 Chord.cLogPrint("Sent: " + Chord.PING + ":" + this.node.getId());
-
-                // Read response
-                String serverResponse = socketReader.readLine();
                 Chord.cLogPrint("Received: " + serverResponse);
+                if (heartbeat != null && serverResponse.is(Chord.PONG)) {
+                    heartbeat.confirmed(predecessor);
+                }
 
                 // If we do not receive the proper response then something has gone wrong and we need to set our new immediate predecessor to the backup
-                if (!serverResponse.equals(Chord.PONG)) {
-                    /*this.node.acquire();
-                    this.node.setFirstPredecessor(this.node.getSecondPredecessor());
-                    this.node.release();*/
-                    findNewValidSuccessor();        //TODO: maybe we need to find a valid predecessor instead of successor, or doing nothing at all since the predecessor is not as important
+                if (!serverResponse.is(Chord.PONG)) {
+                    predecessorFailed(predecessor);
                 }
-
-                // Close connections
-                socketWriter.close();
-                socketReader.close();
-                socket.close();
             } catch (IOException e) {
-                /*this.node.acquire();
-                this.node.setFirstPredecessor(this.node.getSecondPredecessor());
-                this.node.release();*/
-                findNewValidSuccessor();        //TODO: maybe we need to find a valid predecessor instead of successor, or doing nothing at all since the predecessor is not as important
+                predecessorFailed(predecessor);
             }
         }
     }
 
     /**
-     *  @brief Find at least one New Valid Successor in the FingerTable
+     *  @brief  Replace the successor that has failed, and repair right away what depended on it: the fingers that
+     *          pointed to it, and the link with the new successor
      */
-    private void findNewValidSuccessor(){
-        Chord.cLogPrint("#############################################################################");
-        Chord.cLogPrint("THE SUCCESSOR STOPPED RESPONDING. INITIATING RESEARCH OF NEW VALID SUCCESSOR!");
-        Chord.cLogPrint("#############################################################################");
-
-        this.node.acquire();
-
-        //new Thread(new Stabilizer(node)).start();
-        if(node.getExistingNodeIpAddr() != null)
-            node.initFingerTable();
-        node.printStatusLogs();
-
-        Finger nextFinger = this.node.getFingerTable().get(0);
-        boolean firstSuccesorFound = false;
-        boolean secondSuccesorFound = false;
-        for (int i = 0; i < Chord.FINGER_TABLE_SIZE; i++) {
-            Chord.cLogPrint("## Finger Iteration" + String.valueOf(i) + " ##");
-            try {
-                nextFinger = node.getFingerTable().get(i);
+    private void successorFailed(Finger successor) {
+        this.node.getFingerFixer().refresh(successor.getId());
+        if (!failOver(successor, true)) {
+            findNewValidSuccessor();
+        }
 
-                // Open socket to successor
-                Socket socket = new Socket(nextFinger.getIpAddr(), nextFinger.getPort());
-                socket.setSoTimeout(Chord.SOCKET_TIMEOUT*1000);
-                Chord.cLogPrint("Try to connect to: " + nextFinger.getIpAddr() + ":" + nextFinger.getPort());
+        MaintenanceScheduler maintenance = this.node.getMaintenance();
+        maintenance.trigger(MaintenanceTask.FIX_FINGERS);
+        maintenance.trigger(MaintenanceTask.STABILIZE);
+    }
 
-                // Open reader/writer to chord node
-                PrintWriter socketWriter = new PrintWriter(socket.getOutputStream(), true);
-                BufferedReader socketReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+    /**
+     *  @brief  Replace the predecessor that has failed with the next one of the predecessor list that is alive
+     */
+    private void predecessorFailed(Finger predecessor) {
+        failOver(predecessor, false);
+    }
 
-                // Send a ping
-                socketWriter.println(Chord.PING + ":" + this.node.getId());
-                Chord.cLogPrint("Sent: " + Chord.PING + ":" + this.node.getId());
+    /**
+     * @brief   Replace a neighbour that has failed with the next one of its list that answers a ping, forgetting the
+     *          ones before it that do not: the lookups are routed to the new neighbour right away, without rebuilding
+     *          the FingerTable. A new successor is told that we are its predecessor
+     * @param   failed      The neighbour that has failed
+     * @param   successor   True for the successor list, False for the predecessor list
+     * @return  True if a neighbour alive has been found in the list
+     */
+    private boolean failOver(Finger failed, boolean successor) {
+        RoutingState state = this.node.getRoutingState();
+        for (Finger candidate : successor ? state.getSuccessors() : state.getPredecessors()) {
+            if (isSelf(candidate)) {
+                break;
+            }
+            if (!candidate.getId().equals(failed.getId()) && isAlive(candidate)) {
+                Chord.cLogPrint("FOUND VALID " + (successor ? "SUCCESSOR" : "PREDECESSOR") + " IN THE LIST: " + candidate.getIpAddr() + ":" + candidate.getPort() + "(" + candidate.getId() + ")");
+                if (successor) {
+                    notifyNewSuccessor(candidate);
+                }
+                return true;
+            }
+            // Its fingers go to the next successor in the list
+            this.node.getFingerFixer().refresh(candidate.getId());
+            this.node.forgetNode(candidate.getId());
+        }
+        return false;
+    }
 
-                // Read response
-                String serverResponse = socketReader.readLine();
-                Chord.cLogPrint("Received: " + serverResponse);
+    /**
+     * @return  True if the node answers a ping
+     */
+    private boolean isAlive(Finger finger) {
+        try {
+            return this.node.ping(finger).is(Chord.PONG);
+        } catch (IOException e) {
+            return false;
+        }
+    }
 
-                // If we received a PONG in response of the PING
-                // We have may have found a new valid successor
-                if (serverResponse.equals(Chord.PONG) && (!this.node.getIpAddr().equals(nextFinger.getId()) || this.node.getPort() != nextFinger.getPort())) {
-                    if(!firstSuccesorFound) {
-                        Chord.cLogPrint("FOUND VALID FIRST SUCCESSOR: " + nextFinger.getIpAddr() + ":" + nextFinger.getPort() + "(" + nextFinger.getId() + ")");
-                        this.node.setFirstSuccessor(nextFinger);
-                        firstSuccesorFound = true;
-                        continue;
-                    }else {
-                        if(!nextFinger.getIpAddr().equals(this.node.getFirstSuccessor().getIpAddr()) ||
-                                nextFinger.getPort() != this.node.getFirstSuccessor().getPort()) {
-                            Chord.cLogPrint("FOUND VALID SECOND SUCCESSOR: " + nextFinger.getIpAddr() + ":" + nextFinger.getPort() + "(" + nextFinger.getId() + ")");
-                            //this.node.setFirstSuccessor(nextFinger);
-                            this.node.setSecondSuccessor(nextFinger);
-                            secondSuccesorFound = true;
-                            break;
-                        }
-                    }
-                }
-                // Close connections
-                socketWriter.close();
-                socketReader.close();
-                socket.close();
-            }catch (IOException e){
+    /**
+     * @brief   Find a new successor when none of the successor list is alive: the closest node after us, going
+     *          clockwise, that answers a ping among the fingers and the predecessor list (in a small ring the
+     *          predecessors are the nodes that come next). The ones that do not answer are forgotten. The node found
+     *          becomes the only successor and is told that we are its predecessor, the stabilization then copies its
+     *          successor list
+     */
+    private void findNewValidSuccessor() {
+        Chord.cLogPrint("#############################################################################");
+        Chord.cLogPrint("NO SUCCESSOR IN THE LIST IS RESPONDING. LOOKING FOR ONE IN THE FINGERS AND PREDECESSORS!");
+        Chord.cLogPrint("#############################################################################");
 
+        RoutingState state = this.node.getRoutingState();
+        List<Finger> candidates = new ArrayList<>();
+        Set<RingId> known = new HashSet<>();
+        for (Finger finger : state.getFingerTable().values()) {
+            if (finger != null && !isSelf(finger) && known.add(finger.getId())) {
+                candidates.add(finger);
             }
         }
-
-        //If no successor found, try looking into the predecessors
-        if(!secondSuccesorFound && !firstSuccesorFound){
-            //First Predecessor
-            nextFinger = this.node.getFirstPredecessor();
-            if (!nextFinger.getIpAddr().equals(this.node.getFirstSuccessor().getIpAddr()) || nextFinger.getPort() != this.node.getFirstSuccessor().getPort()) {
-                Chord.cLogPrint("FOUND VALID FIRST SUCCESSOR: " + nextFinger.getIpAddr() + ":" + nextFinger.getPort() + "(" + nextFinger.getId() + ")");
-                this.node.setFirstSuccessor(nextFinger);
-                firstSuccesorFound = true;
+        for (Finger predecessor : state.getPredecessors()) {
+            if (!isSelf(predecessor) && known.add(predecessor.getId())) {
+                candidates.add(predecessor);
             }
-            //Else try with the second Predecessor
-            else{
-                nextFinger = this.node.getSecondPredecessor();
-                if (!nextFinger.getIpAddr().equals(this.node.getFirstSuccessor().getIpAddr()) || nextFinger.getPort() != this.node.getFirstSuccessor().getPort()) {
-                    Chord.cLogPrint("FOUND VALID FIRST SUCCESSOR: " + nextFinger.getIpAddr() + ":" + nextFinger.getPort() + "(" + nextFinger.getId() + ")");
-                    this.node.setFirstSuccessor(nextFinger);
-                    firstSuccesorFound = true;
-                }
+        }
+        final RingId id = this.node.getId();
+        Collections.sort(candidates, new Comparator<Finger>() {
+            @Override
+            public int compare(Finger a, Finger b) {
+                return id.distanceTo(a.getId()).compareTo(id.distanceTo(b.getId()));
+            }
+        });
+
+        for (Finger candidate : candidates) {
+            if (isAlive(candidate)) {
+                Chord.cLogPrint("FOUND VALID SUCCESSOR: " + candidate.getIpAddr() + ":" + candidate.getPort() + "(" + candidate.getId() + ")");
+                this.node.setSuccessors(Collections.singletonList(candidate));
+                notifyNewSuccessor(candidate);
+                return;
             }
+            this.node.getFingerFixer().refresh(candidate.getId());
+            this.node.forgetNode(candidate.getId());
         }
+        Chord.cLogPrint("NO VALID SUCCESSOR FOUND, THE NODE IS ALONE ON THE RING");
+    }
 
-        //If only found the fist successor, set also the second as the first
-        if(!secondSuccesorFound && firstSuccesorFound) {
-            this.node.setSecondSuccessor(this.node.getFirstSuccessor());
+    /**
+     * @brief   Tell a node that has just become our successor that we are its predecessor
+     */
+    private void notifyNewSuccessor(Finger successor) {
+        try {
+            this.node.getConnectionPool().send(successor, Message.withAddress(Chord.NEW_PREDECESSOR, this.node.getIpAddr(), this.node.getPort()));
+        } catch (IOException e) {
+            // The stabilization tells it later
+            e.printStackTrace();
         }
-
-        this.node.release();
     }
 }
\ No newline at end of file
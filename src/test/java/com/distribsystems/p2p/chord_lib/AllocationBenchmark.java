@@ -0,0 +1,137 @@
+package com.distribsystems.p2p.chord_lib;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+
+/**
+ * AllocationBenchmark: measures the bytes allocated for every PING and every FIND_FINGER served by a Node:
+ *  - by the decode, dispatch and encode path alone, run in a loop on the benchmark thread;
+ *  - by all the threads of the Server (the selector thread and its workers), with the queries pipelined on a single
+ *    binary connection. This includes the hand-off of the queries to the workers.
+ * Everything is measured after a warm-up that lets the buffers grow and the JIT compile the hot path.
+ * Needs a HotSpot-based runtime, which reports the bytes allocated by each thread. Kept with the tests so that it is not
+ * shipped with the library: run it from the test classpath.
+ *
+ * Program Arguments
+ * args[0] = number of queries measured for each command (default 200000)
+ * args[1] = PORT number used by the benchmarked Node (default 8700)
+ */
+public class AllocationBenchmark {
+    private final static int PIPELINE = 64;
+
+    public static void main(String[] args) throws Exception {
+        int queries = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int port    = args.length > 1 ? Integer.parseInt(args[1]) : 8700;
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            System.out.println("The runtime does not report the bytes allocated by each thread");
+            System.exit(1);
+        }
+
+        Chord.setEnableLogs(false);
+        Chord.setExecutionMode(ExecutionMode.SELECTOR);
+        Node node = new Node("127.0.0.1", port);
+        Thread.sleep(1000);
+
+        ConnectionPool pool = new ConnectionPool();
+        Connection connection = pool.borrow("127.0.0.1", port);
+        if (!connection.isBinary()) {
+            System.out.println("The binary protocol could not be agreed with the node");
+            System.exit(1);
+        }
+
+        Message ping = Message.withId(Chord.PING, node.getId());
+        Message findFinger = Message.withId(Chord.FIND_FINGER, RingId.valueOf(1));
+
+        ClientHandler handler = new ClientHandler(node);
+        for (Message query : new Message[]{ping, findFinger}) {
+            // Warm-up
+            serve(handler, query, queries);
+            send(connection, query, queries);
+
+            System.out.println(String.format("%-12s decode/dispatch/encode %8.1f bytes/query, server threads %8.1f bytes/query",
+                    query.getCommand(), measure(handler, query, queries), measure(connection, query, queries, port)));
+        }
+        System.exit(0);
+    }
+
+    /**
+     * @return  The bytes allocated by the current thread for serving each of the queries
+     */
+    private static double measure(ClientHandler handler, Message query, int queries) throws IOException {
+        long before = allocatedBytes(Thread.currentThread().getId());
+        serve(handler, query, queries);
+        long after = allocatedBytes(Thread.currentThread().getId());
+        return (double) (after - before) / queries;
+    }
+
+    /**
+     * @brief   Decode the frame of the query, execute it and encode its response the given number of times, the
+     *          same way ServerConnection does
+     */
+    private static void serve(ClientHandler handler, Message query, int queries) throws IOException {
+        ByteBuffer frame = MessageCodec.encodeFrame(query);
+        ByteBuffer output = ByteBuffer.allocate(1024);
+        Message decoded = new Message();
+        Message response = new Message();
+
+        for (int q = 0; q < queries; q++) {
+            frame.position(4);
+            MessageCodec.decodeFrame(frame, decoded, false);
+            if (handler.handle(decoded, response)) {
+                response.setRequestId(decoded.getRequestId());
+                output.clear();
+                MessageCodec.encodeFrame(response, output);
+            }
+        }
+    }
+
+    /**
+     * @return  The bytes allocated by the server threads for each of the queries
+     */
+    private static double measure(Connection connection, Message query, int queries, int port) throws IOException {
+        long before = serverAllocatedBytes(port);
+        send(connection, query, queries);
+        long after = serverAllocatedBytes(port);
+        return (double) (after - before) / queries;
+    }
+
+    /**
+     * @brief   Send the query the given number of times, keeping PIPELINE of them in flight
+     */
+    private static void send(Connection connection, Message query, int queries) throws IOException {
+        PendingResponse[] responses = new PendingResponse[PIPELINE];
+        for (int q = 0; q < queries; q += PIPELINE) {
+            int count = Math.min(PIPELINE, queries - q);
+            for (int i = 0; i < count; i++) {
+                responses[i] = connection.requestAsync(query);
+            }
+            for (int i = 0; i < count; i++) {
+                responses[i].get();
+            }
+        }
+    }
+
+    /**
+     * @return  The bytes allocated so far by the selector thread and the workers of the Server listening on the port
+     */
+    private static long serverAllocatedBytes(int port) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds())) {
+            if (info != null && (info.getThreadName().equals("chord-server-" + port) || info.getThreadName().startsWith("chord-worker-" + port + "-"))) {
+                total += allocatedBytes(info.getThreadId());
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return  The bytes allocated so far by the thread
+     */
+    private static long allocatedBytes(long threadId) {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(threadId);
+    }
+}
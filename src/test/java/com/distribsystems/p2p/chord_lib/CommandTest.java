@@ -0,0 +1,45 @@
+package com.distribsystems.p2p.chord_lib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Opcodes of the commands and the workers their queries are executed by
+ */
+public class CommandTest {
+
+    @Test
+    public void opcodesAndTextsIdentifyTheCommands() {
+        for (Command command : Command.values()) {
+            assertSame(command, Command.fromOpcode(command.getOpcode()));
+            assertSame(command, Command.fromText(command.getText()));
+        }
+        assertNull(Command.fromOpcode(0));
+        assertNull(Command.fromOpcode(Command.values().length + 1));
+        // Opcodes are on the wire: the first ones must never move
+        assertEquals(1, Command.FIND_FINGER.getOpcode());
+        assertEquals(8, Command.PING.getOpcode());
+    }
+
+    @Test
+    public void controlWorkersOnlyTakeQueriesThatDoNotWait() {
+        for (Command command : Command.values()) {
+            if (command.isServedByControlWorkers()) {
+                assertTrue(command.isControl());
+                assertFalse(command.isForwarded());
+            }
+        }
+        assertTrue(Command.PING.isServedByControlWorkers());
+        assertTrue(Command.NEW_PREDECESSOR.isServedByControlWorkers());
+        assertFalse(Command.FIND_FINGER.isServedByControlWorkers());
+        assertFalse(Command.FIND_FINGERS.isServedByControlWorkers());
+        assertFalse(Command.FIND_FINGER_DIRECT.isServedByControlWorkers());
+        // Still sent on the connection of the control plane
+        assertTrue(Command.FIND_FINGER.isControl());
+    }
+}
@@ -0,0 +1,160 @@
+package com.distribsystems.p2p.chord_lib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Retry policy of the ConnectionPool, against a node that speaks the text protocol and closes its connections after
+ * a given number of responses
+ */
+public class ConnectionPoolTest {
+    private ServerSocket        serverSocket;
+    private ConnectionPool      pool;
+    private final AtomicInteger accepted = new AtomicInteger();
+    private final Semaphore     closed = new Semaphore(0);
+
+    @Before
+    public void setUp() throws IOException {
+        Chord.setEnableLogs(false);
+        Chord.setBinaryProtocol(false);
+        serverSocket = new ServerSocket(0);
+        pool = new ConnectionPool();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        pool.close();
+        serverSocket.close();
+        Chord.setBinaryProtocol(true);
+    }
+
+    /**
+     * @brief   Serve the connections of the test: the first one answers firstAnswers queries with PONG, the following
+     *          ones answer nextAnswers queries, then each one reads one more query and is closed
+     */
+    private void serve(final int firstAnswers, final int nextAnswers) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        Socket socket = serverSocket.accept();
+                        int answers = accepted.getAndIncrement() == 0 ? firstAnswers : nextAnswers;
+                        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), MessageCodec.UTF8));
+                        OutputStream out = socket.getOutputStream();
+                        for (int i = 0; i < answers && in.readLine() != null; i++) {
+                            out.write((Chord.PONG + "\n").getBytes(MessageCodec.UTF8));
+                            out.flush();
+                        }
+                        if (answers == 0) {
+                            in.readLine();
+                        }
+                        socket.close();
+                        closed.release();
+                    }
+                } catch (IOException e) {
+                    // The server socket has been closed at the end of the test
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @brief   Serve the connections of the test with the binary protocol: each one agrees on the version, then it is
+     *          closed as soon as the query arrives, like a node too busy to serve it
+     */
+    private void serveHandshakeOnly() {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        Socket socket = serverSocket.accept();
+                        accepted.incrementAndGet();
+                        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), MessageCodec.UTF8));
+                        int version = MessageCodec.acceptHandshake(in.readLine());
+                        socket.getOutputStream().write((MessageCodec.handshakeResponse(version) + "\n").getBytes(MessageCodec.UTF8));
+                        socket.getOutputStream().flush();
+                        in.read();
+                        socket.close();
+                    }
+                } catch (IOException e) {
+                    // The server socket has been closed at the end of the test
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private Message ping() throws IOException {
+        return pool.request("127.0.0.1", serverSocket.getLocalPort(), new Message(Chord.PING));
+    }
+
+    @Test(timeout = 10000)
+    public void failureOnNewConnectionIsNotRetried() throws Exception {
+        serve(0, 0);
+        try {
+            ping();
+            fail("The node has closed the connection");
+        } catch (IOException e) {
+            // Expected
+        }
+        assertEquals(1, accepted.get());
+    }
+
+    @Test(timeout = 10000)
+    public void connectionClosedWhileIdleIsRetriedOnNewConnection() throws Exception {
+        serve(1, 1);
+        assertTrue(ping().is(Chord.PONG));
+        assertTrue(closed.tryAcquire(5, TimeUnit.SECONDS));
+
+        assertTrue(ping().is(Chord.PONG));
+        assertEquals(2, accepted.get());
+    }
+
+    @Test(timeout = 10000)
+    public void connectionResetByNodeIsRetriedOnlyOnce() throws Exception {
+        serve(1, 0);
+        assertTrue(ping().is(Chord.PONG));
+        assertTrue(closed.tryAcquire(5, TimeUnit.SECONDS));
+
+        try {
+            ping();
+            fail("The node has closed the connection again");
+        } catch (IOException e) {
+            // Expected
+        }
+        assertEquals(2, accepted.get());
+    }
+
+    @Test(timeout = 10000)
+    public void multiplexedConnectionResetByNodeIsNotRetried() throws Exception {
+        Chord.setBinaryProtocol(true);
+        serveHandshakeOnly();
+        try {
+            ping();
+            fail("The node has closed the connection");
+        } catch (IOException e) {
+            // Expected
+        }
+        assertEquals(1, accepted.get());
+    }
+}
@@ -0,0 +1,90 @@
+package com.distribsystems.p2p.chord_lib;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Fingers given to the node found for a finger without looking them up
+ */
+public class FingerFixerTest {
+
+    @After
+    public void tearDown() {
+        Chord.setFingerBase(2);
+    }
+
+    private static int end(long nodeId, int first, long foundId) {
+        return FingerFixer.endOfOwnedFingers(RingId.valueOf(nodeId), first, RingId.valueOf(foundId));
+    }
+
+    private static int counterClockwiseEnd(long nodeId, int first, long foundId) {
+        return FingerFixer.endOfOwnedCounterClockwiseFingers(RingId.valueOf(nodeId), first, RingId.valueOf(foundId));
+    }
+
+    @Test
+    public void followingFingersUpToTheNodeFoundAreSkipped() {
+        // Starts of node 0: 1, 2, 4, 8, ...
+        assertEquals(3, end(0, 0, 5));
+        assertEquals(3, end(0, 0, 4));
+        assertEquals(2, end(0, 1, 3));
+        // The node found is the start itself: it owns no other start
+        assertEquals(1, end(0, 0, 1));
+        assertEquals(5, end(0, 4, 16));
+    }
+
+    @Test
+    public void skipStopsAtTheEndOfTheTable() {
+        long last = (1L << RingId.bits()) - 1;
+        assertEquals(FingerLayout.size(), end(0, 3, last));
+        assertEquals(FingerLayout.size(), end(0, FingerLayout.size() - 1, last));
+        // The node found wraps past zero: the starts up to it are owned as well
+        assertEquals(4, end(last - 5, 0, 3));
+        // The node found is the node itself: it owns all the starts after the first
+        assertEquals(FingerLayout.size(), end(last - 5, 0, last - 5));
+    }
+
+    @Test
+    public void skipFollowsTheLayoutOfTheBase() {
+        Chord.setFingerBase(4);
+        // Starts of node 0: 1, 2, 3, 4, 8, 12, 16, ...
+        assertEquals(5, end(0, 0, 10));
+        assertEquals(6, end(0, 4, 12));
+        assertEquals(4, end(0, 3, 5));
+    }
+
+    @Test
+    public void counterClockwiseSkipGoesTowardsTheNode() {
+        long last = (1L << RingId.bits()) - 1;
+        long node = (last + 1) / 2;
+        // Counter-clockwise starts of the node: node - 1, node - 2, node - 4, ..., 0
+        int farthest = FingerLayout.size() - 1;
+        assertEquals(farthest - 1, counterClockwiseEnd(node, farthest, 1));
+        assertEquals(farthest - 2, counterClockwiseEnd(node, farthest, node / 2));
+        assertEquals(2, counterClockwiseEnd(node, 3, node - 5));
+        // The node found is the start itself, or owns all the starts down to the closest one
+        assertEquals(4, counterClockwiseEnd(node, 5, node - 32));
+        assertEquals(-1, counterClockwiseEnd(node, 3, node - 1));
+        assertEquals(-1, counterClockwiseEnd(node, 0, node - 1));
+        // The start wraps past zero
+        assertEquals(2, counterClockwiseEnd(10, 4, 5));
+    }
+
+    @Test
+    public void counterClockwiseRoundStartsFromTheFarthestFinger() {
+        int size = FingerLayout.size();
+        assertEquals(size - 1, FingerFixer.counterClockwisePosition(0));
+        assertEquals(0, FingerFixer.counterClockwisePosition(size - 1));
+        for (int i = 0; i < size; i++) {
+            assertEquals(i, FingerFixer.counterClockwisePosition(FingerFixer.counterClockwisePosition(i)));
+        }
+        // Past the closest finger the round starts again
+        assertEquals(0, FingerFixer.counterClockwisePosition(-1));
+
+        // The node found for the farthest finger owns the next one as well: the round goes on from its third finger
+        long node = (1L << RingId.bits()) / 2;
+        int end = counterClockwiseEnd(node, FingerFixer.counterClockwisePosition(0), node / 2);
+        assertEquals(2, FingerFixer.counterClockwisePosition(end));
+    }
+}
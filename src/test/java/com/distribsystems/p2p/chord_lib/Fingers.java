@@ -0,0 +1,26 @@
+package com.distribsystems.p2p.chord_lib;
+
+/**
+ * Nodes of a test ring, listening on 127.0.0.1 on a port derived from their identifier
+ */
+final class Fingers {
+
+    private Fingers() {
+    }
+
+    /**
+     * @return  A node with the given identifier
+     */
+    static Finger finger(long id) {
+        Finger finger = new Finger("127.0.0.1", 4000 + (int) id);
+        finger.setId(RingId.valueOf(id));
+        return finger;
+    }
+
+    /**
+     * @return  The identifier of the node, which must fit in a long
+     */
+    static long id(Finger finger) {
+        return finger.getId().longValue();
+    }
+}
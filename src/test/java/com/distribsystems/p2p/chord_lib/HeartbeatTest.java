@@ -0,0 +1,62 @@
+package com.distribsystems.p2p.chord_lib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Window of the heartbeats received, carried by the acks
+ */
+public class HeartbeatTest {
+
+    private static Heartbeat.Peer receivedUpTo(long seq) {
+        Heartbeat.Peer peer = new Heartbeat.Peer();
+        for (long i = 1; i <= seq; i++) {
+            Heartbeat.received(peer, i);
+        }
+        return peer;
+    }
+
+    @Test
+    public void windowRecordsTheHeartbeatsBeforeTheLast() {
+        Heartbeat.Peer peer = new Heartbeat.Peer();
+        Heartbeat.received(peer, 1);
+        assertEquals(1, peer.receivedSeq);
+        assertEquals(0, peer.receivedBits);
+        assertTrue(peer.ackPending);
+
+        Heartbeat.received(peer, 2);
+        assertEquals(0b1, peer.receivedBits);
+        // Heartbeat 3 is late: bit 0 stays clear until it arrives
+        Heartbeat.received(peer, 4);
+        assertEquals(4, peer.receivedSeq);
+        assertEquals(0b110, peer.receivedBits);
+        Heartbeat.received(peer, 3);
+        assertEquals(4, peer.receivedSeq);
+        assertEquals(0b111, peer.receivedBits);
+        // A duplicate changes nothing
+        Heartbeat.received(peer, 4);
+        assertEquals(0b111, peer.receivedBits);
+    }
+
+    @Test
+    public void windowShiftsByItsWholeWidth() {
+        Heartbeat.Peer peer = receivedUpTo(4);
+        Heartbeat.received(peer, 4 + 64);
+        // Only the previous last heartbeat is left, on the oldest bit
+        assertEquals(4 + 64, peer.receivedSeq);
+        assertEquals(1L << 63, peer.receivedBits);
+
+        peer = receivedUpTo(4);
+        Heartbeat.received(peer, 4 + 65);
+        assertEquals(0, peer.receivedBits);
+
+        peer = receivedUpTo(70);
+        assertEquals(-1L, peer.receivedBits);
+        // Too late for the window
+        Heartbeat.received(peer, 70 - 65);
+        assertEquals(-1L, peer.receivedBits);
+        assertEquals(70, peer.receivedSeq);
+    }
+}
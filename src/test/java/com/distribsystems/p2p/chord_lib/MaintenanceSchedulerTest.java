@@ -0,0 +1,113 @@
+package com.distribsystems.p2p.chord_lib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Triggers of the maintenance tasks: merged into the schedule of the task, never holding a second thread
+ */
+public class MaintenanceSchedulerTest {
+    private static final long   PERIOD = 60000;
+
+    private MaintenanceScheduler    scheduler;
+
+    /**
+     * Action blocking each run until it is released, counting the runs going on at the same time
+     */
+    private static class BlockingAction implements Runnable {
+        final Semaphore         started = new Semaphore(0);
+        final Semaphore         released = new Semaphore(0);
+        final AtomicInteger     running = new AtomicInteger();
+        final AtomicInteger     maxRunning = new AtomicInteger();
+
+        @Override
+        public void run() {
+            int now = running.incrementAndGet();
+            maxRunning.set(Math.max(maxRunning.get(), now));
+            started.release();
+            released.acquireUninterruptibly();
+            running.decrementAndGet();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        // Runs only when triggered, within the time of a test
+        for (MaintenanceTask task : MaintenanceTask.values()) {
+            Chord.setMaintenancePeriod(task, PERIOD);
+        }
+        scheduler = new MaintenanceScheduler("test-maintenance");
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+        for (MaintenanceTask task : MaintenanceTask.values()) {
+            Chord.setMaintenancePeriod(task, task.getDefaultPeriod());
+        }
+    }
+
+    @Test
+    public void triggersDuringARunAreMergedIntoOneRunAfterIt() throws Exception {
+        BlockingAction action = new BlockingAction();
+        MaintenanceScheduler.ScheduledTask task = scheduler.schedule(MaintenanceTask.STABILIZE, action);
+
+        task.trigger();
+        assertTrue(action.started.tryAcquire(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 5; i++) {
+            task.trigger();
+        }
+        action.released.release();
+        // One more run for all the triggers, after the first one
+        assertTrue(action.started.tryAcquire(5, TimeUnit.SECONDS));
+        action.released.release();
+        Thread.sleep(200);
+        assertEquals(0, action.started.availablePermits());
+        assertEquals(1, action.maxRunning.get());
+        assertEquals(2, task.getTriggers());
+    }
+
+    @Test
+    public void aSlowTaskDoesNotHoldBackTheOthers() throws Exception {
+        BlockingAction stabilize = new BlockingAction();
+        scheduler.schedule(MaintenanceTask.STABILIZE, stabilize);
+        final CountDownLatch pinged = new CountDownLatch(1);
+        scheduler.schedule(MaintenanceTask.PING, new Runnable() {
+            @Override
+            public void run() {
+                pinged.countDown();
+            }
+        });
+
+        scheduler.trigger(MaintenanceTask.STABILIZE);
+        assertTrue(stabilize.started.tryAcquire(5, TimeUnit.SECONDS));
+        // More triggers and one-off work than there are threads, while the run is stuck
+        for (int i = 0; i < 2 * MaintenanceTask.values().length; i++) {
+            scheduler.trigger(MaintenanceTask.STABILIZE);
+            scheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(1000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        scheduler.trigger(MaintenanceTask.PING);
+        assertTrue(pinged.await(1, TimeUnit.SECONDS));
+
+        stabilize.released.release(2);
+        assertEquals(1, stabilize.maxRunning.get());
+    }
+}
@@ -0,0 +1,101 @@
+package com.distribsystems.p2p.chord_lib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Negotiation of the protocol version, the features gated by it, and the round trips of the messages
+ */
+public class MessageCodecTest {
+    private boolean compression;
+
+    @Before
+    public void setUp() {
+        compression = Chord.isCompression();
+    }
+
+    @After
+    public void tearDown() {
+        Chord.setCompression(compression);
+    }
+
+    private static Message[] messages() {
+        Finger finger = new Finger("10.0.0.1", 4001);
+        return new Message[] {
+                Message.withId(Chord.FIND_FINGER, RingId.valueOf(42)),
+                Message.withAddress(Chord.NEW_PREDECESSOR, finger),
+                Message.placeItem(RingId.valueOf(7), "key:with:colons"),
+                Message.itemFound("10.0.0.3", 4003, "item"),
+                Message.direct(Chord.FIND_ITEM_DIRECT, RingId.valueOf(200), "10.0.0.2", 4002, 12),
+                Message.directReply(12, "10.0.0.3", 4003, "item"),
+                Message.findFingers(new RingId[] {RingId.valueOf(1), RingId.valueOf(128), RingId.valueOf(255)}),
+                Message.fingersFound(new Finger[] {finger, null, finger}),
+                Message.neighbours(Chord.SUCCESSORS, Arrays.asList(finger, new Finger("10.0.0.4", 4004))),
+                Message.withId(Chord.PING, RingId.valueOf(3)),
+                Message.idBits(8),
+        };
+    }
+
+    /**
+     * @return  The message sent as a binary frame and decoded
+     */
+    private static Message throughFrame(Message message) throws Exception {
+        ByteBuffer frame = MessageCodec.encodeFrame(message);
+        assertEquals(frame.remaining() - 4, frame.getInt());
+        return MessageCodec.decodeFrame(frame);
+    }
+
+    @Test
+    public void handshakeAgreesOnTheLowerVersion() {
+        assertEquals(Chord.PROTOCOL_VERSION, MessageCodec.acceptHandshake(MessageCodec.handshakeQuery()));
+        assertEquals(3, MessageCodec.acceptHandshake(Chord.PING + ":HELLO/3"));
+        assertEquals(Chord.PROTOCOL_VERSION, MessageCodec.acceptHandshake(Chord.PING + ":HELLO/99"));
+        // Not a handshake: the connection stays in text
+        assertEquals(0, MessageCodec.acceptHandshake(Chord.PING));
+        assertEquals(0, MessageCodec.acceptHandshake(Chord.PING + ":HELLO/x"));
+
+        assertEquals(2, MessageCodec.handshakeVersion(MessageCodec.handshakeResponse(2)));
+        // An older server answers a plain PONG
+        assertEquals(1, MessageCodec.handshakeVersion(Chord.PONG));
+        assertEquals(1, MessageCodec.handshakeVersion(Chord.PONG + ":HELLO/x"));
+    }
+
+    @Test
+    public void itemsAreCompressedOnlyForNodesThatCanInflateThem() throws Exception {
+        Chord.setCompression(true);
+        char[] text = new char[4 * Chord.COMPRESSION_THRESHOLD];
+        Arrays.fill(text, 'a');
+        String item = new String(text);
+
+        Message message = Message.placeItem(RingId.valueOf(7), item);
+        MessageCodec.preparePayload(message, 2);
+        assertEquals(Compression.RAW, message.getItemEncoding());
+
+        MessageCodec.preparePayload(message, 3);
+        assertNotEquals(Compression.RAW, message.getItemEncoding());
+        Message received = throughFrame(message);
+        assertNotEquals(Compression.RAW, received.getItemEncoding());
+
+        // Forwarded to an older node: inflated on the way
+        MessageCodec.preparePayload(received, 2);
+        assertEquals(Compression.RAW, received.getItemEncoding());
+        assertEquals(item, received.getItem());
+    }
+
+    @Test
+    public void messagesSurviveTextAndFrames() throws Exception {
+        for (Message message : messages()) {
+            String line = MessageCodec.encodeText(message);
+            assertEquals(line, MessageCodec.encodeText(MessageCodec.decodeText(line, null)));
+            Message decoded = throughFrame(message);
+            assertEquals(line, MessageCodec.encodeText(decoded));
+        }
+    }
+}
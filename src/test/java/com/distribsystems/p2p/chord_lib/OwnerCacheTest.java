@@ -0,0 +1,67 @@
+package com.distribsystems.p2p.chord_lib;
+
+import static com.distribsystems.p2p.chord_lib.Fingers.finger;
+import static com.distribsystems.p2p.chord_lib.Fingers.id;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * Ranges of the owners learned by the lookups, wrapping around the ring
+ */
+public class OwnerCacheTest {
+
+    private static long owner(OwnerCache cache, long key) {
+        return id(cache.get(RingId.valueOf(key)));
+    }
+
+    @Test
+    public void keysAreFoundInTheRangeEndingAtOrAfterThem() {
+        OwnerCache cache = new OwnerCache(8);
+        cache.put(RingId.valueOf(20), finger(60));
+        assertEquals(60, owner(cache, 60));
+        assertEquals(60, owner(cache, 21));
+        assertNull(cache.get(RingId.valueOf(20)));
+        assertNull(cache.get(RingId.valueOf(61)));
+    }
+
+    @Test
+    public void lookupWrapsPastTheTopOfTheRing() {
+        long last = (1L << RingId.bits()) - 1;
+        OwnerCache cache = new OwnerCache(8);
+        cache.put(RingId.valueOf(20), finger(60));
+        // Nothing ends after the last id: the first range is the only one that may hold it
+        assertNull(cache.get(RingId.valueOf(last)));
+
+        cache.put(RingId.valueOf(last - 10), finger(10));
+        assertEquals(10, owner(cache, last));
+        assertEquals(10, owner(cache, 0));
+        assertEquals(10, owner(cache, 10));
+        assertNull(cache.get(RingId.valueOf(last - 10)));
+        assertNull(cache.get(RingId.valueOf(15)));
+        assertEquals(60, owner(cache, 30));
+    }
+
+    @Test
+    public void overlappedAndLeastRecentlyUsedRangesAreForgotten() {
+        OwnerCache cache = new OwnerCache(2);
+        cache.put(RingId.valueOf(20), finger(60));
+        cache.put(RingId.valueOf(60), finger(100));
+        // A node has joined between 20 and 60
+        cache.put(RingId.valueOf(40), finger(60));
+        assertEquals(2, cache.size());
+        assertNull(cache.get(RingId.valueOf(30)));
+
+        // The range of 100 is the least recently used
+        cache.put(RingId.valueOf(10), finger(30));
+        assertEquals(2, cache.size());
+        assertNull(cache.get(RingId.valueOf(80)));
+        assertEquals(60, owner(cache, 50));
+        // Now the one of 30 is
+        cache.put(RingId.valueOf(100), finger(120));
+        assertNull(cache.get(RingId.valueOf(20)));
+        assertEquals(60, owner(cache, 50));
+        assertEquals(120, owner(cache, 110));
+    }
+}
@@ -0,0 +1,31 @@
+package com.distribsystems.p2p.chord_lib;
+
+import static com.distribsystems.p2p.chord_lib.Fingers.finger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Coordinates of the peers measured, and the ones forgotten when there are too many of them
+ */
+public class ProximityTest {
+    private final static long MILLISECOND = 1000000;
+
+    @Test
+    public void leastRecentlyUsedPeerIsForgotten() {
+        Proximity proximity = new Proximity(2);
+        proximity.observe(finger(1), new Coordinates(10, 0, 0, 0.5), 10 * MILLISECOND);
+        proximity.observe(finger(2), new Coordinates(20, 0, 0, 0.5), 20 * MILLISECOND);
+        // Peer 2 is now the least recently used
+        proximity.predictRtt(finger(1));
+
+        proximity.observe(finger(3), new Coordinates(30, 0, 0, 0.5), 30 * MILLISECOND);
+        assertTrue(proximity.isKnown(finger(1)));
+        assertFalse(proximity.isKnown(finger(2)));
+        assertTrue(proximity.isKnown(finger(3)));
+        assertEquals(Double.MAX_VALUE, proximity.predictRtt(finger(2)), 0);
+        assertEquals(3, proximity.getSamples());
+    }
+}
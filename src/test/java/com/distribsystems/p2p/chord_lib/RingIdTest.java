@@ -0,0 +1,132 @@
+package com.distribsystems.p2p.chord_lib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Arithmetic of the identifiers around the ring, checked against BigInteger at the ends of the ring and of the words
+ */
+public class RingIdTest {
+    private static final int[]  WIDTHS = {1, 8, 12, 63, 64, 65, 127, 128, 129, 160};
+
+    @After
+    public void tearDown() {
+        Chord.setFingerTableSize(Chord.DEFAULT_FINGER_TABLE_SIZE);
+    }
+
+    /**
+     * @return  The values around 0, the middle and the end of the ring, and around the ends of the words of a RingId
+     */
+    private static List<BigInteger> boundaries(int width) {
+        BigInteger ring = BigInteger.ONE.shiftLeft(width);
+        List<BigInteger> values = new ArrayList<>();
+        for (int bit : new int[] {0, width - 1, 12, 63, 64, 127, 128, width}) {
+            if (bit > width) {
+                continue;
+            }
+            BigInteger power = BigInteger.ONE.shiftLeft(bit);
+            for (BigInteger value : new BigInteger[] {power.subtract(BigInteger.ONE), power, power.add(BigInteger.ONE)}) {
+                values.add(value.mod(ring));
+            }
+        }
+        Random random = new Random(width);
+        for (int i = 0; i < 8; i++) {
+            values.add(new BigInteger(width, random));
+        }
+        return values;
+    }
+
+    @Test
+    public void addAndSubtractWrapAroundTheRing() {
+        for (int width : WIDTHS) {
+            Chord.setFingerTableSize(width);
+            BigInteger ring = BigInteger.ONE.shiftLeft(width);
+            for (BigInteger a : boundaries(width)) {
+                RingId x = RingId.valueOf(a);
+                assertEquals(a, x.toBigInteger());
+                for (BigInteger b : boundaries(width)) {
+                    RingId y = RingId.valueOf(b);
+                    String where = width + " bits: " + a + ", " + b;
+                    assertEquals(where, a.add(b).mod(ring), x.add(y).toBigInteger());
+                    assertEquals(where, a.subtract(b).mod(ring), x.subtract(y).toBigInteger());
+                    assertEquals(where, b.subtract(a).mod(ring), x.distanceTo(y).toBigInteger());
+                    assertEquals(where, a.compareTo(b), Integer.signum(x.compareTo(y)));
+                    assertEquals(where, a.equals(b), x.equals(y));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void lastIdentifierIsFollowedByZero() {
+        for (int width : WIDTHS) {
+            Chord.setFingerTableSize(width);
+            RingId last = RingId.valueOf(BigInteger.ONE.shiftLeft(width).subtract(BigInteger.ONE));
+            RingId one = RingId.valueOf(1);
+            assertEquals(RingId.ZERO, last.add(one));
+            assertEquals(last, RingId.ZERO.subtract(one));
+            assertEquals(one, last.distanceTo(RingId.ZERO));
+            assertEquals(last, RingId.ZERO.distanceTo(last));
+            assertEquals(RingId.ZERO, RingId.valueOf(BigInteger.ONE.shiftLeft(width)));
+            assertEquals(RingId.ZERO, last.addPowerOfTwo(0));
+            // The last finger starts half the ring away
+            RingId half = RingId.ZERO.addPowerOfTwo(width - 1);
+            assertEquals(BigInteger.ONE.shiftLeft(width - 1), half.toBigInteger());
+            assertEquals(RingId.ZERO, half.add(half));
+        }
+    }
+
+    @Test
+    public void intervalsWrapAroundZero() {
+        for (int width : new int[] {8, 64, 160}) {
+            Chord.setFingerTableSize(width);
+            RingId last = RingId.valueOf(BigInteger.ONE.shiftLeft(width).subtract(BigInteger.ONE));
+            RingId one = RingId.valueOf(1);
+            assertTrue(RingId.ZERO.isBetween(last, one));
+            assertTrue(one.isBetween(last, one));
+            assertFalse(last.isBetween(last, one));
+            assertFalse(one.isStrictlyBetween(last, one));
+            assertTrue(RingId.ZERO.isStrictlyBetween(last, one));
+            // Same ends: the whole ring
+            assertTrue(last.isBetween(one, one));
+            assertFalse(one.isStrictlyBetween(one, one));
+            assertTrue(RingId.ZERO.compareDistance(last, one) < 0);
+            assertTrue(last.compareDistance(RingId.ZERO, one) > 0);
+        }
+    }
+
+    @Test
+    public void textAndBytesGiveBackTheIdentifier() {
+        for (int width : WIDTHS) {
+            Chord.setFingerTableSize(width);
+            int bytes = (width + 7) / 8;
+            for (BigInteger value : boundaries(width)) {
+                RingId id = RingId.valueOf(value);
+                assertEquals(id, RingId.parse(id.toString()));
+                ByteBuffer buffer = ByteBuffer.allocate(bytes);
+                id.writeTo(buffer, bytes);
+                buffer.flip();
+                assertEquals(id, RingId.readFrom(buffer, bytes));
+            }
+        }
+    }
+
+    @Test
+    public void hashIsCutToTheWidth() {
+        for (int width : WIDTHS) {
+            Chord.setFingerTableSize(width);
+            RingId id = RingId.hash("127.0.0.1:4000");
+            assertTrue(id.toBigInteger().bitLength() <= width);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.distribsystems.p2p.chord_lib;
+
+import static com.distribsystems.p2p.chord_lib.Fingers.finger;
+import static com.distribsystems.p2p.chord_lib.Fingers.id;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Searches of the sorted index of the fingers, wrapping around the ring
+ */
+public class RoutingIndexTest {
+
+    @Test
+    public void nodesAreSortedOnceEach() {
+        RoutingIndex index = RoutingIndex.of(Arrays.asList(finger(200), null, finger(10), finger(120), finger(10),
+                finger(200)));
+        assertEquals(3, index.size());
+        assertEquals(10, id(index.get(0)));
+        assertEquals(120, id(index.get(1)));
+        assertEquals(200, id(index.get(2)));
+        assertEquals(10, id(index.first()));
+        assertEquals(200, id(index.last()));
+    }
+
+    @Test
+    public void searchesWithinTheIndex() {
+        RoutingIndex index = RoutingIndex.of(Arrays.asList(finger(10), finger(120), finger(200)));
+        assertEquals(120, id(index.floor(RingId.valueOf(120))));
+        assertEquals(120, id(index.floor(RingId.valueOf(150))));
+        assertNull(index.floor(RingId.valueOf(5)));
+        assertEquals(120, id(index.ceiling(RingId.valueOf(120))));
+        assertEquals(200, id(index.ceiling(RingId.valueOf(121))));
+        assertNull(index.ceiling(RingId.valueOf(201)));
+        assertEquals(200, id(index.higher(RingId.valueOf(120))));
+        assertNull(index.higher(RingId.valueOf(200)));
+        assertEquals(1, index.ceilingIndex(RingId.valueOf(11)));
+        assertEquals(3, index.ceilingIndex(RingId.valueOf(255)));
+    }
+
+    @Test
+    public void routingWrapsAroundTheRing() {
+        RoutingIndex index = RoutingIndex.of(Arrays.asList(finger(10), finger(120), finger(200)));
+        assertEquals(10, id(index.closestPreceding(RingId.valueOf(50))));
+        assertEquals(200, id(index.closestPreceding(RingId.valueOf(5))));
+        assertEquals(200, id(index.closestPreceding(RingId.valueOf(200))));
+        assertEquals(120, id(index.successor(RingId.valueOf(50))));
+        assertEquals(10, id(index.successor(RingId.valueOf(201))));
+        assertEquals(10, id(index.successor(RingId.valueOf(10))));
+    }
+
+    @Test
+    public void emptyIndexFindsNothing() {
+        RoutingIndex index = RoutingIndex.of(Collections.<Finger>singletonList(null));
+        assertTrue(index.isEmpty());
+        assertNull(index.first());
+        assertNull(index.closestPreceding(RingId.valueOf(50)));
+        assertNull(index.successor(RingId.valueOf(50)));
+        assertTrue(RoutingIndex.EMPTY.isEmpty());
+    }
+}
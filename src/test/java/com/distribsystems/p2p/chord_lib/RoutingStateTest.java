@@ -0,0 +1,143 @@
+package com.distribsystems.p2p.chord_lib;
+
+import static com.distribsystems.p2p.chord_lib.Fingers.finger;
+import static com.distribsystems.p2p.chord_lib.Fingers.id;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Changes of the routing state: finger refreshes, removed nodes, successor and predecessor lists
+ */
+public class RoutingStateTest {
+    private int     successorListLength;
+    private Finger  self;
+
+    @Before
+    public void setUp() {
+        successorListLength = Chord.getSuccessorListLength();
+        Chord.setSuccessorListLength(4);
+        self = finger(100);
+    }
+
+    @After
+    public void tearDown() {
+        Chord.setSuccessorListLength(successorListLength);
+    }
+
+    private static Map<Integer, Finger> fingers(Finger... fingers) {
+        Map<Integer, Finger> fingerTable = new HashMap<>();
+        for (int i = 0; i < fingers.length; i++) {
+            fingerTable.put(i, fingers[i]);
+        }
+        return fingerTable;
+    }
+
+    private static List<Long> ids(List<Finger> nodes) {
+        List<Long> ids = new ArrayList<>();
+        for (Finger node : nodes) {
+            ids.add(id(node));
+        }
+        return ids;
+    }
+
+    @Test
+    public void fingerRefreshKeepsTheSuccessorList() {
+        RoutingState state = RoutingState.EMPTY
+                .withSuccessors(Arrays.asList(finger(110), finger(120), finger(130), finger(140)));
+
+        RoutingState refreshed = state.withRefreshedFingerTable(fingers(finger(110), finger(150), finger(200)));
+        assertEquals(Arrays.asList(110L, 120L, 130L, 140L), ids(refreshed.getSuccessors()));
+        assertEquals(150, id(refreshed.getFingerTable().get(1)));
+
+        // A closer first finger replaces the first successor only
+        refreshed = state.withRefreshedFingerTable(fingers(finger(105), finger(150), finger(200)));
+        assertEquals(Arrays.asList(105L, 120L, 130L, 140L), ids(refreshed.getSuccessors()));
+    }
+
+    @Test
+    public void fingerRefreshFillsInASingleSuccessor() {
+        RoutingState state = RoutingState.EMPTY.withRefreshedFingerTable(fingers(finger(110), finger(150)));
+        assertEquals(Arrays.asList(110L, 150L), ids(state.getSuccessors()));
+
+        // Nothing to take as the first successor
+        state = state.withRefreshedFingerTable(new HashMap<Integer, Finger>());
+        assertEquals(Arrays.asList(110L, 150L), ids(state.getSuccessors()));
+    }
+
+    @Test
+    public void neighboursSkipNullsAndRepeatsUpToTheListLength() {
+        RoutingState state = RoutingState.EMPTY.withSuccessors(Arrays.asList(null, finger(110), finger(110),
+                finger(120), null, finger(130), finger(140), finger(150)));
+        assertEquals(Arrays.asList(110L, 120L, 130L, 140L), ids(state.getSuccessors()));
+
+        Chord.setSuccessorListLength(2);
+        state = state.withPredecessors(Arrays.asList(finger(90), finger(90), finger(80), finger(70)));
+        assertEquals(Arrays.asList(90L, 80L), ids(state.getPredecessors()));
+    }
+
+    @Test
+    public void newNeighboursComeFirst() {
+        RoutingState state = RoutingState.EMPTY
+                .withFingerTable(fingers(finger(110), finger(150)))
+                .withSuccessors(Arrays.asList(finger(110), finger(120), finger(130), finger(140)))
+                .withPredecessors(Arrays.asList(finger(90), finger(80)));
+
+        state = state.withNewSuccessor(finger(105)).withNewPredecessor(finger(95));
+        assertEquals(Arrays.asList(105L, 110L, 120L, 130L), ids(state.getSuccessors()));
+        assertEquals(Arrays.asList(95L, 90L, 80L), ids(state.getPredecessors()));
+        assertEquals(105, id(state.getFingerTable().get(0)));
+        assertEquals(110, id(state.getFingerTable().get(1)));
+
+        state = state.withFirstSuccessor(finger(102)).withFirstPredecessor(finger(98));
+        assertEquals(Arrays.asList(102L, 110L, 120L, 130L), ids(state.getSuccessors()));
+        assertEquals(Arrays.asList(98L, 90L, 80L), ids(state.getPredecessors()));
+    }
+
+    @Test
+    public void removedNodeIsReplacedByTheNextSuccessor() {
+        RoutingState state = RoutingState.EMPTY
+                .withFingerTable(fingers(finger(110), finger(110), finger(130), finger(200)))
+                .withSuccessors(Arrays.asList(finger(110), finger(120), finger(130)))
+                .withPredecessors(Arrays.asList(finger(90), finger(80)));
+
+        state = state.withoutNode(RingId.valueOf(110), self);
+        assertEquals(Arrays.asList(120L, 130L), ids(state.getSuccessors()));
+        assertEquals(Arrays.asList(90L, 80L), ids(state.getPredecessors()));
+        assertEquals(120, id(state.getFingerTable().get(0)));
+        assertEquals(120, id(state.getFingerTable().get(1)));
+        assertEquals(130, id(state.getFingerTable().get(2)));
+        // Indexed once
+        assertEquals(3, state.getRoutingIndex().size());
+
+        // The last successor has no node after it in the list: its fingers fall back to the current node
+        state = state.withoutNode(RingId.valueOf(130), self);
+        assertEquals(Arrays.asList(120L), ids(state.getSuccessors()));
+        assertEquals(100, id(state.getFingerTable().get(2)));
+    }
+
+    @Test
+    public void emptiedListsFallBackToTheFingers() {
+        RoutingState state = RoutingState.EMPTY
+                .withFingerTable(fingers(finger(110), finger(150), finger(200)))
+                .withSuccessors(Arrays.asList(finger(150)))
+                .withPredecessors(Arrays.asList(finger(90)));
+
+        // The finger closest to the node going counter-clockwise takes the place of the last predecessor
+        state = state.withoutNode(RingId.valueOf(90), self);
+        assertEquals(Arrays.asList(200L), ids(state.getPredecessors()));
+
+        // The first finger takes the place of the last successor
+        state = state.withoutNode(RingId.valueOf(150), self);
+        assertEquals(100, id(state.getFingerTable().get(1)));
+        assertEquals(Arrays.asList(110L), ids(state.getSuccessors()));
+    }
+}